@@ -0,0 +1,234 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fills the SQLite database with users and multilingual translation histories
+ * for {@link PersistenceBenchmark}.
+ *
+ * The data depends only on the seed and the user index: user {@code n} is
+ * {@code user0000n} with password {@code password-n}, and gets the same
+ * history on every run. Texts are sentences from the language identifier's
+ * sample corpora in src/main/langid. History sizes are skewed like real use:
+ * most users have a few rows, a tail has many, and about a tenth sit at the
+ * per-user cap so every new translation triggers the cleanup. A share of the
+ * originals come from a small set of common phrases, which the content
+ * addressed text store keeps once.
+ *
+ * Rows are written in large transactions through {@link TextStore} and the
+ * same columns as {@link SqliteHistoryStore#addTranslations}; going through
+ * the repository would commit once per user, which takes hours at a million.
+ *
+ * Run on its own with {@code mvn -Pbench compile exec:java
+ * -Dexec.mainClass=com.berrimi.translator.jakarta.hello.HistoryDataGenerator
+ * -Dbench.users=100000}.
+ */
+public final class HistoryDataGenerator {
+
+  /**
+   * Language names as clients send them, and their sample corpus
+   */
+  private static final String[][] LANGUAGES = {
+      { "darija", "ary-Latn" },
+      { "darija", "ary" },
+      { "french", "fr" },
+      { "english", "en" },
+      { "spanish", "es" },
+      { "amazigh", "ber" },
+  };
+  // Share of translations from each corpus above, in per mille
+  private static final int[] LANGUAGE_WEIGHTS = { 300, 150, 200, 200, 100, 50 };
+
+  private static final int COMMON_PHRASES = 12;
+  private static final int BATCH_ROWS = 20_000;
+  private static final long HISTORY_DAYS = 90;
+
+  private final long seed;
+  private final List<List<String>> corpora = new ArrayList<>();
+
+  public HistoryDataGenerator(long seed, Path corpusDir) throws IOException {
+    this.seed = seed;
+    for (String[] language : LANGUAGES) {
+      List<String> sentences = new ArrayList<>();
+      for (String line : Files.readAllLines(corpusDir.resolve(language[1] + ".txt"), StandardCharsets.UTF_8)) {
+        if (!line.isBlank()) {
+          sentences.add(line.trim());
+        }
+      }
+      corpora.add(sentences);
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    PersistenceBenchmark.useDataDirectory();
+    int users = Integer.getInteger("bench.users", 10_000);
+    HistoryDataGenerator generator = new HistoryDataGenerator(Long.getLong("bench.seed", 42),
+        Paths.get(System.getProperty("bench.corpus", "src/main/langid")));
+    generator.generate(users);
+  }
+
+  /**
+   * Username of the user with the given index
+   */
+  public static String username(int index) {
+    return String.format(Locale.ROOT, "user%07d", index);
+  }
+
+  /**
+   * Password of the user with the given index
+   */
+  public static String password(int index) {
+    return "password-" + index;
+  }
+
+  /**
+   * Number of history rows the user with the given index gets
+   */
+  public int historySize(int index) {
+    SplittableRandom random = random(index);
+    if (random.nextInt(10) == 0) {
+      return HistoryStore.MAX_HISTORY_PER_USER;
+    }
+    // Exponential with a mean of 8, below the cap
+    return (int) Math.min(HistoryStore.MAX_HISTORY_PER_USER - 1, -8 * Math.log(1 - random.nextDouble()));
+  }
+
+  /**
+   * A translation drawn from the random stream; also used by the benchmark to
+   * create new rows
+   */
+  public TranslationHistory translation(String username, SplittableRandom random, long timestamp) {
+    int source = pickLanguage(random);
+    int target;
+    do {
+      target = pickLanguage(random);
+    } while (LANGUAGES[target][0].equals(LANGUAGES[source][0]));
+
+    List<String> sourceSentences = corpora.get(source);
+    String original = random.nextInt(3) == 0
+        ? sourceSentences.get(random.nextInt(Math.min(COMMON_PHRASES, sourceSentences.size())))
+        : sentences(sourceSentences, random);
+    String translated = sentences(corpora.get(target), random);
+
+    TranslationHistory history = new TranslationHistory(null, username, original, translated, LANGUAGES[target][0]);
+    history.setTimestamp(new Date(timestamp));
+    return history;
+  }
+
+  /**
+   * Create users 0 to count-1 and their histories, committing in large batches
+   */
+  public void generate(int count) throws SQLException {
+    long started = System.nanoTime();
+    long now = System.currentTimeMillis();
+    long rows = 0;
+
+    // Load the schema and the id key before taking our own connection
+    Persistence.history();
+
+    try (Connection conn = DatabaseManager.openConnection()) {
+      try (Statement stmt = conn.createStatement()) {
+        // A lost load is simply generated again
+        stmt.execute("PRAGMA synchronous = OFF");
+      }
+      conn.setAutoCommit(false);
+
+      try (PreparedStatement user = conn.prepareStatement(
+          "INSERT INTO users (username, password, email, phone) VALUES (?, ?, ?, ?) RETURNING id");
+          PreparedStatement history = conn.prepareStatement("""
+              INSERT INTO translation_history
+              (id, user_id, original_id, translated_id, target_lang, timestamp)
+              VALUES (?, ?, ?, ?, ?, ?)
+              """)) {
+
+        int pending = 0;
+        for (int index = 0; index < count; index++) {
+          String username = username(index);
+          user.setString(1, username);
+          user.setString(2, UserRepository.hashPassword(password(index)));
+          user.setString(3, username + "@example.com");
+          user.setString(4, String.format(Locale.ROOT, "+2126%08d", index));
+          long userId;
+          try (ResultSet rs = user.executeQuery()) {
+            rs.next();
+            userId = rs.getLong(1);
+          }
+
+          int size = historySize(index);
+          SplittableRandom random = random(index).split();
+          // Oldest first, spread over the last HISTORY_DAYS
+          long timestamp = now - TimeUnit.DAYS.toMillis(HISTORY_DAYS);
+          long step = TimeUnit.DAYS.toMillis(HISTORY_DAYS) / (size + 1);
+          for (int i = 0; i < size; i++) {
+            timestamp += 1 + random.nextLong(step);
+            TranslationHistory row = translation(username, random, timestamp);
+            history.setLong(1, HistoryIds.next());
+            history.setLong(2, userId);
+            history.setLong(3, TextStore.put(conn, row.getOriginalText()));
+            history.setLong(4, TextStore.put(conn, row.getTranslatedText()));
+            history.setString(5, row.getTargetLang());
+            history.setLong(6, timestamp);
+            history.addBatch();
+          }
+          rows += size;
+          pending += size + 1;
+
+          if (pending >= BATCH_ROWS || index == count - 1) {
+            history.executeBatch();
+            conn.commit();
+            pending = 0;
+          }
+          if ((index + 1) % 100_000 == 0) {
+            System.out.printf(Locale.ROOT, "  %,d users, %,d rows%n", index + 1, rows);
+          }
+        }
+      } catch (SQLException e) {
+        conn.rollback();
+        throw e;
+      }
+    }
+
+    System.out.printf(Locale.ROOT, "Generated %,d users and %,d history rows in %.1f s%n", count, rows,
+        (System.nanoTime() - started) / 1e9);
+  }
+
+  private SplittableRandom random(int index) {
+    return new SplittableRandom(seed ^ (index * 0x9E3779B97F4A7C15L));
+  }
+
+  private static int pickLanguage(SplittableRandom random) {
+    int r = random.nextInt(1000);
+    for (int i = 0; i < LANGUAGE_WEIGHTS.length; i++) {
+      r -= LANGUAGE_WEIGHTS[i];
+      if (r < 0) {
+        return i;
+      }
+    }
+    return 0;
+  }
+
+  // One to three sentences; independent picks keep most texts distinct
+  private static String sentences(List<String> corpus, SplittableRandom random) {
+    int count = random.nextInt(4) == 0 ? 2 + random.nextInt(2) : 1;
+    StringBuilder text = new StringBuilder(corpus.get(random.nextInt(corpus.size())));
+    for (int i = 1; i < count; i++) {
+      text.append(' ').append(corpus.get(random.nextInt(corpus.size())));
+    }
+    return text.toString();
+  }
+}
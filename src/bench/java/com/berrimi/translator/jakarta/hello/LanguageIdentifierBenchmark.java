@@ -0,0 +1,69 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark of {@link LanguageIdentifier} per language of the model, on
+ * one sentence and on a paragraph longer than the identifier reads, taken
+ * from the sample texts in src/main/langid.
+ *
+ * Run with {@code mvn -Pbench compile exec:exec@langid-benchmark} from the
+ * project directory.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LanguageIdentifierBenchmark {
+
+  @Param({ "ary", "ary-Latn", "ber", "en", "es", "fr" })
+  public String language;
+
+  private String sentence;
+  private String paragraph;
+
+  @Setup
+  public void setUp() throws IOException {
+    List<String> lines = Files.readAllLines(Paths.get("src/main/langid", language + ".txt"), StandardCharsets.UTF_8);
+    lines.removeIf(String::isBlank);
+    sentence = lines.get(0);
+
+    StringBuilder text = new StringBuilder();
+    for (String line : lines) {
+      if (text.length() > 2 * LanguageIdentifier.MAX_CHARS) {
+        break;
+      }
+      text.append(line).append(' ');
+    }
+    paragraph = text.toString();
+  }
+
+  @Benchmark
+  public String sentence() {
+    return LanguageIdentifier.identify(sentence);
+  }
+
+  @Benchmark
+  public String paragraph() {
+    return LanguageIdentifier.identify(paragraph);
+  }
+}
@@ -0,0 +1,420 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Measures every {@link UserRepository} and {@link HistoryRepository} method
+ * against a SQLite database filled by {@link HistoryDataGenerator}, with one
+ * thread and with {@code bench.threads}, and prints throughput, latency
+ * percentiles, failures and the query plans of the statements behind them.
+ * A call fails when it returns false or throws; errors counts the error
+ * lines the repositories logged meanwhile, which also catches the methods
+ * that swallow them. The lines themselves go to errors.log.
+ *
+ * Run with {@code mvn -Pbench compile exec:java}. Settings are system
+ * properties: {@code bench.users} (10000), {@code bench.seed} (42),
+ * {@code bench.threads} (available processors), {@code bench.seconds} per
+ * run (5), {@code bench.warmupSeconds} (1), {@code bench.only} (comma
+ * separated operation names) and {@code bench.dataDir} (target/bench-data).
+ *
+ * The generated database is kept as dataset-u{users}-s{seed}.db and copied
+ * before every run, so runs start from the same rows and compare. Reads run
+ * first, then writes, then the operations that delete data.
+ */
+public final class PersistenceBenchmark {
+
+  private static final Path DATA_DIR = Paths.get(System.getProperty("bench.dataDir", "target/bench-data"));
+
+  private static final int USERS = Integer.getInteger("bench.users", 10_000);
+  private static final long SEED = Long.getLong("bench.seed", 42);
+  private static final int THREADS = Integer.getInteger("bench.threads", Runtime.getRuntime().availableProcessors());
+  private static final long SECONDS = Long.getLong("bench.seconds", 5);
+  private static final long WARMUP_SECONDS = Long.getLong("bench.warmupSeconds", 1);
+  private static final List<String> ONLY = Arrays.asList(System.getProperty("bench.only", "").split(","));
+
+  // Repositories report most failures only as "Error ..." lines on stderr
+  private static final AtomicLong LOGGED_ERRORS = new AtomicLong();
+
+  private static final String[] SEARCHES = { "the", "de", "bzaf", "que", "3afak", "\u0627\u0644" };
+  private static final int ID_SAMPLE_USERS = 2_000;
+
+  /**
+   * One call of the method under test; false counts as a failure
+   */
+  @FunctionalInterface
+  private interface Operation {
+    boolean run(SplittableRandom random) throws Exception;
+  }
+
+  private PersistenceBenchmark() {
+  }
+
+  /**
+   * Point DatabaseManager at the benchmark directory; must run before it loads
+   */
+  static void useDataDirectory() throws IOException {
+    Files.createDirectories(DATA_DIR);
+    System.setProperty("jboss.server.data.dir", DATA_DIR.toString());
+  }
+
+  public static void main(String[] args) throws Exception {
+    useDataDirectory();
+    HistoryDataGenerator generator = new HistoryDataGenerator(SEED,
+        Paths.get(System.getProperty("bench.corpus", "src/main/langid")));
+    prepareDatabase(generator);
+    logErrors(DATA_DIR.resolve("errors.log"));
+
+    // The last tenth of the users is kept for clearHistory
+    int readable = USERS - Math.max(1, USERS / 10);
+    int[] atCap = IntStream.range(0, readable)
+        .filter(index -> generator.historySize(index) == HistoryStore.MAX_HISTORY_PER_USER)
+        .toArray();
+    List<String[]> ids = sampleIds(readable);
+    System.out.printf(Locale.ROOT, "%,d users, %,d at the history cap, %,d sampled ids, %d threads%n%n",
+        USERS, atCap.length, ids.size(), THREADS);
+
+    printHeader();
+
+    // Reads
+    run("login", random -> {
+      int index = random.nextInt(readable);
+      return UserRepository.login(HistoryDataGenerator.username(index), HistoryDataGenerator.password(index));
+    });
+    run("getUser", random -> UserRepository.getUser(user(random, readable)) != null);
+    run("userExists", random -> UserRepository.userExists(user(random, readable)));
+    run("getHistory", random -> {
+      HistoryRepository.getHistory(user(random, readable));
+      return true;
+    });
+    run("searchHistory", random -> {
+      HistoryRepository.searchHistory(user(random, readable), SEARCHES[random.nextInt(SEARCHES.length)]);
+      return true;
+    });
+    run("getHistoryCount", random -> HistoryRepository.getHistoryCount(user(random, readable)) >= 0);
+    run("getTranslationById", random -> {
+      String[] id = ids.get(random.nextInt(ids.size()));
+      return HistoryRepository.getTranslationById(id[0]) != null;
+    });
+    run("exportHistory", random -> {
+      long[] rows = { 0 };
+      HistoryRepository.exportHistory(user(random, readable), null, null, row -> rows[0]++);
+      return true;
+    });
+
+    // Writes
+    long now = System.currentTimeMillis();
+    run("addTranslation", random -> {
+      String username = user(random, readable);
+      return HistoryRepository.addTranslation(username, generator.translation(username, random, now));
+    });
+    run("addTranslation@cap", random -> {
+      String username = HistoryDataGenerator.username(atCap[random.nextInt(atCap.length)]);
+      return HistoryRepository.addTranslation(username, generator.translation(username, random, now));
+    });
+    run("addTranslations[5]", random -> {
+      String username = user(random, readable);
+      List<TranslationHistory> batch = new ArrayList<>();
+      for (int i = 0; i < 5; i++) {
+        batch.add(generator.translation(username, random, now));
+      }
+      return HistoryRepository.addTranslations(username, batch);
+    });
+    run("updateUser", random -> {
+      String username = user(random, readable);
+      return UserRepository.updateUser(username, username + "@example.org", "+2127" + random.nextInt(100_000_000));
+    });
+    run("updatePassword", random -> {
+      int index = random.nextInt(readable);
+      String password = HistoryDataGenerator.password(index);
+      return UserRepository.updatePassword(HistoryDataGenerator.username(index), password, password);
+    });
+    AtomicLong registered = new AtomicLong();
+    ConcurrentLinkedQueue<String> newUsers = new ConcurrentLinkedQueue<>();
+    run("register", random -> {
+      String username = "bench" + registered.incrementAndGet();
+      newUsers.add(username);
+      return UserRepository.register(new User(username, "password", username + "@example.com", "+212600000000"));
+    });
+
+    // Deletes, each taking its rows from a shared supply
+    List<String[]> deletable = sampleIds(readable);
+    AtomicInteger nextId = new AtomicInteger();
+    run("deleteTranslation", deletable.size(), random -> {
+      String[] id = deletable.get(nextId.getAndIncrement());
+      return HistoryRepository.deleteTranslation(id[0], id[1]);
+    });
+    AtomicInteger nextCleared = new AtomicInteger(readable);
+    run("clearHistory", USERS - readable,
+        random -> HistoryRepository.clearHistory(HistoryDataGenerator.username(nextCleared.getAndIncrement())));
+    run("deleteUser", newUsers.size(), random -> {
+      String username = newUsers.poll();
+      return username != null && UserRepository.deleteUser(username);
+    });
+
+    System.out.println();
+    explain();
+  }
+
+  /**
+   * Copy the generated dataset into place, generating it on first use
+   */
+  private static void prepareDatabase(HistoryDataGenerator generator) throws IOException, SQLException {
+    Path database = DATA_DIR.resolve("translator.db");
+    Path dataset = DATA_DIR.resolve("dataset-u" + USERS + "-s" + SEED + ".db");
+    for (String suffix : new String[] { "", "-journal", "-wal", "-shm" }) {
+      Files.deleteIfExists(Paths.get(database + suffix));
+    }
+    Path partitions = DATA_DIR.resolve(HistoryPartitions.DIRECTORY_NAME);
+    if (Files.isDirectory(partitions)) {
+      try (Stream<Path> files = Files.walk(partitions)) {
+        for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+          Files.delete(file);
+        }
+      }
+    }
+
+    if (Files.exists(dataset)) {
+      Files.copy(dataset, database);
+      System.out.println("Using " + dataset);
+      return;
+    }
+    generator.generate(USERS);
+    DatabaseManager.closeConnection();
+    Files.copy(database, dataset, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Send stderr to a file, counting the error lines
+   */
+  private static void logErrors(Path file) throws IOException {
+    System.err.println("Errors are logged to " + file);
+    System.setErr(new PrintStream(new FileOutputStream(file.toFile()), true) {
+      @Override
+      public void println(String line) {
+        if (line != null && line.startsWith("Error")) {
+          LOGGED_ERRORS.incrementAndGet();
+        }
+        super.println(line);
+      }
+    });
+  }
+
+  /**
+   * History ids with their usernames, from the histories of evenly spread users
+   */
+  private static List<String[]> sampleIds(int readable) {
+    List<String[]> ids = new ArrayList<>();
+    int step = Math.max(1, readable / ID_SAMPLE_USERS);
+    for (int index = 0; index < readable; index += step) {
+      for (TranslationHistory history : HistoryRepository.getHistory(HistoryDataGenerator.username(index))) {
+        ids.add(new String[] { history.getId(), history.getUsername() });
+      }
+    }
+    return ids;
+  }
+
+  private static String user(SplittableRandom random, int readable) {
+    return HistoryDataGenerator.username(random.nextInt(readable));
+  }
+
+  private static void run(String name, Operation operation) throws InterruptedException {
+    run(name, Long.MAX_VALUE, operation);
+  }
+
+  /**
+   * Run an operation for bench.seconds on one thread, then on bench.threads,
+   * each at most limit times
+   */
+  private static void run(String name, long limit, Operation operation) throws InterruptedException {
+    if (!ONLY.contains("") && !ONLY.contains(name)) {
+      return;
+    }
+    boolean limited = limit != Long.MAX_VALUE;
+    if (!limited) {
+      measure(operation, 1, WARMUP_SECONDS, Long.MAX_VALUE);
+    }
+    for (int threads : THREADS > 1 ? new int[] { 1, THREADS } : new int[] { 1 }) {
+      // Limited operations consume their supply, so they skip the warm up and split it
+      long logged = LOGGED_ERRORS.get();
+      long[] latencies = measure(operation, threads, SECONDS, limited ? limit / 2 : limit);
+      print(name, threads, latencies, LOGGED_ERRORS.get() - logged);
+    }
+  }
+
+  /**
+   * Latencies in nanoseconds of every call, sorted; the last element holds
+   * the elapsed time and the one before it the failure count
+   */
+  private static long[] measure(Operation operation, int threads, long seconds, long limit)
+      throws InterruptedException {
+
+    long[][] recorded = new long[threads][];
+    int[] counts = new int[threads];
+    AtomicLong failures = new AtomicLong();
+    AtomicLong remaining = new AtomicLong(limit);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> workers = new ArrayList<>();
+
+    for (int t = 0; t < threads; t++) {
+      int worker = t;
+      SplittableRandom random = new SplittableRandom(SEED * 31 + t);
+      Thread thread = new Thread(() -> {
+        long[] latencies = new long[1 << 16];
+        int count = 0;
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        while (System.nanoTime() < deadline && remaining.getAndDecrement() > 0) {
+          long began = System.nanoTime();
+          boolean ok;
+          try {
+            ok = operation.run(random);
+          } catch (Exception e) {
+            ok = false;
+          }
+          long took = System.nanoTime() - began;
+          if (!ok) {
+            failures.incrementAndGet();
+          }
+          if (count == latencies.length) {
+            latencies = Arrays.copyOf(latencies, count * 2);
+          }
+          latencies[count++] = took;
+        }
+        recorded[worker] = latencies;
+        counts[worker] = count;
+      }, "bench-" + t);
+      workers.add(thread);
+      thread.start();
+    }
+
+    long began = System.nanoTime();
+    start.countDown();
+    for (Thread thread : workers) {
+      thread.join();
+    }
+    long elapsed = System.nanoTime() - began;
+
+    int total = Arrays.stream(counts).sum();
+    long[] all = new long[total + 2];
+    int offset = 0;
+    for (int t = 0; t < threads; t++) {
+      System.arraycopy(recorded[t], 0, all, offset, counts[t]);
+      offset += counts[t];
+    }
+    Arrays.sort(all, 0, total);
+    all[total] = failures.get();
+    all[total + 1] = elapsed;
+    return all;
+  }
+
+  private static void printHeader() {
+    System.out.printf(Locale.ROOT, "%-20s %7s %9s %10s %9s %9s %9s %9s %9s %8s %8s%n", "operation",
+        "threads", "calls", "calls/s", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us", "failed", "errors");
+  }
+
+  private static void print(String name, int threads, long[] latencies, long errors) {
+    int calls = latencies.length - 2;
+    long failures = latencies[calls];
+    double seconds = latencies[calls + 1] / 1e9;
+    System.out.printf(Locale.ROOT, "%-20s %7d %9d %10.0f %9.0f %9.0f %9.0f %9.0f %9.0f %8d %8d%n", name, threads,
+        calls, calls / seconds, percentile(latencies, calls, 0.50), percentile(latencies, calls, 0.90),
+        percentile(latencies, calls, 0.99), percentile(latencies, calls, 0.999),
+        calls == 0 ? 0 : latencies[calls - 1] / 1e3, failures, errors);
+  }
+
+  private static double percentile(long[] sorted, int count, double fraction) {
+    if (count == 0) {
+      return 0;
+    }
+    return sorted[Math.min(count - 1, (int) Math.ceil(fraction * count) - 1)] / 1e3;
+  }
+
+  /**
+   * Print SQLite's plan for the statements behind each method. The statements
+   * mirror SqliteHistoryStore and SqliteUserStore and must be kept in step.
+   */
+  private static void explain() throws SQLException {
+    String selectHistory = """
+        SELECT h.id AS id, u.username, o.codec AS original_codec, o.body AS original_body,
+            t.codec AS translated_codec, t.body AS translated_body, h.target_lang, h.timestamp
+        FROM main.translation_history h
+        JOIN main.users u ON u.id = h.user_id
+        JOIN main.texts o ON o.id = h.original_id
+        JOIN main.texts t ON t.id = h.translated_id
+        """;
+    Map<String, String> statements = new HashMap<>();
+    statements.put("getHistory", selectHistory + "WHERE u.username = ? ORDER BY h.id DESC LIMIT ?");
+    statements.put("getTranslationById", selectHistory + "WHERE h.id = ?");
+    statements.put("exportHistory", selectHistory + "WHERE 1 = 1 AND u.username = ? AND h.id >= ? ORDER BY id");
+    statements.put("getHistoryCount", "SELECT COUNT(*) as count FROM translation_history WHERE user_id = ?");
+    statements.put("addTranslations", """
+        INSERT INTO translation_history
+        (id, user_id, original_id, translated_id, target_lang, timestamp)
+        SELECT ?, id, ?, ?, ?, ? FROM users WHERE username = ?
+        """);
+    statements.put("addTranslations: text lookup", "SELECT id FROM texts WHERE hash = ?");
+    statements.put("addTranslations: cleanupOldHistory", """
+        DELETE FROM translation_history
+        WHERE user_id = ? AND id <= (
+            SELECT id FROM translation_history
+            WHERE user_id = ?
+            ORDER BY id DESC
+            LIMIT 1 OFFSET ?
+        )
+        """);
+    statements.put("clearHistory", "DELETE FROM translation_history WHERE user_id = ?");
+    statements.put("deleteTranslation", """
+        DELETE FROM main.translation_history
+        WHERE id = ? AND user_id = (SELECT id FROM main.users WHERE username = ?)
+        """);
+    statements.put("login", "SELECT password FROM users WHERE username = ?");
+    statements.put("getUser", "SELECT username, email, phone FROM users WHERE username = ?");
+    statements.put("updateUser", "UPDATE users SET email = ?, phone = ? WHERE username = ?");
+    statements.put("deleteUser", "DELETE FROM users WHERE username = ? RETURNING id");
+
+    try (Connection conn = DatabaseManager.openConnection()) {
+      for (String name : statements.keySet().stream().sorted().toList()) {
+        System.out.println(name);
+        try (PreparedStatement pstmt = conn.prepareStatement("EXPLAIN QUERY PLAN " + statements.get(name));
+            ResultSet rs = pstmt.executeQuery()) {
+          // Rows are id, parent, notused, detail; children follow their parent
+          Map<Integer, Integer> depth = new HashMap<>();
+          depth.put(0, 0);
+          while (rs.next()) {
+            int level = depth.getOrDefault(rs.getInt("parent"), 0) + 1;
+            depth.put(rs.getInt("id"), level);
+            System.out.println("  ".repeat(level) + rs.getString("detail"));
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,48 @@
+package com.berrimi.translator.jakarta.hello;
+
+/**
+ * Reads the Accept-Encoding request header for {@link CompressionInterceptor}
+ * and {@link PrecompressedAssetFilter}.
+ */
+public final class AcceptEncoding {
+
+  private AcceptEncoding() {
+  }
+
+  /**
+   * Whether the encoding has a q-value above 0, taken from its own entry if
+   * there is one and otherwise from "*"
+   */
+  public static boolean accepts(String acceptEncoding, String encoding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+    double exact = -1;
+    double wildcard = -1;
+    for (String part : acceptEncoding.split(",")) {
+      String[] tokens = part.trim().split(";");
+      String name = tokens[0].trim();
+      if (name.equalsIgnoreCase(encoding)) {
+        exact = Math.max(exact, quality(tokens));
+      } else if (name.equals("*")) {
+        wildcard = Math.max(wildcard, quality(tokens));
+      }
+    }
+    return (exact >= 0 ? exact : wildcard) > 0;
+  }
+
+  // A missing q-value means 1; a malformed one 0, as the identity encoding is always safe
+  private static double quality(String[] tokens) {
+    for (int i = 1; i < tokens.length; i++) {
+      int equals = tokens[i].indexOf('=');
+      if (equals > 0 && tokens[i].substring(0, equals).trim().equalsIgnoreCase("q")) {
+        try {
+          return Double.parseDouble(tokens[i].substring(equals + 1).trim());
+        } catch (NumberFormatException e) {
+          return 0;
+        }
+      }
+    }
+    return 1;
+  }
+}
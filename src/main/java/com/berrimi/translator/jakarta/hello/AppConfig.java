@@ -0,0 +1,100 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Tuning settings read from translator.properties.
+ *
+ * A JVM system property with the same key overrides the file, so settings can
+ * be changed per server in standalone.xml without rebuilding the war.
+ */
+public final class AppConfig {
+
+  private static final Properties PROPERTIES = load();
+
+  private AppConfig() {
+  }
+
+  private static Properties load() {
+    Properties props = new Properties();
+    try (InputStream input = AppConfig.class.getClassLoader()
+        .getResourceAsStream("translator.properties")) {
+
+      if (input != null) {
+        props.load(input);
+      }
+    } catch (IOException e) {
+      System.err.println("Error loading translator.properties: " + e.getMessage());
+    }
+    return props;
+  }
+
+  /**
+   * Get a string setting, or the default if it is not set
+   */
+  public static String get(String key, String defaultValue) {
+    String value = System.getProperty(key);
+    if (value == null) {
+      value = PROPERTIES.getProperty(key);
+    }
+    return value == null || value.isBlank() ? defaultValue : value.trim();
+  }
+
+  /**
+   * Get an integer setting, or the default if it is not set or invalid
+   */
+  public static int getInt(String key, int defaultValue) {
+    String value = get(key, null);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      System.err.println("Invalid integer for " + key + ": " + value);
+      return defaultValue;
+    }
+  }
+
+  /**
+   * Get a long setting, or the default if it is not set or invalid
+   */
+  public static long getLong(String key, long defaultValue) {
+    String value = get(key, null);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      System.err.println("Invalid number for " + key + ": " + value);
+      return defaultValue;
+    }
+  }
+
+  /**
+   * Get a decimal setting, or the default if it is not set or invalid
+   */
+  public static double getDouble(String key, double defaultValue) {
+    String value = get(key, null);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Double.parseDouble(value);
+    } catch (NumberFormatException e) {
+      System.err.println("Invalid number for " + key + ": " + value);
+      return defaultValue;
+    }
+  }
+
+  /**
+   * Get a boolean setting, or the default if it is not set
+   */
+  public static boolean getBoolean(String key, boolean defaultValue) {
+    String value = get(key, null);
+    return value == null ? defaultValue : Boolean.parseBoolean(value);
+  }
+}
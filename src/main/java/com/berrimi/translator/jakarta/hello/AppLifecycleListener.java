@@ -5,7 +5,7 @@ import jakarta.servlet.ServletContextListener;
 import jakarta.servlet.annotation.WebListener;
 
 /**
- * Application lifecycle listener to manage database connection
+ * Application lifecycle listener to manage database connection and background workers
  */
 @WebListener
 public class AppLifecycleListener implements ServletContextListener {
@@ -14,11 +14,25 @@ public class AppLifecycleListener implements ServletContextListener {
   public void contextInitialized(ServletContextEvent sce) {
     System.out.println("Application started - Database initialized");
     // Database is already initialized in DatabaseManager static block
+    JobWorker.start();
+    HistoryPartitions.start();
+    UsageMeter.start();
+    PopularTranslations.start();
   }
 
   @Override
   public void contextDestroyed(ServletContextEvent sce) {
     System.out.println("Application shutting down - Closing database connection");
+    PopularTranslations.stop();
+    JobWorker.stop();
+    HistoryPartitions.stop();
+    DocumentTranslator.shutdown();
+    MultiTargetTranslator.shutdown();
+    TranslationCache.shutdown();
+    SpeechPrefetcher.shutdown();
+    LiveTranslationEndpoint.shutdown();
+    SpeechStreamer.shutdown();
+    UsageMeter.stop();
     DatabaseManager.closeConnection();
   }
 }
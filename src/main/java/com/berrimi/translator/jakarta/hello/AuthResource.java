@@ -1,7 +1,5 @@
 package com.berrimi.translator.jakarta.hello;
 
-import jakarta.json.Json;
-import jakarta.json.JsonObject;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
@@ -52,13 +50,12 @@ public class AuthResource {
     // Get user details to return
     User foundUser = UserRepository.getUser(user.getUsername());
     if (foundUser != null) {
-      JsonObject json = Json.createObjectBuilder()
-          .add("message", "Login successful")
-          .add("username", foundUser.getUsername())
-          .add("email", foundUser.getEmail())
-          .add("phone", foundUser.getPhone())
-          .build();
-      return Response.ok(json.toString()).build();
+      return Response.ok(JsonSupport.stream(json -> json.writeStartObject()
+          .write("message", "Login successful")
+          .write("username", foundUser.getUsername())
+          .write("email", foundUser.getEmail())
+          .write("phone", foundUser.getPhone())
+          .writeEnd())).build();
     }
 
     return Response.ok("{\"message\":\"Login successful\"}").build();
@@ -81,13 +78,11 @@ public class AuthResource {
           .build();
     }
 
-    JsonObject json = Json.createObjectBuilder()
-        .add("username", user.getUsername())
-        .add("email", user.getEmail())
-        .add("phone", user.getPhone())
-        .build();
-
-    return Response.ok(json.toString()).build();
+    return Response.ok(JsonSupport.stream(json -> json.writeStartObject()
+        .write("username", user.getUsername())
+        .write("email", user.getEmail())
+        .write("phone", user.getPhone())
+        .writeEnd())).build();
   }
 
   @PUT
@@ -134,14 +129,12 @@ public class AuthResource {
           .build();
     }
 
-    JsonObject json = Json.createObjectBuilder()
-        .add("message", "User updated successfully")
-        .add("username", username)
-        .add("email", newEmail)
-        .add("phone", newPhone)
-        .build();
-
-    return Response.ok(json.toString()).build();
+    return Response.ok(JsonSupport.stream(json -> json.writeStartObject()
+        .write("message", "User updated successfully")
+        .write("username", username)
+        .write("email", newEmail)
+        .write("phone", newPhone)
+        .writeEnd())).build();
   }
 
   @PUT
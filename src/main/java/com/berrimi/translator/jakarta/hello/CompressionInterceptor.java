@@ -0,0 +1,185 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.ext.Provider;
+import jakarta.ws.rs.ext.WriterInterceptor;
+import jakarta.ws.rs.ext.WriterInterceptorContext;
+
+/**
+ * Gzip-compresses REST response bodies when the client accepts it.
+ *
+ * Bodies are buffered up to the size threshold before deciding, so small
+ * responses go out unchanged and streamed ones never need a known length.
+ * Brotli has no encoder in the JDK; it is only served for static assets
+ * precompressed at build time (see {@link PrecompressedAssetFilter}).
+ */
+@Provider
+public class CompressionInterceptor implements WriterInterceptor {
+
+  static final String GZIP = "gzip";
+  static final String ETAG_SUFFIX = "-" + GZIP;
+
+  private static final boolean ENABLED = AppConfig.getBoolean("compression.enabled", true);
+  private static final int MIN_SIZE = AppConfig.getInt("compression.minSize", 1024);
+  private static final int LEVEL = AppConfig.getInt("compression.level", 6);
+
+  @Context
+  private HttpHeaders requestHeaders;
+
+  @Override
+  public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+    MultivaluedMap<String, Object> headers = context.getHeaders();
+    if (!ENABLED || headers.containsKey("Content-Encoding") || !isCompressible(context.getMediaType())) {
+      context.proceed();
+      return;
+    }
+
+    headers.add("Vary", "Accept-Encoding");
+    if (!AcceptEncoding.accepts(requestHeaders.getHeaderString(HttpHeaders.ACCEPT_ENCODING), GZIP)) {
+      context.proceed();
+      return;
+    }
+
+    ThresholdGzipOutputStream compressed = new ThresholdGzipOutputStream(context.getOutputStream(), headers);
+    context.setOutputStream(compressed);
+    context.proceed();
+    compressed.finish();
+  }
+
+  private static boolean isCompressible(MediaType type) {
+    if (type == null) {
+      return false;
+    }
+    String main = type.getType();
+    String sub = type.getSubtype();
+    return main.equals("text")
+        || sub.equals("json") || sub.endsWith("+json")
+        || sub.equals("xml") || sub.endsWith("+xml")
+        || sub.equals("x-ndjson") || sub.equals("javascript");
+  }
+
+  /**
+   * Buffers output until the threshold is reached, then switches to gzip. The
+   * response headers are still uncommitted at that point, so Content-Encoding
+   * can be added and a strong ETag given an encoding-specific suffix.
+   */
+  private static final class ThresholdGzipOutputStream extends OutputStream {
+
+    private final OutputStream target;
+    private final MultivaluedMap<String, Object> headers;
+    private byte[] buffer = new byte[MIN_SIZE];
+    private int count;
+    private OutputStream gzip;
+    private boolean finished;
+
+    ThresholdGzipOutputStream(OutputStream target, MultivaluedMap<String, Object> headers) {
+      this.target = target;
+      this.headers = headers;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (gzip != null) {
+        gzip.write(b, off, len);
+      } else if (count + len <= buffer.length) {
+        System.arraycopy(b, off, buffer, count, len);
+        count += len;
+      } else {
+        startCompression();
+        gzip.write(b, off, len);
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      // Undecided output stays buffered; flushing it would commit the headers
+      if (gzip != null) {
+        gzip.flush();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      finish();
+    }
+
+    void finish() throws IOException {
+      if (finished) {
+        return;
+      }
+      finished = true;
+      if (gzip != null) {
+        gzip.close();
+      } else {
+        target.write(buffer, 0, count);
+        target.flush();
+      }
+      buffer = null;
+    }
+
+    private void startCompression() throws IOException {
+      headers.putSingle("Content-Encoding", GZIP);
+      headers.remove("Content-Length");
+
+      Object etag = headers.getFirst("ETag");
+      // Weak tags already cover every encoding of the body
+      if (etag instanceof String tag && tag.startsWith("\"") && tag.endsWith("\"")) {
+        headers.putSingle("ETag", tag.substring(0, tag.length() - 1) + ETAG_SUFFIX + "\"");
+      }
+
+      gzip = new LeveledGzipOutputStream(new NonClosingOutputStream(target), LEVEL);
+      gzip.write(buffer, 0, count);
+      count = 0;
+    }
+  }
+
+  private static final class LeveledGzipOutputStream extends GZIPOutputStream {
+
+    LeveledGzipOutputStream(OutputStream out, int level) throws IOException {
+      // Sync flush so streamed responses reach the client as they are written
+      super(out, 8192, true);
+      def.setLevel(level);
+    }
+  }
+
+  private static final class NonClosingOutputStream extends OutputStream {
+
+    private final OutputStream out;
+
+    NonClosingOutputStream(OutputStream out) {
+      this.out = out;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      out.flush();
+    }
+  }
+}
@@ -0,0 +1,165 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.ext.Provider;
+
+/**
+ * Weak ETags, Cache-Control and 304 handling for translations, speech and history.
+ *
+ * Tags are computed before the resource runs, so a matching If-None-Match is
+ * answered without calling the LLM or reading SQLite. Translations are tagged by
+ * a hash of (target, text); speech by a hash of (audio format, target, text),
+ * with "Vary: Accept" since the format may come from that header; history by
+ * the user's {@link HistoryVersions} token. None of them hash the body itself,
+ * which may be worded differently when generated again, so the tags are weak,
+ * and 304s and gzip and identity 200s all carry the same one.
+ * A resource can opt a response out by setting "Cache-Control: no-store".
+ */
+@Provider
+public class ConditionalCacheFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+  static final String TRANSLATION_CACHE_CONTROL = "public, max-age=86400";
+  static final String HISTORY_CACHE_CONTROL = "private, no-cache";
+
+  private static final String ETAG_PROPERTY = ConditionalCacheFilter.class.getName() + ".etag";
+  private static final String POLICY_PROPERTY = ConditionalCacheFilter.class.getName() + ".policy";
+  private static final String VARY_PROPERTY = ConditionalCacheFilter.class.getName() + ".vary";
+
+  @Override
+  public void filter(ContainerRequestContext requestContext) {
+    if (!"GET".equals(requestContext.getMethod())) {
+      return;
+    }
+
+    String path = stripSlashes(requestContext.getUriInfo().getPath());
+    MultivaluedMap<String, String> query = requestContext.getUriInfo().getQueryParameters();
+    String username = query.getFirst("username");
+    String etag;
+    String policy;
+
+    if ("translate".equals(path) && isBlank(username)) {
+      // Anonymous translations are a pure function of text and target language
+      String text = query.getFirst("text");
+      if (isBlank(text)) {
+        return;
+      }
+      String to = query.getFirst("to");
+      etag = "\"tr-" + hash((to == null ? "darija" : to) + "\n" + text) + "\"";
+      policy = TRANSLATION_CACHE_CONTROL;
+    } else if ("tts".equals(path) && !isBlank(query.getFirst("text"))) {
+      // Each audio format is a separate variant of the same speech
+      SpeechFormat format;
+      try {
+        format = SpeechFormat.negotiate(query.getFirst("format"), query.getFirst("sampleRate"),
+            query.getFirst("rate"), requestContext.getAcceptableMediaTypes());
+      } catch (IllegalArgumentException e) {
+        return;
+      }
+      String to = query.getFirst("to");
+      etag = "\"tts-" + hash(format.key() + "\n" + (to == null ? "" : to) + "\n" + query.getFirst("text")) + "\"";
+      policy = TRANSLATION_CACHE_CONTROL;
+      requestContext.setProperty(VARY_PROPERTY, "Accept");
+    } else if ("translate/history".equals(path) && !isBlank(username) && !Persistence.isShared()) {
+      // History versions are counted per node, so they only work while this node sees every write
+      etag = "\"hi-" + HistoryVersions.token(username) + "\"";
+      policy = HISTORY_CACHE_CONTROL;
+    } else {
+      return;
+    }
+
+    requestContext.setProperty(ETAG_PROPERTY, etag);
+    requestContext.setProperty(POLICY_PROPERTY, policy);
+
+    if (matches(requestContext.getHeaderString("If-None-Match"), etag)) {
+      // Headers are added by the response filter, which also sees aborted responses
+      requestContext.abortWith(Response.notModified().build());
+    }
+  }
+
+  @Override
+  public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+    Object etag = requestContext.getProperty(ETAG_PROPERTY);
+    if (etag == null) {
+      return;
+    }
+
+    int status = responseContext.getStatus();
+    if (status != 200 && status != 304) {
+      return;
+    }
+
+    String cacheControl = responseContext.getHeaderString("Cache-Control");
+    if (cacheControl != null && cacheControl.contains("no-store")) {
+      return;
+    }
+
+    MultivaluedMap<String, Object> headers = responseContext.getHeaders();
+    headers.putSingle("ETag", "W/" + etag);
+    Object vary = requestContext.getProperty(VARY_PROPERTY);
+    if (vary != null) {
+      headers.add("Vary", vary);
+    }
+    if (cacheControl == null) {
+      headers.putSingle("Cache-Control", requestContext.getProperty(POLICY_PROPERTY));
+    }
+  }
+
+  /**
+   * If-None-Match uses weak comparison and may list several tags or "*"
+   */
+  static boolean matches(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    for (String candidate : ifNoneMatch.split(",")) {
+      String tag = candidate.trim();
+      if (tag.startsWith("W/")) {
+        tag = tag.substring(2);
+      }
+      if (tag.endsWith(CompressionInterceptor.ETAG_SUFFIX + "\"")) {
+        // Strong tags sent with gzip responses before these tags were weak
+        tag = tag.substring(0, tag.length() - CompressionInterceptor.ETAG_SUFFIX.length() - 1) + "\"";
+      }
+      if (tag.equals("*") || tag.equals(etag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static String hash(String value) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      byte[] hash = digest.digest(value.getBytes(StandardCharsets.UTF_8));
+      return Base64.getUrlEncoder().withoutPadding().encodeToString(hash).substring(0, 22);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+  }
+
+  private static String stripSlashes(String path) {
+    int start = 0;
+    int end = path.length();
+    while (start < end && path.charAt(start) == '/') {
+      start++;
+    }
+    while (end > start && path.charAt(end - 1) == '/') {
+      end--;
+    }
+    return path.substring(start, end);
+  }
+
+  private static boolean isBlank(String value) {
+    return value == null || value.isBlank();
+  }
+}
@@ -1,13 +1,17 @@
 package com.berrimi.translator.jakarta.hello;
 
+import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.sql.Statement;
 
+import org.sqlite.SQLiteConfig;
+
 public class DatabaseManager {
   // Database in WildFly's standalone/data directory
-  private static final String DB_PATH = System.getProperty("jboss.server.data.dir", ".") + "/translator.db";
+  private static final String DATA_DIR = System.getProperty("jboss.server.data.dir", ".");
+  private static final String DB_PATH = DATA_DIR + "/translator.db";
   private static final String DB_URL = "jdbc:sqlite:" + DB_PATH;
   private static Connection connection;
 
@@ -29,19 +33,53 @@ public class DatabaseManager {
   }
 
   /**
-   * Get database connection
+   * Get the shared connection used for setup; callers must not close it
    */
   public static Connection getConnection() throws SQLException {
     if (connection == null || connection.isClosed()) {
-      connection = DriverManager.getConnection(DB_URL);
-      // Enable foreign keys
-      try (Statement stmt = connection.createStatement()) {
-        stmt.execute("PRAGMA foreign_keys = ON;");
-      }
+      connection = connect();
     }
     return connection;
   }
 
+  /**
+   * Directory holding the database and its history partitions
+   */
+  public static String dataDirectory() {
+    return DATA_DIR;
+  }
+
+  /**
+   * Open a dedicated connection owned by the caller, who closes it. Stores use
+   * one per operation, so concurrent requests never share or close each
+   * other's connection.
+   */
+  public static Connection openConnection() throws SQLException {
+    return connect();
+  }
+
+  /**
+   * Open a connection in WAL mode, so readers (a long export included) never
+   * block a writer's commit and a writer never blocks readers. Transactions
+   * begin IMMEDIATE: a writer takes the write lock up front, waiting out
+   * other writers through the busy timeout, instead of upgrading a read lock
+   * later, which SQLite fails at once with SQLITE_BUSY when two transactions
+   * try it together.
+   */
+  private static Connection connect() throws SQLException {
+    SQLiteConfig config = new SQLiteConfig();
+    config.setTransactionMode(SQLiteConfig.TransactionMode.IMMEDIATE);
+    Connection conn = DriverManager.getConnection(DB_URL, config.toProperties());
+    try (Statement stmt = conn.createStatement()) {
+      stmt.execute("PRAGMA foreign_keys = ON;");
+      // Wait for other writers instead of failing with SQLITE_BUSY
+      stmt.execute("PRAGMA busy_timeout = 5000;");
+      // Persistent in the file; repeating it is a no-op
+      stmt.execute("PRAGMA journal_mode = WAL;");
+    }
+    return SqlMonitor.wrap(conn);
+  }
+
   /**
    * Initialize database and create tables if they don't exist
    */
@@ -61,7 +99,7 @@ public class DatabaseManager {
           );
           """;
 
-      // Create translation_history table
+      // Create translation_history table (schema version 0, see SchemaMigrations)
       String createHistoryTable = """
           CREATE TABLE IF NOT EXISTS translation_history (
               id TEXT PRIMARY KEY,
@@ -86,10 +124,79 @@ public class DatabaseManager {
           ON translation_history(timestamp DESC);
           """;
 
+      // Create translation_jobs table for asynchronous bulk translation
+      String createJobsTable = """
+          CREATE TABLE IF NOT EXISTS translation_jobs (
+              id TEXT PRIMARY KEY,
+              username TEXT,
+              target_lang TEXT NOT NULL,
+              total_items INTEGER NOT NULL,
+              created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+          );
+          """;
+
+      // Create translation_job_items table, one row per text to translate
+      String createJobItemsTable = """
+          CREATE TABLE IF NOT EXISTS translation_job_items (
+              job_id TEXT NOT NULL,
+              item_index INTEGER NOT NULL,
+              source_text TEXT NOT NULL,
+              translated_text TEXT,
+              status TEXT NOT NULL DEFAULT 'pending',
+              attempts INTEGER NOT NULL DEFAULT 0,
+              last_error TEXT,
+              next_attempt_at INTEGER NOT NULL DEFAULT 0,
+              PRIMARY KEY (job_id, item_index),
+              FOREIGN KEY (job_id) REFERENCES translation_jobs(id) ON DELETE CASCADE
+          );
+          """;
+
+      // Create index for workers claiming the next pending items
+      String createJobItemsStatusIndex = """
+          CREATE INDEX IF NOT EXISTS idx_job_items_status
+          ON translation_job_items(status, next_attempt_at);
+          """;
+
+      // Create usage_totals table, one row per user, target language and day (see UsageMeter)
+      String createUsageTable = """
+          CREATE TABLE IF NOT EXISTS usage_totals (
+              username TEXT NOT NULL,
+              target_lang TEXT NOT NULL,
+              day TEXT NOT NULL,
+              translations INTEGER NOT NULL DEFAULT 0,
+              characters INTEGER NOT NULL DEFAULT 0,
+              llm_tokens INTEGER NOT NULL DEFAULT 0,
+              tts_characters INTEGER NOT NULL DEFAULT 0,
+              PRIMARY KEY (username, target_lang, day)
+          );
+          """;
+
+      // Create popular_translations table, the most requested texts saved across restarts (see PopularTranslations)
+      String createPopularTable = """
+          CREATE TABLE IF NOT EXISTS popular_translations (
+              target_lang TEXT NOT NULL,
+              text TEXT NOT NULL,
+              count INTEGER NOT NULL,
+              PRIMARY KEY (target_lang, text)
+          );
+          """;
+
       stmt.execute(createUsersTable);
       stmt.execute(createHistoryTable);
-      stmt.execute(createUsernameIndex);
-      stmt.execute(createTimestampIndex);
+      if (SchemaMigrations.getVersion(conn, "main") == 0) {
+        // Later versions replace these columns and indexes
+        stmt.execute(createUsernameIndex);
+        stmt.execute(createTimestampIndex);
+      }
+      stmt.execute(createJobsTable);
+      stmt.execute(createJobItemsTable);
+      stmt.execute(createJobItemsStatusIndex);
+      stmt.execute(createUsageTable);
+      stmt.execute(createPopularTable);
+
+      // Bring older databases up to date, then load the text dictionaries
+      SchemaMigrations.migrate(conn, Paths.get(DATA_DIR, HistoryPartitions.DIRECTORY_NAME));
+      TextStore.initialize(conn);
 
       System.out.println("Database initialized successfully");
 
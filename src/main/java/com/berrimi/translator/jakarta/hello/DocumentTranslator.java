@@ -0,0 +1,311 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Translates a text or markdown document as a stream.
+ *
+ * The input is cut into paragraph segments while it is read, at most
+ * {@code document.maxInFlight} segments are translated at once, and results are
+ * written back in input order as soon as the oldest one is ready. Reading stops
+ * while the window is full, so memory use depends on the window and segment
+ * size, never on the document size, and a slow upstream pushes back on the
+ * uploading client through TCP flow control.
+ *
+ * Whitespace-only segments and fenced markdown code blocks are copied through
+ * untranslated. A segment whose translation fails, or is shed by an overloaded
+ * scheduler, is retried up to {@code document.segmentAttempts} times with
+ * backoff. If it still fails it is copied through after
+ * {@code document.failedMarker}, since the response status has already been
+ * sent by then, and counted in the "document.failedSegments" metric. A segment
+ * the client's rate limit cannot pay for ends the response early instead.
+ *
+ * Lines are read through a fixed buffer, and a line longer than a segment is
+ * cut into segment-sized pieces as it arrives, never between the two halves of
+ * a surrogate pair.
+ *
+ * Note that Undertow rejects request bodies above the http-listener's
+ * max-post-size (10 MB by default); src/main/wildfly/document-upload.cli
+ * raises it to 100 MB.
+ */
+public final class DocumentTranslator {
+
+  static final int MAX_SEGMENT_CHARS = Math.max(200, AppConfig.getInt("document.maxSegmentChars", 2000));
+  private static final int MAX_IN_FLIGHT = Math.max(1, AppConfig.getInt("document.maxInFlight", 4));
+  private static final int THREADS = Math.max(1, AppConfig.getInt("document.threads", 8));
+  private static final int BUFFER_CHARS = 8192;
+  private static final int SEGMENT_ATTEMPTS = Math.max(1, AppConfig.getInt("document.segmentAttempts", 3));
+  private static final long RETRY_BASE_MILLIS = AppConfig.getLong("document.retryBaseMillis", 250);
+  static final String FAILED_MARKER = AppConfig.get("document.failedMarker", "[untranslated] ");
+
+  private static final LongAdder FAILED_SEGMENTS = new LongAdder();
+
+  static {
+    Metrics.gauge("document.failedSegments", FAILED_SEGMENTS::sum);
+  }
+
+  private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+  private static final ExecutorService POOL = Executors.newFixedThreadPool(THREADS, runnable -> {
+    Thread thread = new Thread(runnable, "document-translator-" + THREAD_COUNTER.incrementAndGet());
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private DocumentTranslator() {
+  }
+
+  /**
+   * Translate everything read from input and write it to output, in order.
+   * Each segment is charged to the client's rate limit before it is
+   * translated, waiting for tokens when there are none, so a large document
+   * proceeds at the pace the caller is allowed.
+   */
+  public static void translate(InputStream input, OutputStream output, String to, LlmScheduler.Lane lane,
+      String clientAddress) throws IOException {
+    translate(input, output, text -> RateLimitFilter.await(clientAddress, RateLimitFilter.charCost(text.length()))
+        ? LLMClient.translate(text, to, lane)
+        : null);
+  }
+
+  /**
+   * Translate a document with the given segment translator, e.g. a stub in tests
+   */
+  static void translate(InputStream input, OutputStream output, SegmentTranslator translator) throws IOException {
+    Reader reader = new InputStreamReader(input, StandardCharsets.UTF_8);
+    Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+    Segmenter segmenter = new Segmenter(new LineReader(reader));
+    ArrayDeque<Future<String>> window = new ArrayDeque<>(MAX_IN_FLIGHT);
+
+    try {
+      Segment segment;
+      while ((segment = segmenter.next()) != null) {
+        if (window.size() == MAX_IN_FLIGHT) {
+          writeNext(window, writer);
+        }
+        window.add(submit(segment, translator));
+      }
+      while (!window.isEmpty()) {
+        writeNext(window, writer);
+      }
+      writer.flush();
+    } finally {
+      // Client went away or the input failed: stop translating what nobody will read
+      window.forEach(future -> future.cancel(true));
+    }
+  }
+
+  /**
+   * Stop the translation threads
+   */
+  public static void shutdown() {
+    POOL.shutdownNow();
+  }
+
+  private static Future<String> submit(Segment segment, SegmentTranslator translator) {
+    if (!segment.translate) {
+      return CompletableFuture.completedFuture(segment.text + segment.separator);
+    }
+    return POOL.submit(() -> translateSegment(segment, translator));
+  }
+
+  private static String translateSegment(Segment segment, SegmentTranslator translator) throws InterruptedException {
+    for (int attempt = 1; ; attempt++) {
+      String result = translator.translate(segment.text);
+      if (result == null) {
+        throw new IllegalStateException("Rate limit cannot pay for the rest of the document");
+      }
+      if (!LLMClient.isFailure(result)) {
+        return result + segment.separator;
+      }
+      if (attempt == SEGMENT_ATTEMPTS) {
+        FAILED_SEGMENTS.increment();
+        return FAILED_MARKER + segment.text + segment.separator;
+      }
+      Thread.sleep(RETRY_BASE_MILLIS << (attempt - 1));
+    }
+  }
+
+  private static void writeNext(ArrayDeque<Future<String>> window, Writer writer) throws IOException {
+    try {
+      writer.write(window.poll().get());
+      writer.flush();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while translating document", e);
+    } catch (ExecutionException e) {
+      throw new IOException("Error translating document segment", e.getCause());
+    }
+  }
+
+  /**
+   * Translates one segment; returns an {@link LLMClient} error string on
+   * failure, or null when the segment cannot be paid for
+   */
+  @FunctionalInterface
+  interface SegmentTranslator {
+    String translate(String text);
+  }
+
+  private record Segment(String text, String separator, boolean translate) {
+  }
+
+  /**
+   * A line, or a piece of one that is too long. Only the first piece starts the
+   * line and only the last one ends it.
+   */
+  private record Line(String text, boolean starts, boolean ends) {
+
+    boolean fence() {
+      return starts && text.trim().startsWith("```");
+    }
+  }
+
+  /**
+   * Reads lines through a fixed buffer, handing out lines longer than the
+   * requested length in pieces, so memory never depends on line length.
+   * Accepts \n, \r\n and \r line ends.
+   */
+  private static final class LineReader {
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_CHARS];
+    private int position;
+    private int limit;
+    private boolean lineStart = true;
+
+    LineReader(Reader reader) {
+      this.reader = reader;
+    }
+
+    /**
+     * Read the rest of the current line, or its next maxChars characters;
+     * null at the end of input
+     */
+    Line read(int maxChars) throws IOException {
+      boolean starts = lineStart;
+      StringBuilder text = new StringBuilder(Math.min(maxChars, 256));
+      while (text.length() < maxChars) {
+        if (position == limit && !fill()) {
+          // A last line without a line end still counts as a whole line
+          lineStart = true;
+          return text.length() == 0 && starts ? null : new Line(text.toString(), starts, true);
+        }
+        int end = Math.min(limit, position + maxChars - text.length());
+        int start = position;
+        while (position < end && buffer[position] != '\n' && buffer[position] != '\r') {
+          position++;
+        }
+        text.append(buffer, start, position - start);
+        if (position < end) {
+          char lineEnd = buffer[position++];
+          if (lineEnd == '\r' && (position < limit || fill()) && buffer[position] == '\n') {
+            position++;
+          }
+          lineStart = true;
+          return new Line(text.toString(), starts, true);
+        }
+      }
+      // Too long: keep a surrogate pair together in the next piece
+      if (Character.isHighSurrogate(text.charAt(text.length() - 1))) {
+        text.setLength(text.length() - 1);
+        position--;
+      }
+      lineStart = false;
+      return new Line(text.toString(), starts, false);
+    }
+
+    private boolean fill() throws IOException {
+      int read = reader.read(buffer, 0, buffer.length);
+      position = 0;
+      limit = Math.max(0, read);
+      return read > 0;
+    }
+  }
+
+  /**
+   * Splits input into paragraphs at blank lines, keeping each paragraph under
+   * the segment size limit and fenced code blocks in one untranslated segment.
+   */
+  private static final class Segmenter {
+
+    private final LineReader reader;
+    private Line pending;
+
+    Segmenter(LineReader reader) {
+      this.reader = reader;
+    }
+
+    Segment next() throws IOException {
+      Line line = pending != null ? pending : reader.read(MAX_SEGMENT_CHARS);
+      pending = null;
+      if (line == null) {
+        return null;
+      }
+
+      StringBuilder text = new StringBuilder();
+
+      if (line.text().isBlank()) {
+        // Run of blank lines between paragraphs
+        do {
+          append(text, line);
+        } while (text.length() < MAX_SEGMENT_CHARS * 4
+            && (line = reader.read(MAX_SEGMENT_CHARS)) != null && line.text().isBlank());
+        pending = text.length() < MAX_SEGMENT_CHARS * 4 ? line : null;
+        return new Segment(text.toString(), "", false);
+      }
+
+      if (line.fence()) {
+        append(text, line);
+        while (text.length() < MAX_SEGMENT_CHARS * 4 && (line = reader.read(MAX_SEGMENT_CHARS)) != null) {
+          append(text, line);
+          if (line.fence()) {
+            break;
+          }
+        }
+        return new Segment(text.toString(), "", false);
+      }
+
+      while (line != null && !line.text().isBlank() && !line.fence()) {
+        if (text.length() > 0 && text.length() + line.text().length() > MAX_SEGMENT_CHARS) {
+          break;
+        }
+        append(text, line);
+        boolean piece = !line.ends();
+        line = reader.read(MAX_SEGMENT_CHARS);
+        if (piece) {
+          // A piece of a huge line fills a segment on its own
+          break;
+        }
+      }
+      pending = line;
+
+      // The trailing newline is kept out of the prompt and restored afterwards
+      int end = text.length();
+      boolean newline = end > 0 && text.charAt(end - 1) == '\n';
+      return new Segment(newline ? text.substring(0, end - 1) : text.toString(), newline ? "\n" : "", true);
+    }
+
+    private static void append(StringBuilder text, Line line) {
+      text.append(line.text());
+      if (line.ends()) {
+        text.append('\n');
+      }
+    }
+  }
+}
@@ -0,0 +1,34 @@
+package com.berrimi.translator.jakarta.hello;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+@Path("health")
+public class HealthResource {
+
+  /**
+   * Readiness for the load balancer: 503 while the startup warm-up of popular
+   * translations is still running, 200 once it is done or has timed out
+   */
+  @GET
+  @Path("ready")
+  @Produces(MediaType.APPLICATION_JSON)
+  public Response ready() {
+    boolean ready = PopularTranslations.isWarm();
+    PopularTranslations.Warmup warmup = PopularTranslations.warmup();
+
+    return Response.status(ready ? 200 : 503).entity(JsonSupport.stream(json -> json.writeStartObject()
+        .write("status", ready ? "ready" : "warming")
+        .writeStartObject("warmup")
+        .write("total", warmup.total())
+        .write("translated", warmup.translated())
+        .write("cached", warmup.cached())
+        .write("failed", warmup.failed())
+        .write("finished", warmup.finished())
+        .writeEnd()
+        .writeEnd())).header("Cache-Control", "no-store").build();
+  }
+}
@@ -0,0 +1,158 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Time-ordered 64-bit history ids and their opaque API form.
+ *
+ * An id is milliseconds since 2020-01-01 UTC shifted left by 22 bits plus a
+ * sequence, so ids are the SQLite rowid, new rows append at the right edge of
+ * the B-tree, and the month (hence the archive partition) of a row can be read
+ * from its id. The API never sees these numbers: they are passed through a
+ * keyed four-round Feistel permutation and base64url encoded, which keeps
+ * volume and timing private without storing a second id.
+ */
+public final class HistoryIds {
+
+  private static final long EPOCH = 1_577_836_800_000L;
+  private static final int SEQUENCE_BITS = 22;
+
+  // Last issued id; ids stay unique and increasing even if the clock steps back
+  private static final AtomicLong LAST = new AtomicLong();
+
+  private static volatile byte[] key;
+  private static final ThreadLocal<Mac> MACS = ThreadLocal.withInitial(() -> {
+    try {
+      Mac mac = Mac.getInstance("HmacSHA256");
+      mac.init(new SecretKeySpec(key(), "HmacSHA256"));
+      return mac;
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("HmacSHA256 not available", e);
+    }
+  });
+
+  private HistoryIds() {
+  }
+
+  /**
+   * Issue a new id for a row created now
+   */
+  public static long next() {
+    long floor = lowerBound(System.currentTimeMillis());
+    return LAST.accumulateAndGet(floor, (last, candidate) -> Math.max(last + 1, candidate));
+  }
+
+  /**
+   * Make sure ids issued from now on are greater than the given one
+   */
+  public static void advancePast(long id) {
+    LAST.accumulateAndGet(id, Math::max);
+  }
+
+  /**
+   * Smallest id a row created at the given time can have
+   */
+  public static long lowerBound(long millis) {
+    return Math.max(0, millis - EPOCH) << SEQUENCE_BITS;
+  }
+
+  /**
+   * Creation time encoded in an id
+   */
+  public static long millis(long id) {
+    return (id >>> SEQUENCE_BITS) + EPOCH;
+  }
+
+  /**
+   * UTC month of the partition a row with this id belongs to
+   */
+  public static YearMonth month(long id) {
+    return YearMonth.from(Instant.ofEpochMilli(millis(id)).atZone(ZoneOffset.UTC));
+  }
+
+  /**
+   * Opaque 11-character form used in the API
+   */
+  public static String toExternal(long id) {
+    long value = id;
+    for (int round = 0; round < 4; round++) {
+      int left = (int) (value >>> 32);
+      int right = (int) value;
+      value = ((long) right << 32) | ((left ^ round(round, right)) & 0xFFFFFFFFL);
+    }
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(ByteBuffer.allocate(8).putLong(value).array());
+  }
+
+  /**
+   * Internal id for an API id, or -1 if it is malformed. Any other 11
+   * characters decode to some id too; one that was never issued just matches
+   * no row.
+   */
+  public static long fromExternal(String external) {
+    if (external == null || external.length() != 11) {
+      return -1;
+    }
+    long value;
+    try {
+      value = ByteBuffer.wrap(Base64.getUrlDecoder().decode(external)).getLong();
+    } catch (IllegalArgumentException e) {
+      return -1;
+    }
+    for (int round = 3; round >= 0; round--) {
+      int left = (int) (value >>> 32);
+      int right = (int) value;
+      value = (((long) (right ^ round(round, left))) << 32) | (left & 0xFFFFFFFFL);
+    }
+    // Issued ids are timestamps, never negative
+    return value < 0 ? -1 : value;
+  }
+
+  private static int round(int round, int half) {
+    Mac mac = MACS.get();
+    mac.update((byte) round);
+    mac.update(ByteBuffer.allocate(4).putInt(half).array());
+    return ByteBuffer.wrap(mac.doFinal()).getInt();
+  }
+
+  /**
+   * Set the permutation key kept by the history backend and move past its
+   * newest id. A configured {@code ids.secret} takes precedence over the
+   * stored key.
+   */
+  public static void initialize(byte[] storedKey, long newestId) {
+    String configured = AppConfig.get("ids.secret", null);
+    key = configured != null ? configured.getBytes(StandardCharsets.UTF_8) : storedKey;
+    advancePast(newestId);
+  }
+
+  /**
+   * Generate a random key for a backend to store on first start
+   */
+  public static byte[] generateKey() {
+    byte[] generated = new byte[32];
+    new SecureRandom().nextBytes(generated);
+    return generated;
+  }
+
+  private static byte[] key() {
+    if (key == null) {
+      // Creating the history backend loads the key
+      Persistence.history();
+    }
+    if (key == null) {
+      throw new IllegalStateException("History id key not loaded");
+    }
+    return key;
+  }
+}
@@ -0,0 +1,519 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Monthly archive partitions of the translation history.
+ *
+ * A background archiver moves rows older than the hot months
+ * ({@code history.archive.hotMonths}, by default just the current one) out of
+ * translator.db into {@code history/history-YYYY-MM.db}, one SQLite file per
+ * UTC month with its own texts. Cold months can then be backed up, vacuumed
+ * or dropped ({@code history.retentionMonths}) as whole files, while the main
+ * file only holds recent data. The per-user cap applies to the main file;
+ * archived rows have a cap of their own, {@code history.archive.maxPerUser},
+ * which the archiver applies to the users whose rows it moved, newest kept.
+ *
+ * The main file records which months hold rows of which user
+ * (history_partition_users), so reading a user's history or counting it
+ * opens only those partitions. Entries go with the user, and with dropped
+ * partitions; a month whose rows were deleted one by one may linger there,
+ * which only costs an attach that finds nothing.
+ *
+ * Rows move with their time-ordered ids (see {@link HistoryIds}), so the
+ * partition holding a row follows from its id. Partition files have no users
+ * table, so user deletes are applied to them explicitly instead of by cascade.
+ */
+public final class HistoryPartitions {
+
+  /** SQLite attaches at most 10 databases by default; keep one spare */
+  public static final int MAX_ATTACHED = 9;
+
+  /** Directory of the partition files, next to translator.db */
+  public static final String DIRECTORY_NAME = "history";
+
+  // Only the SQLite backend archives; a shared server database is not partitioned here
+  private static final boolean ENABLED = AppConfig.getBoolean("history.archive.enabled", true)
+      && !Persistence.isShared();
+  private static final int HOT_MONTHS = Math.max(1, AppConfig.getInt("history.archive.hotMonths", 1));
+  private static final int RETENTION_MONTHS = AppConfig.getInt("history.retentionMonths", 0);
+  private static final long INTERVAL_MINUTES = Math.max(1, AppConfig.getLong("history.archive.intervalMinutes", 60));
+  private static final int BATCH_SIZE = Math.max(100, AppConfig.getInt("history.archive.batchSize", 5000));
+  private static final int MAX_PER_USER = Math.max(1, AppConfig.getInt("history.archive.maxPerUser", 1000));
+
+  private static final Path DIRECTORY = Paths.get(DatabaseManager.dataDirectory(), DIRECTORY_NAME);
+  private static final Pattern FILE_NAME = Pattern.compile("history-(\\d{4}-\\d{2})\\.db");
+
+  // Ascending; replaced wholesale whenever files are added or dropped
+  private static volatile List<YearMonth> months = scan();
+  private static ScheduledExecutorService scheduler;
+
+  private HistoryPartitions() {
+  }
+
+  /**
+   * Start the periodic archiver
+   */
+  public static void start() {
+    if (!ENABLED) {
+      return;
+    }
+    scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "history-archiver");
+      thread.setDaemon(true);
+      return thread;
+    });
+    scheduler.scheduleWithFixedDelay(HistoryPartitions::archive, 1, INTERVAL_MINUTES * 60, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Stop the archiver; a batch in progress is rolled back
+   */
+  public static void stop() {
+    if (scheduler == null) {
+      return;
+    }
+    scheduler.shutdownNow();
+    try {
+      scheduler.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Check whether a partition file exists for the month
+   */
+  public static boolean exists(YearMonth month) {
+    return months.contains(month);
+  }
+
+  /**
+   * Existing partitions holding rows of the user, newest first
+   */
+  public static List<YearMonth> newestFirst(Connection conn, long userId) throws SQLException {
+    List<YearMonth> result = new ArrayList<>();
+    try (PreparedStatement pstmt = conn.prepareStatement(
+        "SELECT month FROM main.history_partition_users WHERE user_id = ? ORDER BY month DESC")) {
+      pstmt.setLong(1, userId);
+      try (ResultSet rs = pstmt.executeQuery()) {
+        while (rs.next()) {
+          YearMonth month = YearMonth.parse(rs.getString("month"));
+          if (exists(month)) {
+            result.add(month);
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Existing partitions that can hold rows in [fromMillis, toMillis), oldest
+   * first; null bounds are open
+   */
+  public static List<YearMonth> overlapping(Long fromMillis, Long toMillis) {
+    List<YearMonth> result = new ArrayList<>();
+    for (YearMonth month : months) {
+      if ((fromMillis == null || fromMillis < startOf(month.plusMonths(1)))
+          && (toMillis == null || toMillis > startOf(month))) {
+        result.add(month);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Open a connection on one partition file
+   */
+  public static Connection open(YearMonth month) throws SQLException {
+    Connection conn = DriverManager.getConnection("jdbc:sqlite:" + path(month));
+    try (Statement stmt = conn.createStatement()) {
+      stmt.execute("PRAGMA busy_timeout = 5000;");
+    }
+    return SqlMonitor.wrap(conn);
+  }
+
+  /**
+   * Attach a partition to a connection under {@link #schema(YearMonth)}
+   */
+  public static void attach(Connection conn, YearMonth month) throws SQLException {
+    try (PreparedStatement pstmt = conn.prepareStatement("ATTACH DATABASE ? AS " + schema(month))) {
+      pstmt.setString(1, path(month).toString());
+      pstmt.execute();
+    }
+  }
+
+  /**
+   * Detach a partition attached with {@link #attach}
+   */
+  public static void detach(Connection conn, YearMonth month) throws SQLException {
+    try (Statement stmt = conn.createStatement()) {
+      stmt.execute("DETACH DATABASE " + schema(month));
+    }
+  }
+
+  /**
+   * Schema name of an attached partition, e.g. p202405
+   */
+  public static String schema(YearMonth month) {
+    return String.format("p%04d%02d", month.getYear(), month.getMonthValue());
+  }
+
+  /**
+   * Delete a user's rows from every partition. Every file is visited, since a
+   * deleted user's entries in history_partition_users are already gone.
+   */
+  public static void deleteUser(long userId) {
+    for (YearMonth month : months) {
+      try (Connection conn = open(month);
+          PreparedStatement pstmt = conn.prepareStatement("DELETE FROM translation_history WHERE user_id = ?")) {
+        pstmt.setLong(1, userId);
+        pstmt.executeUpdate();
+      } catch (SQLException e) {
+        System.err.println("Error deleting history from partition " + month + ": " + e.getMessage());
+      }
+    }
+    try (Connection conn = DatabaseManager.openConnection();
+        PreparedStatement pstmt = conn.prepareStatement("DELETE FROM history_partition_users WHERE user_id = ?")) {
+      pstmt.setLong(1, userId);
+      pstmt.executeUpdate();
+    } catch (SQLException e) {
+      System.err.println("Error deleting history partition entries: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Move every row older than the hot months into its monthly partition and
+   * drop partitions past retention. Runs in batches, so readers and writers
+   * only wait for one batch at a time.
+   *
+   * With translator.db in WAL mode a transaction over attached files is not
+   * atomic across them, so each batch is copied into the partition and
+   * committed before it is deleted from the main file. A crash in between
+   * leaves rows in both; the next run copies them again, which is a no-op, and
+   * then deletes them.
+   */
+  public static void archive() {
+    YearMonth current = YearMonth.now(ZoneOffset.UTC);
+    long cutoff = startOf(current.minusMonths(HOT_MONTHS - 1));
+    long moved = 0;
+
+    try (Connection conn = DatabaseManager.openConnection()) {
+      try (Statement stmt = conn.createStatement()) {
+        stmt.execute("CREATE TEMP TABLE IF NOT EXISTS archived_users (user_id INTEGER PRIMARY KEY)");
+        stmt.execute("DELETE FROM temp.archived_users");
+      }
+      // Each pass handles one month and the next starts after it, so rows that
+      // cannot be moved are left behind instead of being retried forever
+      long after = Long.MIN_VALUE;
+      Long oldest;
+      while (!Thread.currentThread().isInterrupted()
+          && (oldest = oldestId(conn, after)) != null && oldest < HistoryIds.lowerBound(cutoff)) {
+        YearMonth month = HistoryIds.month(oldest);
+        long end = Math.min(startOf(month.plusMonths(1)), cutoff);
+        moved += moveMonth(conn, month, end);
+        after = HistoryIds.lowerBound(end);
+      }
+      trimArchivedUsers(conn);
+    } catch (SQLException | IOException e) {
+      System.err.println("Error archiving history: " + e.getMessage());
+    }
+
+    if (moved > 0) {
+      System.out.println("Archived " + moved + " history rows");
+    }
+    if (RETENTION_MONTHS > 0) {
+      dropBefore(current.minusMonths(RETENTION_MONTHS));
+    }
+  }
+
+  private static long moveMonth(Connection conn, YearMonth month, long end) throws SQLException, IOException {
+    Files.createDirectories(DIRECTORY);
+    try (Connection partition = open(month);
+        Statement stmt = partition.createStatement()) {
+      for (String ddl : SchemaMigrations.textTables("main")) {
+        stmt.execute(ddl);
+      }
+      stmt.execute(SchemaMigrations.historyTable("main.translation_history", false));
+      stmt.execute(SchemaMigrations.historyIndex("main"));
+      for (String ddl : SchemaMigrations.historyTriggers("main")) {
+        stmt.execute(ddl);
+      }
+      stmt.execute("PRAGMA user_version = " + SchemaMigrations.CURRENT_VERSION);
+    }
+    // Make the partition visible to readers before rows start moving into it
+    months = scan();
+
+    String select = """
+        INSERT INTO temp.moving
+        SELECT id FROM main.translation_history
+        WHERE id >= ? AND id < ?
+        ORDER BY id
+        LIMIT ?
+        """;
+    String copyDictionaries = """
+        INSERT OR IGNORE INTO archive.text_dictionaries (id, body, created_at)
+        SELECT id, body, created_at FROM main.text_dictionaries
+        """;
+    String copyTexts = """
+        INSERT OR IGNORE INTO archive.texts (hash, codec, body)
+        SELECT hash, codec, body FROM main.texts
+        WHERE id IN (
+            SELECT original_id FROM main.translation_history WHERE id IN (SELECT id FROM temp.moving)
+            UNION
+            SELECT translated_id FROM main.translation_history WHERE id IN (SELECT id FROM temp.moving)
+        )
+        """;
+    String indexUsers = """
+        INSERT OR IGNORE INTO main.history_partition_users (user_id, month)
+        SELECT DISTINCT user_id, ? FROM main.translation_history
+        WHERE id IN (SELECT id FROM temp.moving)
+        """;
+    String collectUsers = """
+        INSERT OR IGNORE INTO temp.archived_users (user_id)
+        SELECT DISTINCT user_id FROM main.translation_history
+        WHERE id IN (SELECT id FROM temp.moving)
+        """;
+    String copyRows = """
+        INSERT OR IGNORE INTO archive.translation_history
+        (id, user_id, original_id, translated_id, target_lang, timestamp)
+        SELECT h.id, h.user_id, ao.id, at2.id, h.target_lang, h.timestamp
+        FROM main.translation_history h
+        JOIN main.texts o ON o.id = h.original_id
+        JOIN archive.texts ao ON ao.hash = o.hash
+        JOIN main.texts t ON t.id = h.translated_id
+        JOIN archive.texts at2 ON at2.hash = t.hash
+        WHERE h.id IN (SELECT id FROM temp.moving)
+        """;
+    // Only rows that reached the partition leave the main file
+    String deleteRows = """
+        DELETE FROM main.translation_history
+        WHERE id IN (SELECT m.id FROM temp.moving m JOIN archive.translation_history a ON a.id = m.id)
+        """;
+
+    long moved = 0;
+    long skipped = 0;
+    long next = HistoryIds.lowerBound(startOf(month));
+    try (PreparedStatement attach = conn.prepareStatement("ATTACH DATABASE ? AS archive")) {
+      attach.setString(1, path(month).toString());
+      attach.execute();
+    }
+    try (Statement stmt = conn.createStatement()) {
+      stmt.execute("CREATE TEMP TABLE IF NOT EXISTS moving (id INTEGER PRIMARY KEY)");
+    }
+    try (Statement stmt = conn.createStatement();
+        PreparedStatement pstmt = conn.prepareStatement(select);
+        PreparedStatement index = conn.prepareStatement(indexUsers)) {
+
+      while (!Thread.currentThread().isInterrupted()) {
+        int batch;
+        conn.setAutoCommit(false);
+        try {
+          stmt.execute("DELETE FROM temp.moving");
+          pstmt.setLong(1, next);
+          pstmt.setLong(2, HistoryIds.lowerBound(end));
+          pstmt.setInt(3, BATCH_SIZE);
+          batch = pstmt.executeUpdate();
+          if (batch > 0) {
+            stmt.execute(copyDictionaries);
+            stmt.execute(copyTexts);
+            stmt.execute(copyRows);
+            index.setString(1, month.toString());
+            index.executeUpdate();
+            stmt.execute(collectUsers);
+          }
+          conn.commit();
+        } catch (SQLException e) {
+          conn.rollback();
+          throw e;
+        } finally {
+          conn.setAutoCommit(true);
+        }
+        if (batch == 0) {
+          break;
+        }
+        stmt.executeUpdate(deleteRows);
+        // The driver's update count includes the rows the refs triggers touched
+        int deleted;
+        try (ResultSet rs = stmt.executeQuery("SELECT changes()")) {
+          deleted = rs.getInt(1);
+        }
+        moved += deleted;
+        skipped += batch - deleted;
+        // Page by id, so rows left behind are not selected again
+        try (ResultSet rs = stmt.executeQuery("SELECT MAX(id) FROM temp.moving")) {
+          next = rs.getLong(1) + 1;
+        }
+        if (batch < BATCH_SIZE) {
+          break;
+        }
+      }
+    } finally {
+      try (Statement stmt = conn.createStatement()) {
+        stmt.execute("DETACH DATABASE archive");
+      }
+    }
+    if (skipped > 0) {
+      System.err.println("Error archiving history: " + skipped + " rows of " + month + " could not be moved");
+    }
+    return moved;
+  }
+
+  /**
+   * Keep the newest MAX_PER_USER archived rows of each user whose rows were
+   * just moved, deleting older ones month by month
+   */
+  private static void trimArchivedUsers(Connection conn) throws SQLException {
+    List<Long> users = new ArrayList<>();
+    try (Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT user_id FROM temp.archived_users")) {
+      while (rs.next()) {
+        users.add(rs.getLong(1));
+      }
+    }
+
+    long trimmed = 0;
+    for (long userId : users) {
+      if (Thread.currentThread().isInterrupted()) {
+        break;
+      }
+      int remaining = MAX_PER_USER;
+      for (YearMonth month : newestFirst(conn, userId)) {
+        int kept;
+        try (Connection partition = open(month)) {
+          trimmed += trim(partition, userId, remaining);
+          kept = count(partition, userId);
+        }
+        remaining -= kept;
+        if (kept == 0) {
+          try (PreparedStatement pstmt = conn.prepareStatement(
+              "DELETE FROM history_partition_users WHERE user_id = ? AND month = ?")) {
+            pstmt.setLong(1, userId);
+            pstmt.setString(2, month.toString());
+            pstmt.executeUpdate();
+          }
+        }
+      }
+    }
+    if (trimmed > 0) {
+      System.out.println("Deleted " + trimmed + " archived history rows over the per-user cap");
+    }
+  }
+
+  /**
+   * Delete the user's rows in one partition except the newest keep ones
+   *
+   * @return the number of rows deleted
+   */
+  private static int trim(Connection partition, long userId, int keep) throws SQLException {
+    String sql = """
+        DELETE FROM translation_history
+        WHERE user_id = ? AND id <= (
+            SELECT id FROM translation_history
+            WHERE user_id = ?
+            ORDER BY id DESC
+            LIMIT 1 OFFSET ?
+        )
+        """;
+    try (PreparedStatement pstmt = partition.prepareStatement(sql);
+        Statement stmt = partition.createStatement()) {
+      pstmt.setLong(1, userId);
+      pstmt.setLong(2, userId);
+      pstmt.setInt(3, keep);
+      pstmt.executeUpdate();
+      // The driver's update count includes the rows the refs triggers touched
+      try (ResultSet rs = stmt.executeQuery("SELECT changes()")) {
+        return rs.getInt(1);
+      }
+    }
+  }
+
+  private static int count(Connection partition, long userId) throws SQLException {
+    try (PreparedStatement pstmt = partition.prepareStatement(
+        "SELECT COUNT(*) FROM translation_history WHERE user_id = ?")) {
+      pstmt.setLong(1, userId);
+      try (ResultSet rs = pstmt.executeQuery()) {
+        return rs.next() ? rs.getInt(1) : 0;
+      }
+    }
+  }
+
+  private static Long oldestId(Connection conn, long after) throws SQLException {
+    try (PreparedStatement pstmt = conn.prepareStatement("SELECT MIN(id) FROM translation_history WHERE id >= ?")) {
+      pstmt.setLong(1, after);
+      try (ResultSet rs = pstmt.executeQuery()) {
+        long oldest = rs.getLong(1);
+        return rs.wasNull() ? null : oldest;
+      }
+    }
+  }
+
+  private static void dropBefore(YearMonth oldestKept) {
+    try (Connection conn = DatabaseManager.openConnection();
+        PreparedStatement pstmt = conn.prepareStatement("DELETE FROM history_partition_users WHERE month < ?")) {
+      pstmt.setString(1, oldestKept.toString());
+      pstmt.executeUpdate();
+    } catch (SQLException e) {
+      System.err.println("Error deleting history partition entries: " + e.getMessage());
+    }
+    for (YearMonth month : months) {
+      if (month.isBefore(oldestKept)) {
+        try {
+          Files.deleteIfExists(path(month));
+          System.out.println("Dropped history partition " + month);
+        } catch (IOException e) {
+          System.err.println("Error dropping history partition " + month + ": " + e.getMessage());
+        }
+      }
+    }
+    months = scan();
+  }
+
+  private static List<YearMonth> scan() {
+    List<YearMonth> found = new ArrayList<>();
+    if (!Files.isDirectory(DIRECTORY)) {
+      return found;
+    }
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(DIRECTORY, "history-*.db")) {
+      for (Path file : files) {
+        Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+        if (matcher.matches()) {
+          found.add(YearMonth.parse(matcher.group(1)));
+        }
+      }
+    } catch (IOException e) {
+      System.err.println("Error listing history partitions: " + e.getMessage());
+    }
+    Collections.sort(found);
+    return found;
+  }
+
+  private static Path path(YearMonth month) {
+    return DIRECTORY.resolve("history-" + month + ".db");
+  }
+
+  private static long startOf(YearMonth month) {
+    return month.atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+  }
+}
@@ -1,253 +1,142 @@
 package com.berrimi.translator.jakarta.hello;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
+import java.io.IOException;
 import java.sql.SQLException;
-import java.sql.Timestamp;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 
+/**
+ * Translation history operations, stored by the configured {@link HistoryStore}.
+ * Store calls count as the "db" span of the request's {@link RequestTiming}.
+ */
 public class HistoryRepository {
 
-  private static final int MAX_HISTORY_PER_USER = 50;
+  /**
+   * Receives exported rows one at a time
+   */
+  @FunctionalInterface
+  public interface RowHandler {
+    void handle(TranslationHistory row) throws IOException;
+  }
 
   /**
-   * Add a translation to user's history
+   * Add a translation to user's history and assign its id
    */
   public static boolean addTranslation(String username, TranslationHistory history) {
-    String sql = """
-        INSERT INTO translation_history
-        (id, username, original_text, translated_text, target_lang, timestamp)
-        VALUES (?, ?, ?, ?, ?, ?)
-        """;
-
-    try (Connection conn = DatabaseManager.getConnection();
-        PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-      pstmt.setString(1, history.getId());
-      pstmt.setString(2, username);
-      pstmt.setString(3, history.getOriginalText());
-      pstmt.setString(4, history.getTranslatedText());
-      pstmt.setString(5, history.getTargetLang());
-      pstmt.setTimestamp(6, new Timestamp(history.getTimestamp().getTime()));
-
-      pstmt.executeUpdate();
-
-      // Clean up old history entries if exceeded max
-      cleanupOldHistory(username);
-
-      return true;
+    return addTranslations(username, Collections.singletonList(history));
+  }
 
-    } catch (SQLException e) {
-      System.err.println("Error adding translation history: " + e.getMessage());
-      return false;
+  /**
+   * Add several translations to user's history with one batched write
+   */
+  public static boolean addTranslations(String username, List<TranslationHistory> histories) {
+    long started = RequestTiming.start();
+    boolean added;
+    try {
+      added = Persistence.history().addTranslations(username, histories);
+    } finally {
+      RequestTiming.stop("db", started);
+    }
+    if (added) {
+      HistoryVersions.bump(username);
     }
+    return added;
   }
 
   /**
    * Get user's translation history (most recent first)
    */
   public static List<TranslationHistory> getHistory(String username) {
-    List<TranslationHistory> historyList = new ArrayList<>();
-    String sql = """
-        SELECT id, username, original_text, translated_text, target_lang, timestamp
-        FROM translation_history
-        WHERE username = ?
-        ORDER BY timestamp DESC
-        LIMIT ?
-        """;
-
-    try (Connection conn = DatabaseManager.getConnection();
-        PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-      pstmt.setString(1, username);
-      pstmt.setInt(2, MAX_HISTORY_PER_USER);
-
-      ResultSet rs = pstmt.executeQuery();
-
-      while (rs.next()) {
-        TranslationHistory history = new TranslationHistory();
-        history.setId(rs.getString("id"));
-        history.setUsername(rs.getString("username"));
-        history.setOriginalText(rs.getString("original_text"));
-        history.setTranslatedText(rs.getString("translated_text"));
-        history.setTargetLang(rs.getString("target_lang"));
-        history.setTimestamp(rs.getTimestamp("timestamp"));
-
-        historyList.add(history);
-      }
-
-    } catch (SQLException e) {
-      System.err.println("Error getting translation history: " + e.getMessage());
+    long started = RequestTiming.start();
+    try {
+      return Persistence.history().getHistory(username);
+    } finally {
+      RequestTiming.stop("db", started);
     }
+  }
 
-    return historyList;
+  /**
+   * Stream a user's history (or everyone's, when username is null) in
+   * [from, to) oldest first, without collecting the rows; null bounds are open
+   */
+  public static void exportHistory(String username, Instant from, Instant to, RowHandler handler)
+      throws SQLException, IOException {
+    Persistence.history().exportHistory(username, from, to, handler);
   }
 
   /**
    * Get a specific translation by ID
    */
   public static TranslationHistory getTranslationById(String id) {
-    String sql = """
-        SELECT id, username, original_text, translated_text, target_lang, timestamp
-        FROM translation_history
-        WHERE id = ?
-        """;
-
-    try (Connection conn = DatabaseManager.getConnection();
-        PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-      pstmt.setString(1, id);
-      ResultSet rs = pstmt.executeQuery();
-
-      if (rs.next()) {
-        TranslationHistory history = new TranslationHistory();
-        history.setId(rs.getString("id"));
-        history.setUsername(rs.getString("username"));
-        history.setOriginalText(rs.getString("original_text"));
-        history.setTranslatedText(rs.getString("translated_text"));
-        history.setTargetLang(rs.getString("target_lang"));
-        history.setTimestamp(rs.getTimestamp("timestamp"));
-        return history;
-      }
-
-    } catch (SQLException e) {
-      System.err.println("Error getting translation by ID: " + e.getMessage());
+    long started = RequestTiming.start();
+    try {
+      return Persistence.history().getTranslationById(id);
+    } finally {
+      RequestTiming.stop("db", started);
     }
-
-    return null;
   }
 
   /**
    * Clear user's history
    */
   public static boolean clearHistory(String username) {
-    String sql = "DELETE FROM translation_history WHERE username = ?";
-
-    try (Connection conn = DatabaseManager.getConnection();
-        PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-      pstmt.setString(1, username);
-      pstmt.executeUpdate();
-      return true;
-
-    } catch (SQLException e) {
-      System.err.println("Error clearing history: " + e.getMessage());
-      return false;
+    long started = RequestTiming.start();
+    boolean cleared;
+    try {
+      cleared = Persistence.history().clearHistory(username);
+    } finally {
+      RequestTiming.stop("db", started);
     }
+    HistoryVersions.bump(username);
+    return cleared;
   }
 
   /**
    * Delete a specific translation by ID
    */
   public static boolean deleteTranslation(String id, String username) {
-    String sql = "DELETE FROM translation_history WHERE id = ? AND username = ?";
-
-    try (Connection conn = DatabaseManager.getConnection();
-        PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-      pstmt.setString(1, id);
-      pstmt.setString(2, username);
-
-      int rowsAffected = pstmt.executeUpdate();
-      return rowsAffected > 0;
-
-    } catch (SQLException e) {
-      System.err.println("Error deleting translation: " + e.getMessage());
-      return false;
+    long started = RequestTiming.start();
+    boolean deleted;
+    try {
+      deleted = Persistence.history().deleteTranslation(id, username);
+    } finally {
+      RequestTiming.stop("db", started);
     }
+    HistoryVersions.bump(username);
+    return deleted;
   }
 
   /**
    * Get count of translations for a user
    */
   public static int getHistoryCount(String username) {
-    String sql = "SELECT COUNT(*) as count FROM translation_history WHERE username = ?";
-
-    try (Connection conn = DatabaseManager.getConnection();
-        PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-      pstmt.setString(1, username);
-      ResultSet rs = pstmt.executeQuery();
-
-      if (rs.next()) {
-        return rs.getInt("count");
-      }
-
-    } catch (SQLException e) {
-      System.err.println("Error getting history count: " + e.getMessage());
+    long started = RequestTiming.start();
+    try {
+      return Persistence.history().getHistoryCount(username);
+    } finally {
+      RequestTiming.stop("db", started);
     }
-
-    return 0;
   }
 
   /**
-   * Search translations by text
+   * Search translations by text. Texts may be stored compressed, so matching
+   * happens here on the user's (capped) history rather than with LIKE; it
+   * ignores ASCII case as LIKE did.
    */
   public static List<TranslationHistory> searchHistory(String username, String searchText) {
     List<TranslationHistory> historyList = new ArrayList<>();
-    String sql = """
-        SELECT id, username, original_text, translated_text, target_lang, timestamp
-        FROM translation_history
-        WHERE username = ? AND (original_text LIKE ? OR translated_text LIKE ?)
-        ORDER BY timestamp DESC
-        LIMIT ?
-        """;
-
-    try (Connection conn = DatabaseManager.getConnection();
-        PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-      String searchPattern = "%" + searchText + "%";
-      pstmt.setString(1, username);
-      pstmt.setString(2, searchPattern);
-      pstmt.setString(3, searchPattern);
-      pstmt.setInt(4, MAX_HISTORY_PER_USER);
-
-      ResultSet rs = pstmt.executeQuery();
-
-      while (rs.next()) {
-        TranslationHistory history = new TranslationHistory();
-        history.setId(rs.getString("id"));
-        history.setUsername(rs.getString("username"));
-        history.setOriginalText(rs.getString("original_text"));
-        history.setTranslatedText(rs.getString("translated_text"));
-        history.setTargetLang(rs.getString("target_lang"));
-        history.setTimestamp(rs.getTimestamp("timestamp"));
+    String needle = searchText.toLowerCase(Locale.ROOT);
 
+    for (TranslationHistory history : getHistory(username)) {
+      if (history.getOriginalText().toLowerCase(Locale.ROOT).contains(needle)
+          || history.getTranslatedText().toLowerCase(Locale.ROOT).contains(needle)) {
         historyList.add(history);
       }
-
-    } catch (SQLException e) {
-      System.err.println("Error searching history: " + e.getMessage());
     }
 
     return historyList;
   }
-
-  /**
-   * Clean up old history entries if exceeded max
-   */
-  private static void cleanupOldHistory(String username) {
-    String sql = """
-        DELETE FROM translation_history
-        WHERE id IN (
-            SELECT id FROM translation_history
-            WHERE username = ?
-            ORDER BY timestamp DESC
-            LIMIT -1 OFFSET ?
-        )
-        """;
-
-    try (Connection conn = DatabaseManager.getConnection();
-        PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-      pstmt.setString(1, username);
-      pstmt.setInt(2, MAX_HISTORY_PER_USER);
-      pstmt.executeUpdate();
-
-    } catch (SQLException e) {
-      System.err.println("Error cleaning up old history: " + e.getMessage());
-    }
-  }
 }
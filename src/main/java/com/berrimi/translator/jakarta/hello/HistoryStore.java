@@ -0,0 +1,57 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Storage backend of the translation history, selected by {@link Persistence}.
+ * Callers go through {@link HistoryRepository}; ids passed in and out are the
+ * opaque API ids of {@link HistoryIds}.
+ */
+public interface HistoryStore {
+
+  /** Rows kept per user; older ones are removed as new ones are added */
+  int MAX_HISTORY_PER_USER = 50;
+
+  /**
+   * Add translations to a user's history in one transaction, assigning their
+   * ids, and trim the history to the cap
+   *
+   * @return false if the user does not exist or the write failed
+   */
+  boolean addTranslations(String username, List<TranslationHistory> histories);
+
+  /**
+   * Get a user's most recent translations, newest first
+   */
+  List<TranslationHistory> getHistory(String username);
+
+  /**
+   * Stream a user's history (or everyone's, when username is null) in
+   * [from, to) oldest first; null bounds are open
+   */
+  void exportHistory(String username, Instant from, Instant to, HistoryRepository.RowHandler handler)
+      throws SQLException, IOException;
+
+  /**
+   * Get a translation by id, or null if there is none
+   */
+  TranslationHistory getTranslationById(String id);
+
+  /**
+   * Delete all of a user's history
+   */
+  boolean clearHistory(String username);
+
+  /**
+   * Delete one translation if it belongs to the user
+   */
+  boolean deleteTranslation(String id, String username);
+
+  /**
+   * Count a user's translations
+   */
+  int getHistoryCount(String username);
+}
@@ -0,0 +1,39 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-user history version counters used to build history ETags.
+ *
+ * Users are hashed onto a fixed number of slots so memory stays bounded; two
+ * users sharing a slot only cause each other extra cache misses. The boot epoch
+ * keeps tags from a previous run from matching counters that restarted at zero.
+ */
+public final class HistoryVersions {
+
+  private static final int SLOTS = 4096;
+  private static final AtomicLongArray VERSIONS = new AtomicLongArray(SLOTS);
+  private static final String EPOCH = Long.toString(System.currentTimeMillis(), 36);
+
+  private HistoryVersions() {
+  }
+
+  /**
+   * Record that a user's history changed. Call only after the write is committed.
+   */
+  public static void bump(String username) {
+    VERSIONS.incrementAndGet(slot(username));
+  }
+
+  /**
+   * Get an opaque token that changes whenever the user's history changes
+   */
+  public static String token(String username) {
+    return EPOCH + "." + Long.toString(VERSIONS.get(slot(username)), 36);
+  }
+
+  private static int slot(String username) {
+    int h = username.hashCode();
+    return (h ^ (h >>> 16)) & (SLOTS - 1);
+  }
+}
@@ -0,0 +1,129 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+
+/**
+ * Connections to the PostgreSQL or H2 server of the jdbc persistence backend.
+ *
+ * Connections come from the container-managed pool bound at
+ * {@code persistence.dataSource} (see src/main/wildfly/translator-datasource.cli),
+ * so closing one hands it back to the pool. The schema mirrors the SQLite one:
+ * integer user keys, time-ordered history ids from {@link HistoryIds}, history
+ * deleted with its user. Texts are stored inline; the server handles storage
+ * and there are no archive partitions.
+ */
+public final class JdbcDatabase {
+
+  private static final String DATA_SOURCE_NAME = AppConfig.get("persistence.dataSource",
+      "java:jboss/datasources/TranslatorDS");
+  private static final String UNIQUE_VIOLATION = "23505";
+
+  // Looked up on first use, unless a test set one before
+  private static volatile DataSource dataSource;
+
+  private JdbcDatabase() {
+  }
+
+  /**
+   * Get a pooled connection; close it to return it
+   */
+  public static Connection getConnection() throws SQLException {
+    DataSource source = dataSource;
+    if (source == null) {
+      synchronized (JdbcDatabase.class) {
+        if (dataSource == null) {
+          DataSource found = lookup();
+          initializeSchema(found);
+          dataSource = found;
+        }
+        source = dataSource;
+      }
+    }
+    return source.getConnection();
+  }
+
+  /**
+   * Use the given data source instead of the one bound in JNDI, e.g. an
+   * embedded H2 database in tests, and create the schema in it
+   */
+  static synchronized void useDataSource(DataSource source) {
+    initializeSchema(source);
+    dataSource = source;
+  }
+
+  /**
+   * Check whether a statement failed on a primary key or unique constraint
+   */
+  public static boolean isUniqueViolation(SQLException e) {
+    // Batches report the failing statement as the next exception
+    for (SQLException cause = e; cause != null; cause = cause.getNextException()) {
+      if (UNIQUE_VIOLATION.equals(cause.getSQLState())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static DataSource lookup() {
+    try {
+      return (DataSource) new InitialContext().lookup(DATA_SOURCE_NAME);
+    } catch (NamingException e) {
+      throw new IllegalStateException("Cannot find data source " + DATA_SOURCE_NAME + ": " + e.getMessage(), e);
+    }
+  }
+
+  private static void initializeSchema(DataSource source) {
+    String createUsersTable = """
+        CREATE TABLE IF NOT EXISTS users (
+            id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+            username VARCHAR(255) NOT NULL UNIQUE,
+            password VARCHAR(255) NOT NULL,
+            email VARCHAR(255) NOT NULL,
+            phone VARCHAR(64) NOT NULL,
+            created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+        )
+        """;
+
+    String createHistoryTable = """
+        CREATE TABLE IF NOT EXISTS translation_history (
+            id BIGINT PRIMARY KEY,
+            user_id BIGINT NOT NULL REFERENCES users(id) ON DELETE CASCADE,
+            original_text VARCHAR NOT NULL,
+            translated_text VARCHAR NOT NULL,
+            target_lang VARCHAR(64) NOT NULL,
+            created_at BIGINT NOT NULL
+        )
+        """;
+
+    String createHistoryIndex = """
+        CREATE INDEX IF NOT EXISTS idx_history_user
+        ON translation_history (user_id, id)
+        """;
+
+    String createSettingsTable = """
+        CREATE TABLE IF NOT EXISTS settings (
+            name VARCHAR(255) PRIMARY KEY,
+            body BYTEA NOT NULL
+        )
+        """;
+
+    try (Connection conn = source.getConnection();
+        Statement stmt = conn.createStatement()) {
+
+      stmt.execute(createUsersTable);
+      stmt.execute(createHistoryTable);
+      stmt.execute(createHistoryIndex);
+      stmt.execute(createSettingsTable);
+      System.out.println("JDBC database initialized: " + DATA_SOURCE_NAME);
+
+    } catch (SQLException e) {
+      throw new IllegalStateException("Error initializing JDBC database: " + e.getMessage(), e);
+    }
+  }
+}
@@ -0,0 +1,335 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * History in the shared JDBC database.
+ *
+ * Several nodes issue ids concurrently; if two pick the same id in the same
+ * millisecond, the later insert fails on the primary key and is retried with
+ * a fresh id.
+ */
+public class JdbcHistoryStore implements HistoryStore {
+
+  private static final int EXPORT_FETCH_SIZE = AppConfig.getInt("export.fetchSize", 500);
+  private static final int MAX_ATTEMPTS = 3;
+  private static final String KEY_SETTING = "ids.key";
+
+  private static final String SELECT_HISTORY = """
+      SELECT h.id, u.username, h.original_text, h.translated_text, h.target_lang, h.created_at
+      FROM translation_history h
+      JOIN users u ON u.id = h.user_id
+      """;
+
+  /**
+   * Load the history id key shared by all nodes, generating it on first start,
+   * and move the id sequence past the newest stored row
+   */
+  public JdbcHistoryStore() {
+    try (Connection conn = JdbcDatabase.getConnection()) {
+      try (PreparedStatement insert = conn.prepareStatement("INSERT INTO settings (name, body) VALUES (?, ?)")) {
+        insert.setString(1, KEY_SETTING);
+        insert.setBytes(2, HistoryIds.generateKey());
+        insert.executeUpdate();
+      } catch (SQLException e) {
+        // Another node stored its key first
+        if (!JdbcDatabase.isUniqueViolation(e)) {
+          throw e;
+        }
+      }
+
+      byte[] key;
+      try (PreparedStatement select = conn.prepareStatement("SELECT body FROM settings WHERE name = ?")) {
+        select.setString(1, KEY_SETTING);
+        try (ResultSet rs = select.executeQuery()) {
+          if (!rs.next()) {
+            throw new SQLException("Setting " + KEY_SETTING + " is missing after inserting it");
+          }
+          key = rs.getBytes(1);
+        }
+      }
+      try (Statement stmt = conn.createStatement();
+          ResultSet rs = stmt.executeQuery("SELECT MAX(id) FROM translation_history")) {
+        rs.next();
+        HistoryIds.initialize(key, rs.getLong(1));
+      }
+    } catch (SQLException e) {
+      throw new IllegalStateException("Cannot load history id key: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Add translations with one batched insert. The user row is locked for the
+   * transaction, so concurrent writes for the same user on other nodes keep
+   * the cap exact and a concurrent user delete waits.
+   */
+  @Override
+  public boolean addTranslations(String username, List<TranslationHistory> histories) {
+    String sql = """
+        INSERT INTO translation_history
+        (id, user_id, original_text, translated_text, target_lang, created_at)
+        VALUES (?, ?, ?, ?, ?, ?)
+        """;
+
+    for (int attempt = 1;; attempt++) {
+      try (Connection conn = JdbcDatabase.getConnection()) {
+        conn.setAutoCommit(false);
+        try {
+          Long userId = lockUser(conn, username);
+          if (userId == null) {
+            conn.rollback();
+            System.err.println("Error adding translation history: unknown user " + username);
+            return false;
+          }
+
+          try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (TranslationHistory history : histories) {
+              long id = HistoryIds.next();
+              history.setId(HistoryIds.toExternal(id));
+
+              pstmt.setLong(1, id);
+              pstmt.setLong(2, userId);
+              pstmt.setString(3, history.getOriginalText());
+              pstmt.setString(4, history.getTranslatedText());
+              pstmt.setString(5, history.getTargetLang());
+              pstmt.setLong(6, history.getTimestamp().getTime());
+              pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+          }
+
+          // Clean up old history entries if exceeded max
+          cleanupOldHistory(conn, userId);
+          conn.commit();
+          return true;
+
+        } catch (SQLException e) {
+          conn.rollback();
+          throw e;
+        } finally {
+          conn.setAutoCommit(true);
+        }
+
+      } catch (SQLException e) {
+        if (JdbcDatabase.isUniqueViolation(e) && attempt < MAX_ATTEMPTS) {
+          continue;
+        }
+        System.err.println("Error adding translation history: " + e.getMessage());
+        return false;
+      }
+    }
+  }
+
+  @Override
+  public List<TranslationHistory> getHistory(String username) {
+    List<TranslationHistory> historyList = new ArrayList<>();
+    String sql = SELECT_HISTORY + """
+        WHERE u.username = ?
+        ORDER BY h.id DESC
+        FETCH FIRST %d ROWS ONLY
+        """.formatted(MAX_HISTORY_PER_USER);
+
+    try (Connection conn = JdbcDatabase.getConnection();
+        PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+      pstmt.setString(1, username);
+      try (ResultSet rs = pstmt.executeQuery()) {
+        while (rs.next()) {
+          TranslationHistory history = new TranslationHistory();
+          readRow(rs, history);
+          historyList.add(history);
+        }
+      }
+
+    } catch (SQLException e) {
+      System.err.println("Error getting translation history: " + e.getMessage());
+    }
+
+    return historyList;
+  }
+
+  /**
+   * Stream rows from a server-side cursor. PostgreSQL only uses one inside a
+   * transaction, so autocommit is off while the export runs.
+   */
+  @Override
+  public void exportHistory(String username, Instant from, Instant to, HistoryRepository.RowHandler handler)
+      throws SQLException, IOException {
+
+    // Ids are time-ordered, so time bounds become primary key bounds
+    StringBuilder sql = new StringBuilder(SELECT_HISTORY).append("WHERE 1 = 1");
+    List<Object> params = new ArrayList<>();
+    if (username != null) {
+      sql.append(" AND u.username = ?");
+      params.add(username);
+    }
+    if (from != null) {
+      sql.append(" AND h.id >= ?");
+      params.add(HistoryIds.lowerBound(from.toEpochMilli()));
+    }
+    if (to != null) {
+      sql.append(" AND h.id < ?");
+      params.add(HistoryIds.lowerBound(to.toEpochMilli()));
+    }
+    sql.append(" ORDER BY h.id");
+
+    try (Connection conn = JdbcDatabase.getConnection()) {
+      conn.setAutoCommit(false);
+      try (PreparedStatement pstmt = conn.prepareStatement(sql.toString(), ResultSet.TYPE_FORWARD_ONLY,
+          ResultSet.CONCUR_READ_ONLY)) {
+
+        pstmt.setFetchSize(EXPORT_FETCH_SIZE);
+        for (int i = 0; i < params.size(); i++) {
+          pstmt.setObject(i + 1, params.get(i));
+        }
+
+        try (ResultSet rs = pstmt.executeQuery()) {
+          TranslationHistory row = new TranslationHistory();
+          while (rs.next()) {
+            // One reusable row object; handlers must not keep it
+            readRow(rs, row);
+            handler.handle(row);
+          }
+        }
+        conn.commit();
+      } finally {
+        conn.setAutoCommit(true);
+      }
+    }
+  }
+
+  @Override
+  public TranslationHistory getTranslationById(String id) {
+    long rowId = HistoryIds.fromExternal(id);
+    if (rowId < 0) {
+      return null;
+    }
+
+    try (Connection conn = JdbcDatabase.getConnection();
+        PreparedStatement pstmt = conn.prepareStatement(SELECT_HISTORY + "WHERE h.id = ?")) {
+
+      pstmt.setLong(1, rowId);
+      try (ResultSet rs = pstmt.executeQuery()) {
+        if (rs.next()) {
+          TranslationHistory history = new TranslationHistory();
+          readRow(rs, history);
+          return history;
+        }
+        return null;
+      }
+
+    } catch (SQLException e) {
+      System.err.println("Error getting translation by ID: " + e.getMessage());
+      return null;
+    }
+  }
+
+  @Override
+  public boolean clearHistory(String username) {
+    String sql = "DELETE FROM translation_history WHERE user_id = (SELECT id FROM users WHERE username = ?)";
+
+    try (Connection conn = JdbcDatabase.getConnection();
+        PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+      pstmt.setString(1, username);
+      pstmt.executeUpdate();
+      return true;
+
+    } catch (SQLException e) {
+      System.err.println("Error clearing history: " + e.getMessage());
+      return false;
+    }
+  }
+
+  @Override
+  public boolean deleteTranslation(String id, String username) {
+    long rowId = HistoryIds.fromExternal(id);
+    if (rowId < 0) {
+      return false;
+    }
+    String sql = """
+        DELETE FROM translation_history
+        WHERE id = ? AND user_id = (SELECT id FROM users WHERE username = ?)
+        """;
+
+    try (Connection conn = JdbcDatabase.getConnection();
+        PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+      pstmt.setLong(1, rowId);
+      pstmt.setString(2, username);
+      return pstmt.executeUpdate() > 0;
+
+    } catch (SQLException e) {
+      System.err.println("Error deleting translation: " + e.getMessage());
+      return false;
+    }
+  }
+
+  @Override
+  public int getHistoryCount(String username) {
+    String sql = """
+        SELECT COUNT(*) AS count
+        FROM translation_history h
+        JOIN users u ON u.id = h.user_id
+        WHERE u.username = ?
+        """;
+
+    try (Connection conn = JdbcDatabase.getConnection();
+        PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+      pstmt.setString(1, username);
+      try (ResultSet rs = pstmt.executeQuery()) {
+        return rs.next() ? rs.getInt("count") : 0;
+      }
+
+    } catch (SQLException e) {
+      System.err.println("Error getting history count: " + e.getMessage());
+      return 0;
+    }
+  }
+
+  private static Long lockUser(Connection conn, String username) throws SQLException {
+    try (PreparedStatement pstmt = conn.prepareStatement("SELECT id FROM users WHERE username = ? FOR UPDATE")) {
+      pstmt.setString(1, username);
+      try (ResultSet rs = pstmt.executeQuery()) {
+        return rs.next() ? rs.getLong("id") : null;
+      }
+    }
+  }
+
+  private static void cleanupOldHistory(Connection conn, long userId) throws SQLException {
+    String sql = """
+        DELETE FROM translation_history
+        WHERE user_id = ? AND id <= (
+            SELECT id FROM translation_history
+            WHERE user_id = ?
+            ORDER BY id DESC
+            OFFSET %d ROWS FETCH FIRST 1 ROW ONLY
+        )
+        """.formatted(MAX_HISTORY_PER_USER);
+
+    try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+      pstmt.setLong(1, userId);
+      pstmt.setLong(2, userId);
+      pstmt.executeUpdate();
+    }
+  }
+
+  private static void readRow(ResultSet rs, TranslationHistory history) throws SQLException {
+    history.setId(HistoryIds.toExternal(rs.getLong("id")));
+    history.setUsername(rs.getString("username"));
+    history.setOriginalText(rs.getString("original_text"));
+    history.setTranslatedText(rs.getString("translated_text"));
+    history.setTargetLang(rs.getString("target_lang"));
+    history.setTimestamp(new Timestamp(rs.getLong("created_at")));
+  }
+}
@@ -0,0 +1,150 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * User accounts in the shared JDBC database
+ */
+public class JdbcUserStore implements UserStore {
+
+  @Override
+  public boolean register(User user, String passwordHash) {
+    String sql = "INSERT INTO users (username, password, email, phone) VALUES (?, ?, ?, ?)";
+
+    try (Connection conn = JdbcDatabase.getConnection();
+        PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+      pstmt.setString(1, user.getUsername());
+      pstmt.setString(2, passwordHash);
+      pstmt.setString(3, user.getEmail());
+      pstmt.setString(4, user.getPhone());
+
+      pstmt.executeUpdate();
+      return true;
+
+    } catch (SQLException e) {
+      // Username already exists
+      if (JdbcDatabase.isUniqueViolation(e)) {
+        return false;
+      }
+      System.err.println("Error registering user: " + e.getMessage());
+      return false;
+    }
+  }
+
+  @Override
+  public String getPasswordHash(String username) {
+    String sql = "SELECT password FROM users WHERE username = ?";
+
+    try (Connection conn = JdbcDatabase.getConnection();
+        PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+      pstmt.setString(1, username);
+      try (ResultSet rs = pstmt.executeQuery()) {
+        return rs.next() ? rs.getString("password") : null;
+      }
+
+    } catch (SQLException e) {
+      System.err.println("Error logging in: " + e.getMessage());
+      return null;
+    }
+  }
+
+  @Override
+  public User getUser(String username) {
+    String sql = "SELECT username, email, phone FROM users WHERE username = ?";
+
+    try (Connection conn = JdbcDatabase.getConnection();
+        PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+      pstmt.setString(1, username);
+      try (ResultSet rs = pstmt.executeQuery()) {
+        if (rs.next()) {
+          User user = new User();
+          user.setUsername(rs.getString("username"));
+          user.setEmail(rs.getString("email"));
+          user.setPhone(rs.getString("phone"));
+          return user;
+        }
+        return null;
+      }
+
+    } catch (SQLException e) {
+      System.err.println("Error getting user: " + e.getMessage());
+      return null;
+    }
+  }
+
+  @Override
+  public boolean userExists(String username) {
+    String sql = "SELECT 1 FROM users WHERE username = ?";
+
+    try (Connection conn = JdbcDatabase.getConnection();
+        PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+      pstmt.setString(1, username);
+      try (ResultSet rs = pstmt.executeQuery()) {
+        return rs.next();
+      }
+
+    } catch (SQLException e) {
+      System.err.println("Error checking user existence: " + e.getMessage());
+      return false;
+    }
+  }
+
+  @Override
+  public boolean updateUser(String username, String email, String phone) {
+    String sql = "UPDATE users SET email = ?, phone = ? WHERE username = ?";
+
+    try (Connection conn = JdbcDatabase.getConnection();
+        PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+      pstmt.setString(1, email);
+      pstmt.setString(2, phone);
+      pstmt.setString(3, username);
+      return pstmt.executeUpdate() > 0;
+
+    } catch (SQLException e) {
+      System.err.println("Error updating user: " + e.getMessage());
+      return false;
+    }
+  }
+
+  @Override
+  public boolean updatePassword(String username, String passwordHash) {
+    String sql = "UPDATE users SET password = ? WHERE username = ?";
+
+    try (Connection conn = JdbcDatabase.getConnection();
+        PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+      pstmt.setString(1, passwordHash);
+      pstmt.setString(2, username);
+      return pstmt.executeUpdate() > 0;
+
+    } catch (SQLException e) {
+      System.err.println("Error updating password: " + e.getMessage());
+      return false;
+    }
+  }
+
+  @Override
+  public boolean deleteUser(String username) {
+    // History rows go with the user through ON DELETE CASCADE
+    String sql = "DELETE FROM users WHERE username = ?";
+
+    try (Connection conn = JdbcDatabase.getConnection();
+        PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+      pstmt.setString(1, username);
+      return pstmt.executeUpdate() > 0;
+
+    } catch (SQLException e) {
+      System.err.println("Error deleting user: " + e.getMessage());
+      return false;
+    }
+  }
+}
@@ -0,0 +1,338 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * SQLite-backed queue of asynchronous translation jobs.
+ *
+ * Workers run outside request threads, so every method uses its own
+ * connection from {@link DatabaseManager#openConnection()}.
+ */
+public class JobRepository {
+
+  private static final int INSERT_BATCH_SIZE = 500;
+
+  /**
+   * Create a job with one pending item per text, charged to the given client
+   * address as it is translated
+   *
+   * @return the job ID, or null if it could not be stored
+   */
+  public static String createJob(String username, String targetLang, String clientAddress, List<String> texts) {
+    String jobSql = """
+        INSERT INTO translation_jobs (id, username, target_lang, total_items, client_address)
+        VALUES (?, ?, ?, ?, ?)
+        """;
+    String itemSql = "INSERT INTO translation_job_items (job_id, item_index, source_text) VALUES (?, ?, ?)";
+    String jobId = UUID.randomUUID().toString();
+
+    try (Connection conn = DatabaseManager.openConnection()) {
+      conn.setAutoCommit(false);
+
+      try (PreparedStatement jobStmt = conn.prepareStatement(jobSql);
+          PreparedStatement itemStmt = conn.prepareStatement(itemSql)) {
+
+        jobStmt.setString(1, jobId);
+        jobStmt.setString(2, username);
+        jobStmt.setString(3, targetLang);
+        jobStmt.setInt(4, texts.size());
+        jobStmt.setString(5, clientAddress);
+        jobStmt.executeUpdate();
+
+        for (int i = 0; i < texts.size(); i++) {
+          itemStmt.setString(1, jobId);
+          itemStmt.setInt(2, i);
+          itemStmt.setString(3, texts.get(i));
+          itemStmt.addBatch();
+          if ((i + 1) % INSERT_BATCH_SIZE == 0) {
+            itemStmt.executeBatch();
+          }
+        }
+        itemStmt.executeBatch();
+        conn.commit();
+        return jobId;
+
+      } catch (SQLException e) {
+        conn.rollback();
+        throw e;
+      }
+    } catch (SQLException e) {
+      System.err.println("Error creating translation job: " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Get a job with all of its items, or null if it does not exist
+   */
+  public static TranslationJob getJob(String jobId) {
+    String jobSql = "SELECT id, username, target_lang, total_items, created_at FROM translation_jobs WHERE id = ?";
+    String itemSql = """
+        SELECT item_index, source_text, translated_text, status, attempts, last_error
+        FROM translation_job_items
+        WHERE job_id = ?
+        ORDER BY item_index
+        """;
+
+    try (Connection conn = DatabaseManager.openConnection();
+        PreparedStatement jobStmt = conn.prepareStatement(jobSql);
+        PreparedStatement itemStmt = conn.prepareStatement(itemSql)) {
+
+      jobStmt.setString(1, jobId);
+      ResultSet rs = jobStmt.executeQuery();
+      if (!rs.next()) {
+        return null;
+      }
+
+      TranslationJob job = new TranslationJob();
+      job.setId(rs.getString("id"));
+      job.setUsername(rs.getString("username"));
+      job.setTargetLang(rs.getString("target_lang"));
+      job.setTotalItems(rs.getInt("total_items"));
+      job.setCreatedAt(rs.getTimestamp("created_at"));
+
+      itemStmt.setString(1, jobId);
+      ResultSet items = itemStmt.executeQuery();
+      while (items.next()) {
+        TranslationJobItem item = new TranslationJobItem();
+        item.setJobId(jobId);
+        item.setIndex(items.getInt("item_index"));
+        item.setSourceText(items.getString("source_text"));
+        item.setTranslatedText(items.getString("translated_text"));
+        item.setTargetLang(job.getTargetLang());
+        item.setStatus(items.getString("status"));
+        item.setAttempts(items.getInt("attempts"));
+        item.setLastError(items.getString("last_error"));
+        job.getItems().add(item);
+      }
+      return job;
+
+    } catch (SQLException e) {
+      System.err.println("Error getting translation job: " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Claim up to limit due items of the oldest job with pending work and mark
+   * them running. A single UPDATE ... RETURNING keeps concurrent workers from
+   * claiming the same rows.
+   */
+  public static List<TranslationJobItem> claimItems(int limit) {
+    List<TranslationJobItem> claimed = new ArrayList<>();
+    String sql = """
+        WITH next_job AS (
+            SELECT i.job_id
+            FROM translation_job_items i
+            JOIN translation_jobs j ON j.id = i.job_id
+            WHERE i.status = 'pending' AND i.next_attempt_at <= ?
+            ORDER BY j.created_at, i.job_id
+            LIMIT 1
+        )
+        UPDATE translation_job_items
+        SET status = 'running', attempts = attempts + 1
+        WHERE job_id = (SELECT job_id FROM next_job)
+          AND item_index IN (
+              SELECT item_index FROM translation_job_items
+              WHERE job_id = (SELECT job_id FROM next_job)
+                AND status = 'pending' AND next_attempt_at <= ?
+              ORDER BY item_index
+              LIMIT ?
+          )
+        RETURNING job_id, item_index, source_text, attempts
+        """;
+
+    try (Connection conn = DatabaseManager.openConnection();
+        PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+      long now = System.currentTimeMillis();
+      pstmt.setLong(1, now);
+      pstmt.setLong(2, now);
+      pstmt.setInt(3, limit);
+
+      try (ResultSet rs = pstmt.executeQuery()) {
+        while (rs.next()) {
+          TranslationJobItem item = new TranslationJobItem();
+          item.setJobId(rs.getString("job_id"));
+          item.setIndex(rs.getInt("item_index"));
+          item.setSourceText(rs.getString("source_text"));
+          item.setAttempts(rs.getInt("attempts"));
+          item.setStatus(TranslationJobItem.RUNNING);
+          claimed.add(item);
+        }
+      }
+
+      if (!claimed.isEmpty()) {
+        String[] job = getTargetLangAndClient(conn, claimed.get(0).getJobId());
+        claimed.forEach(item -> {
+          item.setTargetLang(job[0]);
+          item.setClientAddress(job[1]);
+        });
+      }
+
+    } catch (SQLException e) {
+      System.err.println("Error claiming translation job items: " + e.getMessage());
+    }
+
+    // RETURNING does not guarantee order
+    claimed.sort((a, b) -> Integer.compare(a.getIndex(), b.getIndex()));
+    return claimed;
+  }
+
+  /**
+   * Store the outcome of processed items in one transaction. Items in status
+   * pending are scheduled for another attempt at retryAt (epoch millis).
+   */
+  public static boolean finishItems(List<TranslationJobItem> items, long retryAt) {
+    String sql = """
+        UPDATE translation_job_items
+        SET status = ?, translated_text = ?, last_error = ?, next_attempt_at = ?
+        WHERE job_id = ? AND item_index = ?
+        """;
+
+    try (Connection conn = DatabaseManager.openConnection()) {
+      conn.setAutoCommit(false);
+
+      try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        for (TranslationJobItem item : items) {
+          pstmt.setString(1, item.getStatus());
+          pstmt.setString(2, item.getTranslatedText());
+          pstmt.setString(3, item.getLastError());
+          pstmt.setLong(4, TranslationJobItem.PENDING.equals(item.getStatus()) ? retryAt : 0);
+          pstmt.setString(5, item.getJobId());
+          pstmt.setInt(6, item.getIndex());
+          pstmt.addBatch();
+        }
+        pstmt.executeBatch();
+        conn.commit();
+        return true;
+
+      } catch (SQLException e) {
+        conn.rollback();
+        throw e;
+      }
+    } catch (SQLException e) {
+      System.err.println("Error saving translation job items: " + e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Put claimed items back in the queue as if they had never been claimed, for
+   * work cut short by a shutdown or a spent rate limit rather than failed.
+   * They are due again at retryAt (epoch millis, 0 for at once).
+   */
+  public static boolean releaseItems(List<TranslationJobItem> items, long retryAt) {
+    String sql = """
+        UPDATE translation_job_items
+        SET status = 'pending', attempts = MAX(0, attempts - 1), next_attempt_at = ?
+        WHERE job_id = ? AND item_index = ? AND status = 'running'
+        """;
+
+    try (Connection conn = DatabaseManager.openConnection();
+        PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+      for (TranslationJobItem item : items) {
+        pstmt.setLong(1, retryAt);
+        pstmt.setString(2, item.getJobId());
+        pstmt.setInt(3, item.getIndex());
+        pstmt.addBatch();
+      }
+      pstmt.executeBatch();
+      return true;
+
+    } catch (SQLException e) {
+      System.err.println("Error releasing translation job items: " + e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Put items left running by a previous shutdown or crash back in the queue
+   */
+  public static int requeueRunningItems() {
+    try (Connection conn = DatabaseManager.openConnection();
+        Statement stmt = conn.createStatement()) {
+
+      return stmt.executeUpdate(
+          "UPDATE translation_job_items SET status = 'pending', next_attempt_at = 0 WHERE status = 'running'");
+
+    } catch (SQLException e) {
+      System.err.println("Error requeueing translation job items: " + e.getMessage());
+      return 0;
+    }
+  }
+
+  /**
+   * Count a client's jobs that still have items to translate
+   */
+  public static int countActiveJobs(String clientAddress) {
+    String sql = """
+        SELECT COUNT(*) FROM translation_jobs j
+        WHERE j.client_address = ?
+          AND EXISTS (
+              SELECT 1 FROM translation_job_items i
+              WHERE i.job_id = j.id AND i.status IN ('pending', 'running')
+          )
+        """;
+
+    try (Connection conn = DatabaseManager.openConnection();
+        PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+      pstmt.setString(1, clientAddress);
+      try (ResultSet rs = pstmt.executeQuery()) {
+        return rs.next() ? rs.getInt(1) : 0;
+      }
+
+    } catch (SQLException e) {
+      System.err.println("Error counting translation jobs: " + e.getMessage());
+      return 0;
+    }
+  }
+
+  /**
+   * Delete finished jobs created more than the given number of hours ago,
+   * together with their items
+   *
+   * @return the number of jobs deleted
+   */
+  public static int deleteFinishedJobs(long olderThanHours) {
+    String sql = """
+        DELETE FROM translation_jobs
+        WHERE created_at < datetime('now', ?)
+          AND NOT EXISTS (
+              SELECT 1 FROM translation_job_items i
+              WHERE i.job_id = translation_jobs.id AND i.status IN ('pending', 'running')
+          )
+        """;
+
+    try (Connection conn = DatabaseManager.openConnection();
+        PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+      pstmt.setString(1, "-" + olderThanHours + " hours");
+      return pstmt.executeUpdate();
+
+    } catch (SQLException e) {
+      System.err.println("Error deleting finished translation jobs: " + e.getMessage());
+      return 0;
+    }
+  }
+
+  private static String[] getTargetLangAndClient(Connection conn, String jobId) throws SQLException {
+    String sql = "SELECT target_lang, client_address FROM translation_jobs WHERE id = ?";
+    try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+      pstmt.setString(1, jobId);
+      ResultSet rs = pstmt.executeQuery();
+      return rs.next()
+          ? new String[] { rs.getString("target_lang"), rs.getString("client_address") }
+          : new String[2];
+    }
+  }
+}
@@ -0,0 +1,42 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.util.List;
+
+public class JobRequest {
+  private List<String> texts;
+  private String to;
+  private String username;
+
+  public JobRequest() {
+  }
+
+  public JobRequest(List<String> texts, String to, String username) {
+    this.texts = texts;
+    this.to = to;
+    this.username = username;
+  }
+
+  public List<String> getTexts() {
+    return texts;
+  }
+
+  public void setTexts(List<String> texts) {
+    this.texts = texts;
+  }
+
+  public String getTo() {
+    return to;
+  }
+
+  public void setTo(String to) {
+    this.to = to;
+  }
+
+  public String getUsername() {
+    return username;
+  }
+
+  public void setUsername(String username) {
+    this.username = username;
+  }
+}
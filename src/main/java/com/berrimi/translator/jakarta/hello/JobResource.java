@@ -0,0 +1,122 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.net.URI;
+import java.util.List;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.UriInfo;
+
+@Path("jobs")
+public class JobResource {
+
+  private static final int MAX_ITEMS = AppConfig.getInt("jobs.maxItems", 10_000);
+  // Room for MAX_ITEMS texts of a few sentences; the worker charges them as it translates
+  private static final long MAX_CHARS = AppConfig.getLong("jobs.maxChars", 2_000_000);
+  private static final int MAX_ACTIVE_PER_CLIENT = AppConfig.getInt("jobs.maxActivePerClient", 5);
+
+  @Context
+  private UriInfo uriInfo;
+
+  @Context
+  private HttpServletRequest servletRequest;
+
+  @POST
+  @Produces(MediaType.APPLICATION_JSON)
+  @Consumes(MediaType.APPLICATION_JSON)
+  public Response submit(JobRequest request) {
+    List<String> texts = request == null ? null : request.getTexts();
+    if (texts == null || texts.isEmpty()) {
+      return Response.status(400).entity(JsonSupport.message("error", "At least one text is required")).build();
+    }
+
+    if (texts.size() > MAX_ITEMS) {
+      return Response.status(400)
+          .entity(JsonSupport.message("error", "A job can contain at most " + MAX_ITEMS + " texts"))
+          .build();
+    }
+
+    long chars = 0;
+    for (String text : texts) {
+      if (text == null || text.isBlank()) {
+        return Response.status(400).entity(JsonSupport.message("error", "Texts cannot be empty")).build();
+      }
+      chars += text.length();
+    }
+    if (chars > MAX_CHARS) {
+      return Response.status(400)
+          .entity(JsonSupport.message("error", "A job can contain at most " + MAX_CHARS + " characters"))
+          .build();
+    }
+
+    // The request only paid for queueing: the worker charges the text to this
+    // client as it translates it, so all that is bounded here is the backlog
+    String client = RateLimitFilter.clientAddress(servletRequest);
+    if (JobRepository.countActiveJobs(client) >= MAX_ACTIVE_PER_CLIENT) {
+      return Response.status(429)
+          .header("Retry-After", 60)
+          .entity(JsonSupport.message("error", "At most " + MAX_ACTIVE_PER_CLIENT + " jobs can be queued at once"))
+          .build();
+    }
+
+    String toLang = request.getTo() == null || request.getTo().isBlank() ? "darija" : request.getTo();
+    String jobId = JobRepository.createJob(request.getUsername(), toLang, client, texts);
+    if (jobId == null) {
+      return Response.status(500).entity(JsonSupport.message("error", "Failed to create job")).build();
+    }
+
+    JobWorker.wake();
+
+    URI location = uriInfo.getAbsolutePathBuilder().path(jobId).build();
+    return Response.accepted(JsonSupport.stream(json -> json.writeStartObject()
+        .write("jobId", jobId)
+        .write("status", "queued")
+        .write("total", texts.size())
+        .writeEnd())).location(location).build();
+  }
+
+  @GET
+  @Path("{id}")
+  @Produces(MediaType.APPLICATION_JSON)
+  public Response getJob(@PathParam("id") String id) {
+    TranslationJob job = JobRepository.getJob(id);
+    if (job == null) {
+      return Response.status(404).entity(JsonSupport.message("error", "Job not found")).build();
+    }
+
+    return Response.ok(JsonSupport.stream(json -> {
+      json.writeStartObject()
+          .write("jobId", job.getId())
+          .write("status", job.getStatus())
+          .write("targetLang", job.getTargetLang())
+          .write("total", job.getTotalItems())
+          .write("done", job.count(TranslationJobItem.DONE))
+          .write("failed", job.count(TranslationJobItem.FAILED))
+          .writeStartArray("results");
+
+      for (TranslationJobItem item : job.getItems()) {
+        json.writeStartObject()
+            .write("index", item.getIndex())
+            .write("text", item.getSourceText())
+            .write("status", item.getStatus());
+        if (item.getTranslatedText() != null) {
+          json.write("translation", item.getTranslatedText());
+        }
+        if (TranslationJobItem.FAILED.equals(item.getStatus()) && item.getLastError() != null) {
+          json.write("error", item.getLastError());
+        }
+        json.writeEnd();
+      }
+
+      json.writeEnd().writeEnd();
+    })).header("Cache-Control", "no-store").build();
+  }
+}
@@ -0,0 +1,254 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded pool of background workers draining the {@link JobRepository} queue.
+ *
+ * Workers claim a batch of items from one job and translate single-line texts
+ * with one numbered prompt through the bulk scheduler lane, falling back to one
+ * call per text when the answer cannot be matched up. Each call is charged to
+ * the rate limit of the client that queued the job, see
+ * {@link RateLimitFilter#charCost}; when it is spent, the unpaid items go back
+ * to the queue until it has refilled. Failed items are retried with
+ * exponential backoff until {@code jobs.maxAttempts}. Items cut short by
+ * {@link #stop()} go back to the queue without using up an attempt either.
+ *
+ * Finished jobs are deleted {@code jobs.retentionHours} after they were queued.
+ */
+public final class JobWorker {
+
+  private static final int WORKERS = Math.max(1, AppConfig.getInt("jobs.workers", 2));
+  private static final int BATCH_SIZE = Math.max(1, AppConfig.getInt("jobs.batchSize", 20));
+  private static final int BATCH_MAX_CHARS = AppConfig.getInt("jobs.batchMaxChars", 4000);
+  private static final int MAX_ATTEMPTS = Math.max(1, AppConfig.getInt("jobs.maxAttempts", 3));
+  private static final long POLL_MILLIS = AppConfig.getLong("jobs.pollMillis", 5000);
+  private static final long RETRY_BASE_MILLIS = AppConfig.getLong("jobs.retryBaseMillis", 2000);
+  private static final long RETENTION_HOURS = AppConfig.getLong("jobs.retentionHours", 168);
+  private static final long PURGE_INTERVAL_MILLIS = 3_600_000;
+
+  private static final AtomicLong LAST_PURGE = new AtomicLong();
+
+  private static final ReentrantLock LOCK = new ReentrantLock();
+  private static final Condition WORK_AVAILABLE = LOCK.newCondition();
+  private static long wakeups;
+
+  private static ExecutorService pool;
+  private static volatile boolean running;
+
+  private JobWorker() {
+  }
+
+  /**
+   * Requeue interrupted work and start the workers
+   */
+  public static void start() {
+    int requeued = JobRepository.requeueRunningItems();
+    if (requeued > 0) {
+      System.out.println("Requeued " + requeued + " interrupted translation job items");
+    }
+
+    AtomicInteger counter = new AtomicInteger();
+    pool = Executors.newFixedThreadPool(WORKERS, runnable -> {
+      Thread thread = new Thread(runnable, "translation-job-worker-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    running = true;
+    for (int i = 0; i < WORKERS; i++) {
+      pool.submit(JobWorker::runLoop);
+    }
+  }
+
+  /**
+   * Stop the workers; items they were processing are requeued on next start
+   */
+  public static void stop() {
+    running = false;
+    if (pool == null) {
+      return;
+    }
+    pool.shutdownNow();
+    try {
+      pool.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Tell idle workers that new items were queued
+   */
+  public static void wake() {
+    LOCK.lock();
+    try {
+      wakeups++;
+      WORK_AVAILABLE.signalAll();
+    } finally {
+      LOCK.unlock();
+    }
+  }
+
+  private static void runLoop() {
+    while (running) {
+      try {
+        purgeIfDue();
+        long seen = currentWakeups();
+        List<TranslationJobItem> items = JobRepository.claimItems(BATCH_SIZE);
+        if (items.isEmpty()) {
+          awaitWork(seen);
+        } else {
+          process(items);
+        }
+      } catch (InterruptedException e) {
+        return;
+      } catch (RuntimeException e) {
+        System.err.println("Error processing translation jobs: " + e.getMessage());
+      }
+    }
+  }
+
+  private static void process(List<TranslationJobItem> items) {
+    String to = items.get(0).getTargetLang();
+    String client = items.get(0).getClientAddress();
+    long waitMillis = 0;
+    List<TranslationJobItem> batch = new ArrayList<>();
+    List<TranslationJobItem> single = new ArrayList<>();
+    int batchChars = 0;
+
+    for (TranslationJobItem item : items) {
+      String text = item.getSourceText();
+      // Numbered prompts are parsed line by line, so multi-line texts go alone
+      if (text.indexOf('\n') < 0 && text.indexOf('\r') < 0 && batchChars + text.length() <= BATCH_MAX_CHARS) {
+        batch.add(item);
+        batchChars += text.length();
+      } else {
+        single.add(item);
+      }
+    }
+
+    List<String> translations = null;
+    boolean batchPaid = false;
+    if (batch.size() > 1) {
+      waitMillis = charge(client, batchChars);
+      if (waitMillis == 0) {
+        batchPaid = true;
+        List<String> texts = new ArrayList<>(batch.size());
+        batch.forEach(item -> texts.add(item.getSourceText()));
+        translations = LLMClient.translateBatch(texts, to, LlmScheduler.Lane.BULK);
+      }
+    }
+    if (translations != null) {
+      for (int i = 0; i < batch.size(); i++) {
+        complete(batch.get(i), translations.get(i));
+      }
+    } else {
+      single.addAll(batch);
+    }
+
+    for (TranslationJobItem item : single) {
+      if (Thread.currentThread().isInterrupted() || waitMillis != 0) {
+        break;
+      }
+      String text = item.getSourceText();
+      // The failed batch call already paid for its texts
+      waitMillis = batchPaid && batch.contains(item) ? 0 : charge(client, text.length());
+      if (waitMillis == Long.MAX_VALUE) {
+        // More than a full bucket: refilling will never pay for it
+        item.setStatus(TranslationJobItem.FAILED);
+        item.setLastError("Error: text too long for the rate limit");
+        waitMillis = 0;
+      } else if (waitMillis == 0) {
+        complete(item, LLMClient.translate(text, to, LlmScheduler.Lane.BULK));
+      }
+    }
+
+    if (Thread.currentThread().isInterrupted() || waitMillis != 0) {
+      // Stopping or out of tokens: neither says anything about the text, so
+      // only handled items are saved and the rest are queued again as they
+      // were, once the caller's bucket has refilled
+      List<TranslationJobItem> handled = new ArrayList<>();
+      List<TranslationJobItem> unfinished = new ArrayList<>();
+      for (TranslationJobItem item : items) {
+        (TranslationJobItem.RUNNING.equals(item.getStatus()) ? unfinished : handled).add(item);
+      }
+      if (!handled.isEmpty()) {
+        JobRepository.finishItems(handled, retryAt(items));
+      }
+      long releaseAt = Thread.currentThread().isInterrupted() ? 0 : System.currentTimeMillis() + waitMillis;
+      JobRepository.releaseItems(unfinished, releaseAt);
+      return;
+    }
+
+    JobRepository.finishItems(items, retryAt(items));
+  }
+
+  /**
+   * Back off exponentially by the number of attempts made so far
+   */
+  private static long retryAt(List<TranslationJobItem> items) {
+    int attempts = items.get(0).getAttempts();
+    return System.currentTimeMillis() + (RETRY_BASE_MILLIS << Math.min(attempts - 1, 10));
+  }
+
+  /**
+   * Charge a call over the given characters to the client that queued the job
+   *
+   * @return 0 when paid, otherwise the milliseconds until it can be
+   */
+  private static long charge(String client, long chars) {
+    // Jobs queued before clients were recorded paid when they were queued
+    return client == null ? 0 : RateLimitFilter.acquire(client, RateLimitFilter.charCost(chars));
+  }
+
+  private static void purgeIfDue() {
+    long now = System.currentTimeMillis();
+    long last = LAST_PURGE.get();
+    if (now - last < PURGE_INTERVAL_MILLIS || !LAST_PURGE.compareAndSet(last, now)) {
+      return;
+    }
+    int deleted = JobRepository.deleteFinishedJobs(RETENTION_HOURS);
+    if (deleted > 0) {
+      System.out.println("Deleted " + deleted + " finished translation jobs");
+    }
+  }
+
+  private static void complete(TranslationJobItem item, String result) {
+    if (!LLMClient.isFailure(result)) {
+      item.setStatus(TranslationJobItem.DONE);
+      item.setTranslatedText(result);
+      item.setLastError(null);
+    } else {
+      item.setStatus(item.getAttempts() < MAX_ATTEMPTS ? TranslationJobItem.PENDING : TranslationJobItem.FAILED);
+      item.setLastError(result);
+    }
+  }
+
+  private static long currentWakeups() {
+    LOCK.lock();
+    try {
+      return wakeups;
+    } finally {
+      LOCK.unlock();
+    }
+  }
+
+  private static void awaitWork(long seen) throws InterruptedException {
+    LOCK.lock();
+    try {
+      if (wakeups == seen && running) {
+        WORK_AVAILABLE.await(POLL_MILLIS, TimeUnit.MILLISECONDS);
+      }
+    } finally {
+      LOCK.unlock();
+    }
+  }
+}
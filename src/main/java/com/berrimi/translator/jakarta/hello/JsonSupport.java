@@ -0,0 +1,192 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.function.Consumer;
+
+import jakarta.json.spi.JsonProvider;
+import jakarta.json.stream.JsonGenerator;
+import jakarta.json.stream.JsonGeneratorFactory;
+import jakarta.ws.rs.core.StreamingOutput;
+
+/**
+ * Shared JSON-P factories and streaming response bodies.
+ *
+ * The provider and generator factory are resolved once; the static Json facade
+ * repeats the service lookup on every call.
+ */
+public final class JsonSupport {
+
+  private static final JsonProvider PROVIDER = JsonProvider.provider();
+  private static final JsonGeneratorFactory GENERATOR_FACTORY = PROVIDER
+      .createGeneratorFactory(Collections.emptyMap());
+
+  private JsonSupport() {
+  }
+
+  /**
+   * Get the cached JSON provider
+   */
+  public static JsonProvider provider() {
+    return PROVIDER;
+  }
+
+  /**
+   * Create a response body that writes JSON straight to the output stream
+   */
+  public static StreamingOutput stream(Consumer<JsonGenerator> writer) {
+    return output -> {
+      try (JsonGenerator generator = createGenerator(output)) {
+        writer.accept(generator);
+      }
+    };
+  }
+
+  /**
+   * Create a generator on a stream the caller keeps open
+   */
+  public static JsonGenerator createGenerator(OutputStream output) {
+    return GENERATOR_FACTORY.createGenerator(new NonClosingOutputStream(output), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Create an NDJSON generator on a stream the caller keeps open. Write one
+   * array: its brackets are dropped and every element becomes one line, so a
+   * whole stream of rows shares one generator.
+   */
+  public static JsonGenerator createNdjsonGenerator(OutputStream output) {
+    return GENERATOR_FACTORY.createGenerator(new NdjsonOutputStream(new NonClosingOutputStream(output)),
+        StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Create a single-field object body such as {"error": "..."}
+   */
+  public static StreamingOutput message(String name, String value) {
+    return stream(generator -> generator.writeStartObject()
+        .write(name, value)
+        .writeEnd());
+  }
+
+  /**
+   * Write JSON to a string, e.g. for a WebSocket text message
+   */
+  public static String toText(Consumer<JsonGenerator> writer) {
+    StringWriter text = new StringWriter();
+    try (JsonGenerator generator = GENERATOR_FACTORY.createGenerator(text)) {
+      writer.accept(generator);
+    }
+    return text.toString();
+  }
+
+  /**
+   * Closing the generator must not close the container's stream, which still
+   * belongs to JAX-RS and any interceptors wrapping it.
+   */
+  private static final class NonClosingOutputStream extends FilterOutputStream {
+
+    NonClosingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+      flush();
+    }
+  }
+
+  /**
+   * Rewrites one compact JSON array as NDJSON. The bytes of multi-byte UTF-8
+   * characters are never structural, so tracking strings and nesting depth
+   * byte by byte is enough to find the outer brackets and separators.
+   */
+  private static final class NdjsonOutputStream extends FilterOutputStream {
+
+    private static final int DROP = -1;
+
+    private int depth;
+    private boolean inString;
+    private boolean escaped;
+    private boolean wroteValue;
+
+    NdjsonOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      int rewritten = rewrite(b & 0xFF);
+      if (rewritten != DROP) {
+        out.write(rewritten);
+      }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      // Copy unchanged runs in bulk; only brackets and separators are replaced
+      int start = off;
+      int end = off + len;
+      for (int i = off; i < end; i++) {
+        int original = b[i] & 0xFF;
+        int rewritten = rewrite(original);
+        if (rewritten != original) {
+          out.write(b, start, i - start);
+          if (rewritten != DROP) {
+            out.write(rewritten);
+          }
+          start = i + 1;
+        }
+      }
+      out.write(b, start, end - start);
+    }
+
+    // The byte to write in place of b, or DROP
+    private int rewrite(int b) {
+      if (inString) {
+        if (escaped) {
+          escaped = false;
+        } else if (b == '\\') {
+          escaped = true;
+        } else if (b == '"') {
+          inString = false;
+        }
+        return b;
+      }
+      switch (b) {
+        case '"':
+          inString = true;
+          break;
+        case '[':
+        case '{':
+          if (depth++ == 0) {
+            return DROP;
+          }
+          break;
+        case ']':
+        case '}':
+          if (--depth == 0) {
+            return wroteValue ? '\n' : DROP;
+          }
+          break;
+        case ',':
+          if (depth == 1) {
+            return '\n';
+          }
+          break;
+        default:
+          break;
+      }
+      wroteValue = true;
+      return b;
+    }
+  }
+}
@@ -0,0 +1,315 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+import jakarta.json.JsonArray;
+import jakarta.json.JsonException;
+import jakarta.json.JsonNumber;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonReader;
+
+class LLMClient {
+
+  private static final String API_KEY = loadKey();
+  private static final HttpClient CLIENT = HttpClient.newBuilder()
+      .connectTimeout(Duration.ofSeconds(10))
+      .build();
+  private static final String ERROR_PREFIX = "Error: ";
+  private static final String OVERLOADED_PREFIX = "Overloaded: ";
+  private static final String INVALID_RESPONSE_PREFIX = "Invalid response: ";
+  private static final String PARSING_ERROR_PREFIX = "Parsing error: ";
+  // Returning a text untranslated is worse than an extra call, so be surer than usual
+  private static final double SAME_LANGUAGE_MARGIN = AppConfig.getDouble("llm.sameLanguage.minMargin", 0.4);
+
+  private static final LongAdder SAME_LANGUAGE_SKIPPED = new LongAdder();
+  // Tokens billed for the calling thread's last translation, for usage metering
+  private static final ThreadLocal<long[]> LAST_TOKENS = ThreadLocal.withInitial(() -> new long[1]);
+
+  static {
+    Metrics.gauge("llm.sameLanguageSkipped", SAME_LANGUAGE_SKIPPED::sum);
+  }
+
+  private static String loadKey() {
+    try (InputStream input = LLMClient.class.getClassLoader()
+        .getResourceAsStream("translator.properties")) {
+
+      if (input == null) {
+        System.err.println("translator.properties not found in resources!");
+        return null;
+      }
+
+      Properties props = new Properties();
+      props.load(input);
+      return props.getProperty("API_KEY");
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  public static String translate(String text, String to) {
+    return translate(text, to, LlmScheduler.Lane.INTERACTIVE);
+  }
+
+  /**
+   * Translate through the given scheduler lane
+   */
+  public static String translate(String text, String to, LlmScheduler.Lane lane) {
+    LAST_TOKENS.get()[0] = 0;
+
+    // The source language is identified locally, so the model does not spend
+    // tokens on it and a text already in the target language costs no call
+    String source = LanguageIdentifier.identify(text, SAME_LANGUAGE_MARGIN);
+    if (isInLanguage(text, source, to)) {
+      SAME_LANGUAGE_SKIPPED.increment();
+      return text;
+    }
+
+    String prompt;
+    if (source != null) {
+      prompt = "Translate the following " + LanguageIdentifier.displayName(source) + " text to " + to +
+          ". Return only the translation, without extra explanation:\n" + text;
+    } else {
+      prompt = "Detect the language of the following text and translate it to " + to +
+          ". Return only the translation, without extra explanation:\n" + text;
+    }
+    return complete(prompt, lane);
+  }
+
+  /**
+   * Translate several single-line texts with one prompt. Each text is numbered
+   * and the model is asked to answer with the same numbering.
+   *
+   * @return the translations in input order, or null if the answer could not be
+   *         matched up with the inputs (callers should fall back to one call per text)
+   */
+  public static List<String> translateBatch(List<String> texts, String to, LlmScheduler.Lane lane) {
+    StringBuilder prompt = new StringBuilder()
+        .append("Detect the language of each numbered text below and translate it to ").append(to)
+        .append(". Answer with exactly one line per text, in the form [number] translation,")
+        .append(" in the same order and without extra explanation:\n");
+    for (int i = 0; i < texts.size(); i++) {
+      prompt.append('[').append(i + 1).append("] ").append(texts.get(i)).append('\n');
+    }
+
+    String answer = complete(prompt.toString(), lane);
+    if (isFailure(answer)) {
+      return null;
+    }
+
+    List<String> translations = new ArrayList<>(texts.size());
+    for (String line : answer.split("\n")) {
+      String trimmed = line.trim();
+      if (trimmed.isEmpty()) {
+        continue;
+      }
+      String expected = "[" + (translations.size() + 1) + "]";
+      if (!trimmed.startsWith(expected)) {
+        return null;
+      }
+      translations.add(trimmed.substring(expected.length()).trim());
+    }
+    return translations.size() == texts.size() ? translations : null;
+  }
+
+  /**
+   * Whether a text identified as the source language needs no translation to
+   * a target. The identifier only reads the first
+   * {@value LanguageIdentifier#MAX_CHARS} characters, so a longer text, which
+   * may change language after them, always does.
+   */
+  private static boolean isInLanguage(String text, String source, String to) {
+    return source != null && text.length() <= LanguageIdentifier.MAX_CHARS
+        && source.equals(LanguageIdentifier.codeFor(to));
+  }
+
+  /**
+   * Translate one single-line text to several languages with one prompt. The
+   * source language is named or detected once, and the model answers with
+   * one numbered line per target. Targets in the text's own language cost
+   * nothing, as with {@link #translate}.
+   *
+   * @return the translations in target order, or null if the answer could not
+   *         be matched up with the targets; when the call itself fails, every
+   *         target that needed it gets the error string
+   */
+  public static List<String> translateToMany(String text, List<String> targets, LlmScheduler.Lane lane) {
+    LAST_TOKENS.get()[0] = 0;
+
+    String source = LanguageIdentifier.identify(text, SAME_LANGUAGE_MARGIN);
+    List<String> translations = new ArrayList<>(targets.size());
+    List<Integer> asked = new ArrayList<>(targets.size());
+    for (int i = 0; i < targets.size(); i++) {
+      if (isInLanguage(text, source, targets.get(i))) {
+        SAME_LANGUAGE_SKIPPED.increment();
+        translations.add(text);
+      } else {
+        translations.add(null);
+        asked.add(i);
+      }
+    }
+    if (asked.isEmpty()) {
+      return translations;
+    }
+
+    StringBuilder prompt = new StringBuilder();
+    if (source != null) {
+      prompt.append("Translate the following ").append(LanguageIdentifier.displayName(source))
+          .append(" text to each numbered language below.");
+    } else {
+      prompt.append("Detect the language of the following text and translate it to each numbered language below.");
+    }
+    prompt.append(" Answer with exactly one line per language, in the form [number] translation,")
+        .append(" in the same order and without extra explanation.\n");
+    for (int i = 0; i < asked.size(); i++) {
+      prompt.append('[').append(i + 1).append("] ").append(targets.get(asked.get(i))).append('\n');
+    }
+    prompt.append("Text:\n").append(text);
+
+    String answer = complete(prompt.toString(), lane);
+    if (isFailure(answer)) {
+      // Retrying per target would not help an overloaded or failing upstream
+      asked.forEach(i -> translations.set(i, answer));
+      return translations;
+    }
+
+    int answered = 0;
+    for (String line : answer.split("\n")) {
+      String trimmed = line.trim();
+      if (trimmed.isEmpty()) {
+        continue;
+      }
+      String expected = "[" + (answered + 1) + "]";
+      if (answered == asked.size() || !trimmed.startsWith(expected)) {
+        return null;
+      }
+      translations.set(asked.get(answered++), trimmed.substring(expected.length()).trim());
+    }
+    return answered == asked.size() ? translations : null;
+  }
+
+  /**
+   * Send a single-message chat completion and return the model's answer
+   */
+  private static String complete(String prompt, LlmScheduler.Lane lane) {
+    try {
+      String body = """
+          {
+            "model": "kwaipilot/kat-coder-pro:free",
+            "messages": [
+              { "role": "user", "content": "%s" }
+            ]
+          }
+          """.formatted(escapeJson(prompt));
+
+      HttpRequest request = HttpRequest.newBuilder()
+          .uri(URI.create("https://openrouter.ai/api/v1/chat/completions"))
+          .header("Content-Type", "application/json")
+          .header("Authorization", "Bearer " + API_KEY)
+          .POST(HttpRequest.BodyPublishers.ofString(body))
+          .build();
+
+      HttpResponse<String> response = LlmScheduler.run(lane, () -> send(request));
+
+      return parseOpenRouterResponse(response.body());
+
+    } catch (LlmScheduler.OverloadedException e) {
+      return OVERLOADED_PREFIX + e.getMessage();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return ERROR_PREFIX + "interrupted";
+    } catch (Exception e) {
+      return ERROR_PREFIX + e.getMessage();
+    }
+  }
+
+  /**
+   * Send a request and wait for the answer. Interrupting the waiting thread
+   * cancels the exchange, so a superseded call stops costing upstream work.
+   */
+  private static HttpResponse<String> send(HttpRequest request) throws Exception {
+    long started = RequestTiming.start();
+    CompletableFuture<HttpResponse<String>> response =
+        CLIENT.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+    try {
+      HttpResponse<String> answer = response.get();
+      int status = answer.statusCode();
+      if (status == 429 || status == 502 || status == 503 || status == 504) {
+        LlmScheduler.congested();
+      }
+      return answer;
+    } catch (InterruptedException e) {
+      response.cancel(true);
+      throw e;
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+    } finally {
+      RequestTiming.stop("llm", started);
+    }
+  }
+
+  /**
+   * Tokens used by the last {@link #translate} on this thread, 0 if it made
+   * no call or the provider did not report them
+   */
+  public static long lastTokens() {
+    return LAST_TOKENS.get()[0];
+  }
+
+  /**
+   * Check whether a result is one of the error strings returned in place of a translation
+   */
+  public static boolean isFailure(String result) {
+    return result == null
+        || result.startsWith(ERROR_PREFIX)
+        || result.startsWith(OVERLOADED_PREFIX)
+        || result.startsWith(INVALID_RESPONSE_PREFIX)
+        || result.startsWith(PARSING_ERROR_PREFIX);
+  }
+
+  /**
+   * Check whether a call was turned away because too many were already waiting
+   */
+  public static boolean isOverloaded(String result) {
+    return result != null && result.startsWith(OVERLOADED_PREFIX);
+  }
+
+  private static String escapeJson(String s) {
+    return s.replace("\\", "\\\\")
+        .replace("\"", "\\\"")
+        .replace("\n", "\\n")
+        .replace("\r", "\\r")
+        .replace("\t", "\\t");
+  }
+
+  private static String parseOpenRouterResponse(String responseJson) {
+    // Read the answer with a real JSON parser so escaped quotes and newlines survive
+    try (JsonReader reader = JsonSupport.provider().createReader(new StringReader(responseJson))) {
+      JsonObject root = reader.readObject();
+      JsonObject usage = root.getJsonObject("usage");
+      JsonNumber tokens = usage == null ? null : usage.getJsonNumber("total_tokens");
+      if (tokens != null) {
+        LAST_TOKENS.get()[0] += tokens.longValue();
+      }
+      JsonArray choices = root.getJsonArray("choices");
+      if (choices == null || choices.isEmpty()) {
+        return INVALID_RESPONSE_PREFIX + responseJson;
+      }
+      return choices.getJsonObject(0).getJsonObject("message").getString("content").trim();
+    } catch (JsonException | ClassCastException | NullPointerException e) {
+      return PARSING_ERROR_PREFIX + e.getMessage();
+    }
+  }
+}
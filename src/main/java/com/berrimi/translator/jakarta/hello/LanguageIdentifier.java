@@ -0,0 +1,332 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process language identification with a character n-gram model.
+ *
+ * The model ({@code langid.model}, built by {@link LanguageModelTrainer} from
+ * the texts in src/main/langid) holds per-language log probabilities of
+ * character 1- to 3-grams for Darija in Arabic script ("ary") and Latin
+ * script ("ary-Latn"), Amazigh ("ber"), English, Spanish and French. A text
+ * is scored by summing the log probabilities of its n-grams; text in Tifinagh
+ * script is Amazigh without scoring. Only the first {@value #MAX_CHARS}
+ * characters are read, so a call takes a few microseconds.
+ *
+ * When the best language does not beat the runner-up by a clear margin, or the
+ * text is too short to tell, the answer is null rather than a guess.
+ */
+public final class LanguageIdentifier {
+
+  static final String MODEL_RESOURCE = "langid.model";
+
+  static final int MAX_CHARS = 256;
+  private static final int MIN_LETTERS = AppConfig.getInt("langid.minLetters", 6);
+  private static final double MIN_MARGIN = AppConfig.getDouble("langid.minMargin", 0.3);
+
+  private static final Map<String, String> NAMES = Map.of(
+      "ary", "Moroccan Darija (Arabic script)",
+      "ary-Latn", "Moroccan Darija (Latin script)",
+      "ber", "Amazigh",
+      "en", "English",
+      "es", "Spanish",
+      "fr", "French");
+
+  private static final LongAdder IDENTIFIED = new LongAdder();
+  private static final LongAdder UNSURE = new LongAdder();
+
+  static {
+    Metrics.gauge("langid.identified", IDENTIFIED::sum);
+    Metrics.gauge("langid.unsure", UNSURE::sum);
+  }
+
+  private LanguageIdentifier() {
+  }
+
+  /**
+   * Identify the language of a text
+   *
+   * @return a language code of the model, or null if it cannot tell
+   */
+  public static String identify(String text) {
+    return identify(text, MIN_MARGIN);
+  }
+
+  /**
+   * Identify the language of a text, requiring the given margin over the
+   * runner-up (average log probability per n-gram) instead of the configured one
+   */
+  public static String identify(String text, double minMargin) {
+    String language = Model.LANGUAGES.length == 0 || text == null ? null : score(text, minMargin);
+    (language == null ? UNSURE : IDENTIFIED).increment();
+    return language;
+  }
+
+  /**
+   * Model language code for a target language name as used by the API
+   * ("darija", "fr", "French", ...), or null if the model has none
+   */
+  public static String codeFor(String languageName) {
+    if (languageName == null) {
+      return null;
+    }
+    switch (languageName.trim().toLowerCase(Locale.ROOT)) {
+      case "darija":
+      case "ary":
+        return "ary";
+      case "amazigh":
+      case "berber":
+      case "tamazight":
+      case "ber":
+        return "ber";
+      case "english":
+      case "en":
+        return "en";
+      case "spanish":
+      case "es":
+        return "es";
+      case "french":
+      case "fr":
+        return "fr";
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Name of a model language for use in prompts
+   */
+  public static String displayName(String code) {
+    return NAMES.getOrDefault(code, code);
+  }
+
+  private static String score(String text, double minMargin) {
+    int languageCount = Model.LANGUAGES.length;
+    double[] totals = new double[languageCount];
+    int[] counts = new int[1];
+
+    int tifinagh = forEachNgram(text, MAX_CHARS, (key, order) -> {
+      int slot = Model.find(key);
+      if (slot >= 0) {
+        int base = slot * languageCount;
+        for (int i = 0; i < languageCount; i++) {
+          totals[i] += Model.SCORES[base + i];
+        }
+      } else {
+        for (int i = 0; i < languageCount; i++) {
+          totals[i] += Model.FLOORS[3 * i + order - 1];
+        }
+      }
+      counts[0]++;
+    });
+
+    if (tifinagh > 0) {
+      return "ber";
+    }
+    // Each letter adds one unigram, so this is about the number of letters
+    if (counts[0] < 3 * MIN_LETTERS) {
+      return null;
+    }
+
+    int best = 0;
+    int second = -1;
+    for (int i = 1; i < languageCount; i++) {
+      if (totals[i] > totals[best]) {
+        second = best;
+        best = i;
+      } else if (second < 0 || totals[i] > totals[second]) {
+        second = i;
+      }
+    }
+    // Margin in log probability per n-gram
+    double margin = second < 0 ? Double.MAX_VALUE : (totals[best] - totals[second]) / counts[0];
+    return margin >= minMargin ? Model.LANGUAGES[best] : null;
+  }
+
+  /**
+   * Receives the packed n-grams of a text with their order (1 to 3)
+   */
+  @FunctionalInterface
+  interface NgramConsumer {
+    void accept(long key, int order);
+  }
+
+  /**
+   * Normalize a text and pass each of its n-grams to the consumer: letters are
+   * lowercased, the digits used as letters in Latin-script Darija are kept,
+   * everything else separates words, and words are padded with one space on
+   * each side.
+   *
+   * @return the number of Tifinagh letters seen
+   */
+  static int forEachNgram(String text, int maxChars, NgramConsumer consumer) {
+    int length = Math.min(text.length(), maxChars);
+    int tifinagh = 0;
+    char previous2 = 0;
+    char previous = ' ';
+
+    for (int i = 0; i <= length; i++) {
+      char c = i < length ? normalize(text.charAt(i)) : ' ';
+      if (c >= '\u2D30' && c <= '\u2D7F') {
+        tifinagh++;
+      }
+      if (c == ' ' && previous == ' ') {
+        continue;
+      }
+      if (c != ' ') {
+        consumer.accept(c, 1);
+      }
+      consumer.accept(((long) previous << 16) | c, 2);
+      if (previous2 != 0) {
+        consumer.accept(((long) previous2 << 32) | ((long) previous << 16) | c, 3);
+      }
+      // A trigram never spans a word boundary: " a " is the last one of "a"
+      previous2 = c == ' ' ? 0 : previous;
+      previous = c;
+    }
+    return tifinagh;
+  }
+
+  /**
+   * Pack an n-gram of one to three characters as it is fed to the consumer
+   */
+  static long pack(String ngram) {
+    long key = 0;
+    for (int i = 0; i < ngram.length(); i++) {
+      key = (key << 16) | ngram.charAt(i);
+    }
+    return key;
+  }
+
+  /**
+   * Reverse of {@link #pack}
+   */
+  static String unpack(long key) {
+    StringBuilder ngram = new StringBuilder(3);
+    for (int shift = 32; shift >= 0; shift -= 16) {
+      char c = (char) (key >>> shift);
+      if (c != 0) {
+        ngram.append(c);
+      }
+    }
+    return ngram.toString();
+  }
+
+  private static char normalize(char c) {
+    if (Character.isLetter(c)) {
+      return Character.toLowerCase(c);
+    }
+    // Arabizi: 2 hamza, 3 ain, 5 kha, 7 ha, 8 gha, 9 qaf
+    if (c == '2' || c == '3' || c == '5' || c == '7' || c == '8' || c == '9') {
+      return c;
+    }
+    return ' ';
+  }
+
+  private static int hash(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+
+  private static float parseScore(String field) {
+    // Stored as hundredths of a nat
+    return Integer.parseInt(field) / 100f;
+  }
+
+  /**
+   * The model, loaded on first use so the trainer can share the n-gram code
+   */
+  private static final class Model {
+    private static final String[] LANGUAGES;
+    // Open-addressing table from packed n-gram to its row of scores
+    private static final long[] KEYS;
+    private static final float[] SCORES;
+    private static final float[] FLOORS;
+    private static final int MASK;
+
+    static {
+      List<String> languages = new ArrayList<>();
+      List<float[]> floors = new ArrayList<>();
+      List<Long> keys = new ArrayList<>();
+      List<float[]> rows = new ArrayList<>();
+
+      try (InputStream input = LanguageIdentifier.class.getClassLoader().getResourceAsStream(MODEL_RESOURCE)) {
+        if (input == null) {
+          throw new IOException(MODEL_RESOURCE + " not found in resources");
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+          if (line.isEmpty() || line.startsWith("#")) {
+            continue;
+          }
+          if (line.startsWith("language ")) {
+            // language <code> <floor of 1-grams> <floor of 2-grams> <floor of 3-grams>
+            String[] fields = line.split(" ");
+            languages.add(fields[1]);
+            floors.add(new float[] { parseScore(fields[2]), parseScore(fields[3]), parseScore(fields[4]) });
+            continue;
+          }
+          // <score per language, space separated> TAB <n-gram>
+          int tab = line.indexOf('\t');
+          String[] fields = line.substring(0, tab).split(" ");
+          float[] row = new float[fields.length];
+          for (int i = 0; i < fields.length; i++) {
+            row[i] = parseScore(fields[i]);
+          }
+          keys.add(pack(line.substring(tab + 1)));
+          rows.add(row);
+        }
+      } catch (IOException | RuntimeException e) {
+        System.err.println("Error loading language model: " + e.getMessage());
+        languages.clear();
+        keys.clear();
+      }
+
+      int languageCount = languages.size();
+      LANGUAGES = languages.toArray(new String[0]);
+      FLOORS = new float[3 * languageCount];
+      for (int i = 0; i < languageCount; i++) {
+        System.arraycopy(floors.get(i), 0, FLOORS, 3 * i, 3);
+      }
+
+      int capacity = Integer.highestOneBit(Math.max(16, keys.size() * 2)) << 1;
+      MASK = capacity - 1;
+      KEYS = new long[capacity];
+      SCORES = new float[capacity * languageCount];
+      for (int i = 0; i < keys.size(); i++) {
+        int slot = slot(keys.get(i));
+        KEYS[slot] = keys.get(i);
+        System.arraycopy(rows.get(i), 0, SCORES, slot * languageCount, languageCount);
+      }
+    }
+
+    private static int find(long key) {
+      for (int slot = hash(key) & MASK;; slot = (slot + 1) & MASK) {
+        if (KEYS[slot] == key) {
+          return slot;
+        }
+        if (KEYS[slot] == 0) {
+          return -1;
+        }
+      }
+    }
+
+    private static int slot(long key) {
+      int slot = hash(key) & MASK;
+      while (KEYS[slot] != 0 && KEYS[slot] != key) {
+        slot = (slot + 1) & MASK;
+      }
+      return slot;
+    }
+  }
+}
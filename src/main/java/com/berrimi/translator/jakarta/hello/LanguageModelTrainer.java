@@ -0,0 +1,110 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Builds the model read by {@link LanguageIdentifier} from one text file per
+ * language ({@code <code>.txt}, UTF-8):
+ *
+ * <pre>
+ * java -cp target/classes com.berrimi.translator.jakarta.hello.LanguageModelTrainer \
+ *     src/main/langid src/main/resources/langid.model
+ * </pre>
+ *
+ * Probabilities are add-k smoothed per n-gram order; only the most frequent
+ * n-grams of each language are kept, and everything else scores the
+ * language's floor.
+ */
+public final class LanguageModelTrainer {
+
+  private static final int KEEP_PER_LANGUAGE = 700;
+  private static final double SMOOTHING = 0.1;
+
+  private LanguageModelTrainer() {
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println("Usage: LanguageModelTrainer <corpus directory> <model file>");
+      System.exit(2);
+    }
+
+    File[] corpora = new File(args[0]).listFiles((dir, name) -> name.endsWith(".txt"));
+    if (corpora == null || corpora.length == 0) {
+      System.err.println("No <language>.txt files in " + args[0]);
+      System.exit(2);
+    }
+    Arrays.sort(corpora);
+
+    int languageCount = corpora.length;
+    String[] languages = new String[languageCount];
+    List<Map<Long, Integer>> counts = new ArrayList<>();
+    long[][] totals = new long[languageCount][3];
+    List<Map<Long, Boolean>> vocabulary = List.of(new HashMap<>(), new HashMap<>(), new HashMap<>());
+
+    for (int i = 0; i < languageCount; i++) {
+      languages[i] = corpora[i].getName().substring(0, corpora[i].getName().length() - 4);
+      String text = new String(Files.readAllBytes(corpora[i].toPath()), StandardCharsets.UTF_8);
+      Map<Long, Integer> languageCounts = new HashMap<>();
+      long[] languageTotals = totals[i];
+      LanguageIdentifier.forEachNgram(text, text.length(), (key, order) -> {
+        languageCounts.merge(key, 1, Integer::sum);
+        languageTotals[order - 1]++;
+        vocabulary.get(order - 1).put(key, Boolean.TRUE);
+      });
+      counts.add(languageCounts);
+    }
+
+    // Union of each language's most frequent n-grams, in a stable order
+    TreeSet<Long> kept = new TreeSet<>();
+    for (Map<Long, Integer> languageCounts : counts) {
+      languageCounts.entrySet().stream()
+          .sorted(Map.Entry.<Long, Integer>comparingByValue(Comparator.reverseOrder())
+              .thenComparing(Map.Entry.comparingByKey()))
+          .limit(KEEP_PER_LANGUAGE)
+          .forEach(entry -> kept.add(entry.getKey()));
+    }
+
+    try (PrintWriter writer = new PrintWriter(new File(args[1]), StandardCharsets.UTF_8)) {
+      writer.println("# Character n-gram model for LanguageIdentifier, built by LanguageModelTrainer");
+      writer.println("# from " + args[0] + "; scores are log probabilities in hundredths of a nat.");
+      for (int i = 0; i < languageCount; i++) {
+        writer.print("language " + languages[i]);
+        for (int order = 1; order <= 3; order++) {
+          writer.print(" " + score(0, totals[i][order - 1], vocabulary.get(order - 1).size()));
+        }
+        writer.println();
+      }
+      for (long key : kept) {
+        int order = LanguageIdentifier.unpack(key).length();
+        StringBuilder row = new StringBuilder();
+        for (int i = 0; i < languageCount; i++) {
+          if (i > 0) {
+            row.append(' ');
+          }
+          int count = counts.get(i).getOrDefault(key, 0);
+          row.append(score(count, totals[i][order - 1], vocabulary.get(order - 1).size()));
+        }
+        writer.println(row.append('\t').append(LanguageIdentifier.unpack(key)));
+      }
+    }
+
+    System.out.println(languageCount + " languages, " + kept.size() + " n-grams written to " + args[1]);
+  }
+
+  private static int score(int count, long total, int vocabularySize) {
+    double probability = (count + SMOOTHING) / (total + SMOOTHING * vocabularySize);
+    return (int) Math.round(Math.log(probability) * 100);
+  }
+}
@@ -0,0 +1,66 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebFilter;
+import jakarta.servlet.http.HttpFilter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Hands the caller's address to {@link LiveTranslationEndpoint}, which has no
+ * access to the upgrade request. The address is resolved like
+ * {@link RateLimitFilter} does and passed as a request parameter that
+ * replaces any value the client sent.
+ */
+@WebFilter("/live")
+public class LiveClientFilter extends HttpFilter {
+
+  private static final long serialVersionUID = 1L;
+
+  @Override
+  protected void doFilter(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+    chain.doFilter(new ClientRequest(request, RateLimitFilter.clientAddress(request)), response);
+  }
+
+  private static final class ClientRequest extends HttpServletRequestWrapper {
+
+    private final Map<String, String[]> parameters;
+
+    ClientRequest(HttpServletRequest request, String clientAddress) {
+      super(request);
+      Map<String, String[]> parameters = new HashMap<>(request.getParameterMap());
+      parameters.put(LiveTranslationEndpoint.CLIENT_PARAMETER, new String[] { clientAddress });
+      this.parameters = Collections.unmodifiableMap(parameters);
+    }
+
+    @Override
+    public String getParameter(String name) {
+      String[] values = parameters.get(name);
+      return values == null ? null : values[0];
+    }
+
+    @Override
+    public Map<String, String[]> getParameterMap() {
+      return parameters;
+    }
+
+    @Override
+    public Enumeration<String> getParameterNames() {
+      return Collections.enumeration(parameters.keySet());
+    }
+
+    @Override
+    public String[] getParameterValues(String name) {
+      return parameters.get(name);
+    }
+  }
+}
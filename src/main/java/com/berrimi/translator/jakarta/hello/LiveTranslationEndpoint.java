@@ -0,0 +1,316 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import jakarta.json.JsonException;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonReader;
+import jakarta.websocket.CloseReason;
+import jakarta.websocket.OnClose;
+import jakarta.websocket.OnError;
+import jakarta.websocket.OnMessage;
+import jakarta.websocket.OnOpen;
+import jakarta.websocket.Session;
+import jakarta.websocket.server.ServerEndpoint;
+
+/**
+ * Translation while typing, over a WebSocket at {@code /live?username=&to=}.
+ *
+ * The client sends the whole input after every change, as
+ * {@code {"text": "...", "to": "fr"}} ("to" is optional). The server waits
+ * until the input has been still for {@code live.debounceMillis}, translates
+ * it, and pushes {@code {"text": "...", "translation": "..."}}. Newer input
+ * cancels the pending and in-flight translation of older input, including
+ * the upstream HTTP request, so only the latest text costs an LLM call and
+ * only its result is pushed.
+ *
+ * Each user has one session; opening another closes the previous one.
+ * Every translation that starts is charged to the caller's address in the
+ * REST rate limiter ({@code ratelimit.cost.live}), and an address may hold at
+ * most {@code live.maxSessionsPerAddress} sessions. Usernames are not
+ * authenticated, so the cap counts every session, named or not.
+ */
+@ServerEndpoint("/live")
+public class LiveTranslationEndpoint {
+
+  private static final long DEBOUNCE_MILLIS = Math.max(0, AppConfig.getLong("live.debounceMillis", 300));
+  private static final int MAX_CHARS = AppConfig.getInt("live.maxChars", 2000);
+  private static final int THREADS = Math.max(1, AppConfig.getInt("live.threads", 16));
+  private static final int MAX_SESSIONS_PER_ADDRESS = Math.max(1, AppConfig.getInt("live.maxSessionsPerAddress", 8));
+  private static final long COST = RateLimitFilter.resolveCost("live");
+
+  /** Request parameter carrying the caller's address, set by {@link LiveClientFilter} */
+  static final String CLIENT_PARAMETER = "client";
+
+  private static final String STATE = "live.state";
+  private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+  private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "live-debounce");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private static final ExecutorService TRANSLATORS = Executors.newFixedThreadPool(THREADS, runnable -> {
+    Thread thread = new Thread(runnable, "live-translate-" + THREAD_COUNTER.incrementAndGet());
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private static final Map<String, Session> SESSIONS = new ConcurrentHashMap<>();
+  private static final Map<String, Integer> SESSIONS_PER_ADDRESS = new ConcurrentHashMap<>();
+
+  private static final LongAdder RECEIVED = new LongAdder();
+  private static final LongAdder TRANSLATED = new LongAdder();
+  private static final LongAdder CANCELLED = new LongAdder();
+  private static final LongAdder RATE_LIMITED = new LongAdder();
+  private static final LongAdder REFUSED = new LongAdder();
+
+  static {
+    Metrics.gauge("live.sessions", SESSIONS::size);
+    Metrics.gauge("live.received", RECEIVED::sum);
+    Metrics.gauge("live.translated", TRANSLATED::sum);
+    Metrics.gauge("live.cancelled", CANCELLED::sum);
+    Metrics.gauge("live.rateLimited", RATE_LIMITED::sum);
+    Metrics.gauge("live.refused", REFUSED::sum);
+  }
+
+  @OnOpen
+  public void open(Session session) {
+    String username = parameter(session, "username");
+    String client = parameter(session, CLIENT_PARAMETER);
+    State state = new State(username, parameter(session, "to"), client == null ? "unknown" : client);
+    session.getUserProperties().put(STATE, state);
+
+    if (!admit(state.client)) {
+      REFUSED.increment();
+      try {
+        session.close(new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, "Too many live sessions"));
+      } catch (IOException e) {
+        System.err.println("Error closing refused live session: " + e.getMessage());
+      }
+      return;
+    }
+    state.admitted = true;
+
+    if (username != null) {
+      Session previous = SESSIONS.put(username, session);
+      if (previous != null && previous.isOpen()) {
+        try {
+          previous.close(new CloseReason(CloseReason.CloseCodes.NORMAL_CLOSURE, "Replaced by a newer session"));
+        } catch (IOException e) {
+          System.err.println("Error closing replaced live session: " + e.getMessage());
+        }
+      }
+    }
+  }
+
+  @OnMessage
+  public void message(Session session, String message) {
+    State state = (State) session.getUserProperties().get(STATE);
+    RECEIVED.increment();
+
+    String text;
+    String to;
+    try (JsonReader reader = JsonSupport.provider().createReader(new StringReader(message))) {
+      JsonObject input = reader.readObject();
+      text = input.getString("text", "");
+      to = input.getString("to", state.defaultTo);
+    } catch (JsonException | ClassCastException e) {
+      send(session, JsonSupport.toText(json -> json.writeStartObject()
+          .write("error", "Expected {\"text\": \"...\", \"to\": \"...\"}")
+          .writeEnd()));
+      return;
+    }
+    if (text.length() > MAX_CHARS) {
+      send(session, JsonSupport.toText(json -> json.writeStartObject()
+          .write("error", "Text is longer than " + MAX_CHARS + " characters")
+          .writeEnd()));
+      return;
+    }
+
+    synchronized (state) {
+      int generation = ++state.generation;
+      state.cancel();
+      if (text.isBlank()) {
+        // Nothing to translate; let the client clear its output
+        push(session, state, generation, text, "");
+        return;
+      }
+      state.pending = TIMER.schedule(() -> start(session, state, generation, text, to),
+          DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @OnClose
+  public void close(Session session) {
+    State state = (State) session.getUserProperties().get(STATE);
+    if (state == null) {
+      return;
+    }
+    synchronized (state) {
+      state.generation++;
+      state.cancel();
+    }
+    if (!state.admitted) {
+      return;
+    }
+    SESSIONS_PER_ADDRESS.computeIfPresent(state.client, (client, count) -> count == 1 ? null : count - 1);
+    if (state.username != null) {
+      SESSIONS.remove(state.username, session);
+    }
+  }
+
+  @OnError
+  public void error(Session session, Throwable error) {
+    System.err.println("Error in live session: " + error.getMessage());
+  }
+
+  /**
+   * Stop the debounce timer and interrupt running translations
+   */
+  public static void shutdown() {
+    TIMER.shutdownNow();
+    TRANSLATORS.shutdownNow();
+  }
+
+  private static void start(Session session, State state, int generation, String text, String to) {
+    synchronized (state) {
+      if (state.generation != generation) {
+        return;
+      }
+      // Charged once the input settles, so keystrokes the debounce absorbs are free
+      long waitMillis = RateLimitFilter.acquire(state.client, COST);
+      if (waitMillis != 0) {
+        RATE_LIMITED.increment();
+        pushError(session, state, generation, text, "Too many requests",
+            RateLimitFilter.retryAfterSeconds(waitMillis));
+        return;
+      }
+      state.running = TRANSLATORS.submit(() -> translate(session, state, generation, text, to));
+    }
+  }
+
+  private static void translate(Session session, State state, int generation, String text, String to) {
+    String result = TranslationCache.get(text, to);
+    long llmTokens = 0;
+    if (result == null) {
+      result = LLMClient.translate(text, to, LlmScheduler.Lane.INTERACTIVE);
+      if (Thread.currentThread().isInterrupted()) {
+        // Superseded while waiting; newer input owns the session now
+        return;
+      }
+      if (LLMClient.isOverloaded(result)) {
+        pushError(session, state, generation, text, "Translation service is busy",
+            LlmScheduler.retryAfterSeconds());
+        return;
+      }
+      llmTokens = LLMClient.lastTokens();
+      TranslationCache.putAsync(text, to, result);
+    }
+    TRANSLATED.increment();
+    UsageMeter.recordTranslation(state.username, to, text.length(), llmTokens);
+    push(session, state, generation, text, result == null ? "" : result);
+  }
+
+  private static void push(Session session, State state, int generation, String text, String translation) {
+    synchronized (state) {
+      if (state.generation != generation) {
+        return;
+      }
+      send(session, JsonSupport.toText(json -> json.writeStartObject()
+          .write("text", text)
+          .write("translation", translation)
+          .writeEnd()));
+    }
+  }
+
+  private static void pushError(Session session, State state, int generation, String text, String error,
+      long retryAfter) {
+    synchronized (state) {
+      if (state.generation != generation) {
+        return;
+      }
+      // The next change of input tries again
+      send(session, JsonSupport.toText(json -> json.writeStartObject()
+          .write("text", text)
+          .write("error", error)
+          .write("retryAfter", retryAfter)
+          .writeEnd()));
+    }
+  }
+
+  // Count a new session against its address, unless the address is at the cap
+  private static boolean admit(String client) {
+    boolean[] admitted = new boolean[1];
+    SESSIONS_PER_ADDRESS.compute(client, (key, count) -> {
+      int current = count == null ? 0 : count;
+      admitted[0] = current < MAX_SESSIONS_PER_ADDRESS;
+      return admitted[0] ? current + 1 : count;
+    });
+    return admitted[0];
+  }
+
+  private static void send(Session session, String message) {
+    if (!session.isOpen()) {
+      return;
+    }
+    try {
+      // Basic remote writes are not thread safe; callers hold the session's state lock
+      synchronized (session) {
+        session.getBasicRemote().sendText(message);
+      }
+    } catch (IOException e) {
+      System.err.println("Error sending live translation: " + e.getMessage());
+    }
+  }
+
+  private static String parameter(Session session, String name) {
+    List<String> values = session.getRequestParameterMap().get(name);
+    return values == null || values.isEmpty() || values.get(0).isBlank() ? null : values.get(0);
+  }
+
+  /**
+   * Per-session input state; guarded by its own monitor
+   */
+  private static final class State {
+    private final String username;
+    private final String defaultTo;
+    private final String client;
+    private volatile boolean admitted;
+    private int generation;
+    private ScheduledFuture<?> pending;
+    private Future<?> running;
+
+    private State(String username, String to, String client) {
+      this.username = username;
+      this.defaultTo = to == null ? "darija" : to;
+      this.client = client;
+    }
+
+    // Drop the debounce timer and interrupt a translation of older input
+    private void cancel() {
+      if (pending != null) {
+        pending.cancel(false);
+        pending = null;
+      }
+      if (running != null) {
+        if (running.cancel(true)) {
+          CANCELLED.increment();
+        }
+        running = null;
+      }
+    }
+  }
+}
@@ -0,0 +1,406 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admission control for upstream LLM calls.
+ *
+ * Each {@link Lane} has its own FIFO queue and in-flight limit, and all lanes
+ * share a global in-flight limit. When a slot frees up, the next lane is picked
+ * by smooth weighted round robin, so with the default weights a bulk backlog
+ * gets one slot for every four interactive ones instead of starving the UI.
+ *
+ * The global limit adapts to upstream latency, in the manner of Netflix's
+ * gradient limiter: a short and a long moving average of call latency are
+ * compared after every call, the limit shrinks while the short one runs
+ * above the long one by more than {@code llm.limit.tolerance} and otherwise
+ * grows by about its square root, within {@code llm.limit.min} and
+ * {@code llm.limit.max}. An upstream 429 or 5xx cuts it by a tenth.
+ *
+ * A lane with {@code maxQueued} or {@code queueTimeoutMillis} set sheds load:
+ * a call that finds the queue full, or waits longer than the timeout, fails
+ * at once with {@link OverloadedException} instead of adding to everyone's
+ * latency. Background bulk work waits; the lanes a request thread can end up
+ * in both shed, so a client's priority hint never pins a request thread in
+ * an unbounded queue.
+ *
+ * Calls still run on the caller's thread; the scheduler only decides when.
+ */
+public final class LlmScheduler {
+
+  /**
+   * Priority class of an upstream call
+   */
+  public enum Lane {
+    INTERACTIVE(4, 16, 32, 2000),
+    // Background work (jobs, warm-up) that can wait as long as it takes
+    BULK(1, 4, 0, 0),
+    // Bulk work a request thread waits for, bounded like interactive calls
+    DEFERRED(1, 4, 16, 30_000);
+
+    private final String key = name().toLowerCase();
+    private final int weight;
+    private final int maxInFlight;
+    // 0 for no bound
+    private final int maxQueued;
+    private final long queueTimeoutMillis;
+    private final ArrayDeque<Ticket> queue = new ArrayDeque<>();
+    private int inFlight;
+    private int currentWeight;
+
+    private final LongAdder dispatched = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+
+    Lane(int defaultWeight, int defaultMaxInFlight, int defaultMaxQueued, long defaultQueueTimeoutMillis) {
+      this.weight = Math.max(1, AppConfig.getInt("llm.lane." + key + ".weight", defaultWeight));
+      this.maxInFlight = Math.max(1, AppConfig.getInt("llm.lane." + key + ".maxInFlight", defaultMaxInFlight));
+      this.maxQueued = Math.max(0, AppConfig.getInt("llm.lane." + key + ".maxQueued", defaultMaxQueued));
+      this.queueTimeoutMillis = Math.max(0,
+          AppConfig.getLong("llm.lane." + key + ".queueTimeoutMillis", defaultQueueTimeoutMillis));
+    }
+
+    /**
+     * Parse a client priority hint; anything unknown is treated as interactive.
+     * A bulk hint lands in {@link #DEFERRED}, never in the unbounded
+     * {@link #BULK}, since the caller is a request thread.
+     */
+    public static Lane fromHint(String hint) {
+      return "bulk".equalsIgnoreCase(hint) || "low".equalsIgnoreCase(hint) ? DEFERRED : INTERACTIVE;
+    }
+
+    private boolean eligible() {
+      return !queue.isEmpty() && inFlight < maxInFlight;
+    }
+  }
+
+  /**
+   * Thrown instead of queueing a call that would wait too long
+   */
+  public static final class OverloadedException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterSeconds;
+
+    private OverloadedException(String message, long retryAfterSeconds) {
+      super(message);
+      this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * Rough time until the queue has drained, for a Retry-After header
+     */
+    public long retryAfterSeconds() {
+      return retryAfterSeconds;
+    }
+  }
+
+  private static final boolean ADAPTIVE = AppConfig.getBoolean("llm.adaptive", true);
+  private static final int MIN_LIMIT = Math.max(1, AppConfig.getInt("llm.limit.min", 2));
+  // More than the lanes admit together would never be used
+  private static final int MAX_LIMIT = Math.max(MIN_LIMIT, AppConfig.getInt("llm.limit.max",
+      Lane.INTERACTIVE.maxInFlight + Lane.BULK.maxInFlight + Lane.DEFERRED.maxInFlight));
+  private static final double TOLERANCE = AppConfig.getDouble("llm.limit.tolerance", 1.5);
+  // Weight of a new sample in the short (about 10 calls) and long (about 600) averages
+  private static final double SHORT_ALPHA = 0.1;
+  private static final double LONG_ALPHA = 2.0 / 601;
+  private static final double SMOOTHING = 0.2;
+  private static final double BACKOFF = 0.9;
+  private static final long MAX_RETRY_AFTER_SECONDS = 30;
+
+  private static final ReentrantLock LOCK = new ReentrantLock();
+  private static int maxInFlight = Math.max(1, AppConfig.getInt("llm.maxInFlight", 16));
+  private static int inFlight;
+
+  // Adaptive limit state, guarded by LOCK
+  private static double limit = maxInFlight;
+  private static double shortRttNanos;
+  private static double longRttNanos;
+
+  // Set when the upstream answered that it is overloaded; the call is then no latency sample
+  private static final ThreadLocal<boolean[]> CONGESTED = ThreadLocal.withInitial(() -> new boolean[1]);
+  private static final LongAdder BACKOFFS = new LongAdder();
+
+  static {
+    for (Lane lane : Lane.values()) {
+      String prefix = "llm.lane." + lane.key + ".";
+      Metrics.gauge(prefix + "queued", () -> locked(() -> lane.queue.size()));
+      Metrics.gauge(prefix + "inFlight", () -> locked(() -> lane.inFlight));
+      Metrics.gauge(prefix + "dispatched", lane.dispatched::sum);
+      Metrics.gauge(prefix + "rejected", lane.rejected::sum);
+      Metrics.gauge(prefix + "timedOut", lane.timedOut::sum);
+      Metrics.gauge(prefix + "queueWaitMillis.avg", () -> {
+        long count = lane.dispatched.sum();
+        return count == 0 ? 0.0 : lane.waitNanos.sum() / 1e6 / count;
+      });
+      Metrics.gauge(prefix + "queueWaitMillis.max", () -> lane.maxWaitNanos.get() / 1_000_000);
+    }
+    Metrics.gauge("llm.limit", () -> locked(() -> maxInFlight));
+    Metrics.gauge("llm.inFlight", () -> locked(() -> inFlight));
+    Metrics.gauge("llm.rttMillis.short", () -> locked(() -> shortRttNanos / 1e6));
+    Metrics.gauge("llm.rttMillis.long", () -> locked(() -> longRttNanos / 1e6));
+    Metrics.gauge("llm.limit.backoffs", BACKOFFS::sum);
+  }
+
+  private LlmScheduler() {
+  }
+
+  /**
+   * Run an upstream call once the lane and the global limit admit it
+   *
+   * @throws OverloadedException if the lane's queue is full or the call
+   *         waited longer than the lane's queue timeout
+   */
+  public static <T> T run(Lane lane, Callable<T> call) throws Exception {
+    long queued = RequestTiming.start();
+    Ticket ticket = new Ticket();
+
+    LOCK.lock();
+    try {
+      // A waiting queue means there is no free slot
+      if (lane.maxQueued > 0 && lane.queue.size() >= lane.maxQueued) {
+        lane.rejected.increment();
+        throw new OverloadedException("Too many calls waiting", retryAfterSeconds());
+      }
+      lane.queue.add(ticket);
+      dispatch();
+    } finally {
+      LOCK.unlock();
+    }
+
+    try {
+      if (lane.queueTimeoutMillis == 0) {
+        ticket.granted.await();
+      } else if (!ticket.granted.await(lane.queueTimeoutMillis, TimeUnit.MILLISECONDS)
+          && withdraw(lane, ticket)) {
+        lane.timedOut.increment();
+        throw new OverloadedException("Waited too long for a free slot", retryAfterSeconds());
+      }
+    } catch (InterruptedException e) {
+      abandon(lane, ticket);
+      throw e;
+    } finally {
+      RequestTiming.stop("llm-queue", queued);
+    }
+
+    long waited = System.nanoTime() - ticket.enqueuedAt;
+    lane.dispatched.increment();
+    lane.waitNanos.add(waited);
+    lane.maxWaitNanos.accumulate(waited);
+
+    CONGESTED.get()[0] = false;
+    long started = System.nanoTime();
+    boolean completed = false;
+    try {
+      T result = call.call();
+      completed = true;
+      return result;
+    } finally {
+      boolean sample = completed && !CONGESTED.get()[0];
+      release(lane, ticket, sample ? System.nanoTime() - started : -1);
+    }
+  }
+
+  /**
+   * Calls the lane could start right now without waiting
+   */
+  public static int freeSlots(Lane lane) {
+    LOCK.lock();
+    try {
+      if (!lane.queue.isEmpty()) {
+        return 0;
+      }
+      return Math.max(0, Math.min(lane.maxInFlight - lane.inFlight, maxInFlight - inFlight));
+    } finally {
+      LOCK.unlock();
+    }
+  }
+
+  /**
+   * Report that the upstream answered the current call with an overload
+   * status. Cuts the limit and keeps the call's latency out of the averages.
+   */
+  public static void congested() {
+    CONGESTED.get()[0] = true;
+    LOCK.lock();
+    try {
+      BACKOFFS.increment();
+      if (ADAPTIVE) {
+        setLimit(limit * BACKOFF);
+      }
+    } finally {
+      LOCK.unlock();
+    }
+  }
+
+  /**
+   * Seconds until a rejected call is likely to be admitted: the queued calls
+   * spread over the current limit at the recent call latency
+   */
+  public static long retryAfterSeconds() {
+    LOCK.lock();
+    try {
+      int queued = 0;
+      for (Lane lane : Lane.values()) {
+        queued += lane.queue.size();
+      }
+      double seconds = (queued / (double) maxInFlight + 1) * longRttNanos / 1e9;
+      return Math.max(1, Math.min(MAX_RETRY_AFTER_SECONDS, (long) Math.ceil(seconds)));
+    } finally {
+      LOCK.unlock();
+    }
+  }
+
+  /**
+   * Change the global in-flight limit; waiting calls are admitted if it grew.
+   * With the adaptive limit on, it carries on adapting from there.
+   */
+  public static void setMaxInFlight(int limit) {
+    LOCK.lock();
+    try {
+      maxInFlight = Math.max(1, limit);
+      LlmScheduler.limit = maxInFlight;
+      dispatch();
+    } finally {
+      LOCK.unlock();
+    }
+  }
+
+  /**
+   * Free a call's slot and learn from its latency, or -1 for a call that
+   * failed or was congested
+   */
+  private static void release(Lane lane, Ticket ticket, long rttNanos) {
+    LOCK.lock();
+    try {
+      lane.inFlight--;
+      inFlight--;
+      if (ADAPTIVE && rttNanos >= 0) {
+        adapt(rttNanos, ticket.inFlightWhenGranted);
+      }
+      dispatch();
+    } finally {
+      LOCK.unlock();
+    }
+  }
+
+  /**
+   * Gradient step. Caller must hold the lock.
+   */
+  private static void adapt(long rttNanos, int inFlightWhenGranted) {
+    if (longRttNanos == 0) {
+      shortRttNanos = rttNanos;
+      longRttNanos = rttNanos;
+      return;
+    }
+    shortRttNanos += (rttNanos - shortRttNanos) * SHORT_ALPHA;
+    // While calls queue upstream the baseline creeps, so it doesn't follow the
+    // overload up but still takes in an upstream that got slower for good
+    double alpha = shortRttNanos <= TOLERANCE * longRttNanos ? LONG_ALPHA : LONG_ALPHA / 10;
+    longRttNanos += (rttNanos - longRttNanos) * alpha;
+    // Latency fell well below the baseline (load went away): let the baseline follow
+    if (longRttNanos / shortRttNanos > 2) {
+      longRttNanos *= 0.95;
+    }
+
+    double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRttNanos / shortRttNanos));
+    double next = limit * gradient + Math.sqrt(limit);
+    if (inFlightWhenGranted < limit / 2) {
+      // Too little traffic to tell whether a higher limit would hold
+      next = Math.min(next, limit);
+    }
+    setLimit(limit * (1 - SMOOTHING) + next * SMOOTHING);
+  }
+
+  /**
+   * Caller must hold the lock
+   */
+  private static void setLimit(double value) {
+    limit = Math.max(MIN_LIMIT, Math.min(MAX_LIMIT, value));
+    maxInFlight = (int) limit;
+  }
+
+  /**
+   * Take a ticket that timed out off its queue
+   *
+   * @return false if it was granted meanwhile and holds a slot
+   */
+  private static boolean withdraw(Lane lane, Ticket ticket) {
+    LOCK.lock();
+    try {
+      return lane.queue.remove(ticket);
+    } finally {
+      LOCK.unlock();
+    }
+  }
+
+  private static void abandon(Lane lane, Ticket ticket) {
+    LOCK.lock();
+    try {
+      if (!lane.queue.remove(ticket)) {
+        // Granted while we were being interrupted; hand the slot on
+        lane.inFlight--;
+        inFlight--;
+        dispatch();
+      }
+    } finally {
+      LOCK.unlock();
+    }
+  }
+
+  /**
+   * Grant free slots to waiting tickets. Caller must hold the lock.
+   */
+  private static void dispatch() {
+    while (inFlight < maxInFlight) {
+      Lane next = null;
+      int totalWeight = 0;
+      for (Lane lane : Lane.values()) {
+        if (!lane.eligible()) {
+          continue;
+        }
+        lane.currentWeight += lane.weight;
+        totalWeight += lane.weight;
+        if (next == null || lane.currentWeight > next.currentWeight) {
+          next = lane;
+        }
+      }
+      if (next == null) {
+        return;
+      }
+
+      next.currentWeight -= totalWeight;
+      next.inFlight++;
+      inFlight++;
+      Ticket ticket = next.queue.poll();
+      ticket.inFlightWhenGranted = inFlight;
+      ticket.granted.countDown();
+    }
+  }
+
+  private static Number locked(Callable<Number> read) {
+    LOCK.lock();
+    try {
+      return read.call();
+    } catch (Exception e) {
+      return 0;
+    } finally {
+      LOCK.unlock();
+    }
+  }
+
+  private static final class Ticket {
+    final long enqueuedAt = System.nanoTime();
+    final CountDownLatch granted = new CountDownLatch(1);
+    // Written under the lock before the latch opens, read after
+    int inFlightWhenGranted;
+  }
+}
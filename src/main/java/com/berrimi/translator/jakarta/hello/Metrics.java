@@ -0,0 +1,33 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Supplier;
+
+/**
+ * Registry of named gauges served by {@link MetricsResource}.
+ *
+ * Components register a supplier once; values are read only when the metrics
+ * endpoint is scraped, so registering costs nothing on the request path.
+ */
+public final class Metrics {
+
+  private static final Map<String, Supplier<Number>> GAUGES = new ConcurrentSkipListMap<>();
+
+  private Metrics() {
+  }
+
+  /**
+   * Register (or replace) a gauge
+   */
+  public static void gauge(String name, Supplier<Number> value) {
+    GAUGES.put(name, value);
+  }
+
+  /**
+   * Get all gauges, sorted by name
+   */
+  public static Map<String, Supplier<Number>> gauges() {
+    return GAUGES;
+  }
+}
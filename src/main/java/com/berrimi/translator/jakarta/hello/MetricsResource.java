@@ -0,0 +1,65 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+@Path("metrics")
+public class MetricsResource {
+
+  @GET
+  @Produces(MediaType.APPLICATION_JSON)
+  public Response getMetrics() {
+    return Response.ok(JsonSupport.stream(json -> {
+      json.writeStartObject();
+
+      for (Map.Entry<String, Supplier<Number>> gauge : Metrics.gauges().entrySet()) {
+        Number value = gauge.getValue().get();
+        if (value instanceof Double || value instanceof Float) {
+          json.write(gauge.getKey(), value.doubleValue());
+        } else {
+          json.write(gauge.getKey(), value.longValue());
+        }
+      }
+
+      json.writeEnd();
+    })).header("Cache-Control", "no-store").build();
+  }
+
+  /**
+   * Statistics per SQL template, most total time first, with the last plan
+   * captured for a slow execution
+   */
+  @GET
+  @Path("sql")
+  @Produces(MediaType.APPLICATION_JSON)
+  public Response getSqlMetrics() {
+    return Response.ok(JsonSupport.stream(json -> {
+      json.writeStartArray();
+
+      for (SqlMonitor.Template template : SqlMonitor.templates()) {
+        json.writeStartObject()
+            .write("sql", template.sql())
+            .write("executions", template.executions())
+            .write("errors", template.errors())
+            .write("rows", template.rows())
+            .write("busyRetries", template.busyRetries())
+            .write("totalMillis", template.totalMillis())
+            .write("p50Millis", template.percentileMillis(0.5))
+            .write("p99Millis", template.percentileMillis(0.99))
+            .write("maxMillis", template.maxMillis());
+        if (template.plan() != null) {
+          json.write("plan", template.plan());
+        }
+        json.writeEnd();
+      }
+
+      json.writeEnd();
+    })).header("Cache-Control", "no-store").build();
+  }
+}
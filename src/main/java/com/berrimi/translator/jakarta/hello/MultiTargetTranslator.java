@@ -0,0 +1,137 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Translates one text to several target languages.
+ *
+ * There are two ways to do it. A combined prompt asks for every target in one
+ * call: the source is read once and a single call is queued, but the answer
+ * gets longer with every target. Parallel calls each produce one short answer,
+ * but each needs a free scheduler slot. The combined prompt is used for short
+ * single-line texts ({@code fanout.combineMaxChars}), where the fixed cost of
+ * a call outweighs the extra output, and whenever the lane has fewer free
+ * slots than targets, since parallel calls would only queue. If the combined
+ * answer cannot be matched up with the targets, it falls back to parallel calls.
+ * A combined call that failed or was turned away as overloaded is returned as
+ * it is, since more calls would only add load.
+ *
+ * One of the parallel calls runs on the caller's thread and the others on a
+ * small pool ({@code fanout.threads}).
+ */
+public final class MultiTargetTranslator {
+
+  private static final int COMBINE_MAX_CHARS = AppConfig.getInt("fanout.combineMaxChars", 300);
+  private static final int THREADS = Math.max(1, AppConfig.getInt("fanout.threads", 8));
+
+  private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+  private static final ExecutorService POOL = Executors.newFixedThreadPool(THREADS, runnable -> {
+    Thread thread = new Thread(runnable, "fanout-translator-" + THREAD_COUNTER.incrementAndGet());
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private static final LongAdder COMBINED = new LongAdder();
+  private static final LongAdder COMBINED_FALLBACKS = new LongAdder();
+  private static final LongAdder PARALLEL = new LongAdder();
+
+  // Tokens billed for the calling thread's last fan-out, for usage metering
+  private static final ThreadLocal<long[]> LAST_TOKENS = ThreadLocal.withInitial(() -> new long[1]);
+
+  static {
+    Metrics.gauge("fanout.combined", COMBINED::sum);
+    Metrics.gauge("fanout.combinedFallbacks", COMBINED_FALLBACKS::sum);
+    Metrics.gauge("fanout.parallel", PARALLEL::sum);
+  }
+
+  private MultiTargetTranslator() {
+  }
+
+  /**
+   * Translate a text to every target
+   *
+   * @return target to translation, or to the error string from {@link LLMClient},
+   *         in the order given
+   */
+  public static Map<String, String> translate(String text, List<String> targets, LlmScheduler.Lane lane) {
+    LAST_TOKENS.get()[0] = 0;
+    Map<String, String> translations = new LinkedHashMap<>();
+    if (targets.size() == 1) {
+      translations.put(targets.get(0), translateOne(text, targets.get(0), lane));
+      return translations;
+    }
+
+    if (preferCombined(text, targets.size(), lane)) {
+      List<String> combined = LLMClient.translateToMany(text, targets, lane);
+      LAST_TOKENS.get()[0] += LLMClient.lastTokens();
+      if (combined != null) {
+        COMBINED.increment();
+        for (int i = 0; i < targets.size(); i++) {
+          translations.put(targets.get(i), combined.get(i));
+        }
+        return translations;
+      }
+      COMBINED_FALLBACKS.increment();
+    }
+
+    PARALLEL.increment();
+    List<Future<String[]>> others = new ArrayList<>(targets.size() - 1);
+    for (String to : targets.subList(1, targets.size())) {
+      others.add(POOL.submit(() -> new String[] {
+          LLMClient.translate(text, to, lane), Long.toString(LLMClient.lastTokens()) }));
+    }
+    try {
+      translations.put(targets.get(0), translateOne(text, targets.get(0), lane));
+      for (int i = 0; i < others.size(); i++) {
+        String[] result = others.get(i).get();
+        translations.put(targets.get(i + 1), result[0]);
+        LAST_TOKENS.get()[0] += Long.parseLong(result[1]);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      others.forEach(future -> future.cancel(true));
+      targets.forEach(to -> translations.putIfAbsent(to, "Error: interrupted"));
+    } catch (ExecutionException e) {
+      System.err.println("Error translating to several languages: " + e.getCause().getMessage());
+      targets.forEach(to -> translations.putIfAbsent(to, "Error: " + e.getCause().getMessage()));
+    }
+    return translations;
+  }
+
+  /**
+   * Tokens used by the last {@link #translate} on this thread, over all targets
+   */
+  public static long lastTokens() {
+    return LAST_TOKENS.get()[0];
+  }
+
+  /**
+   * Stop the translation threads
+   */
+  public static void shutdown() {
+    POOL.shutdownNow();
+  }
+
+  private static String translateOne(String text, String to, LlmScheduler.Lane lane) {
+    String result = LLMClient.translate(text, to, lane);
+    LAST_TOKENS.get()[0] += LLMClient.lastTokens();
+    return result;
+  }
+
+  // The answer is parsed line by line, so only single-line texts can be combined
+  private static boolean preferCombined(String text, int targets, LlmScheduler.Lane lane) {
+    if (text.indexOf('\n') >= 0 || text.indexOf('\r') >= 0) {
+      return false;
+    }
+    return text.length() <= COMBINE_MAX_CHARS || LlmScheduler.freeSlots(lane) < targets;
+  }
+}
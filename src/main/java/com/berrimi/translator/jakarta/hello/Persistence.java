@@ -0,0 +1,60 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.util.Locale;
+
+/**
+ * Selects where users and history are stored.
+ *
+ * {@code persistence.backend=sqlite} (the default) keeps them in the local
+ * translator.db, which ties the service to a single node.
+ * {@code persistence.backend=jdbc} keeps them in a PostgreSQL or H2 server
+ * reached through a pooled DataSource (see {@link JdbcDatabase}), which every
+ * node of a cluster can share.
+ */
+public final class Persistence {
+
+  private static final String BACKEND = AppConfig.get("persistence.backend", "sqlite").toLowerCase(Locale.ROOT);
+
+  private Persistence() {
+  }
+
+  /**
+   * Check whether other nodes may write the same data
+   */
+  public static boolean isShared() {
+    return "jdbc".equals(BACKEND);
+  }
+
+  /**
+   * Get the history backend
+   */
+  public static HistoryStore history() {
+    return Backend.HISTORY;
+  }
+
+  /**
+   * Get the user backend
+   */
+  public static UserStore users() {
+    return Backend.USERS;
+  }
+
+  // Created on first use, so the unused backend is never initialized
+  private static final class Backend {
+    private static final HistoryStore HISTORY;
+    private static final UserStore USERS;
+
+    static {
+      if ("sqlite".equals(BACKEND)) {
+        HISTORY = new SqliteHistoryStore();
+        USERS = new SqliteUserStore();
+      } else if ("jdbc".equals(BACKEND)) {
+        HISTORY = new JdbcHistoryStore();
+        USERS = new JdbcUserStore();
+      } else {
+        throw new IllegalStateException("Unknown persistence.backend: " + BACKEND);
+      }
+      System.out.println("Persistence backend: " + BACKEND);
+    }
+  }
+}
@@ -0,0 +1,334 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The most requested (text, target language) pairs, and warming the
+ * translation cache with them after a restart.
+ *
+ * Every translate request adds to a Count-Min Sketch of
+ * {@code popular.sketchDepth} rows of {@code popular.sketchWidth} counters,
+ * which estimates how often any pair was asked for in fixed memory and never
+ * under-counts. The {@code popular.topK} pairs with the highest estimates are
+ * kept by name. Every {@code popular.halfLifeMinutes} all counts are halved,
+ * so yesterday's favourites make way for today's.
+ *
+ * The top pairs are saved to the popular_translations table every
+ * {@code popular.saveSeconds} and at shutdown. At startup they are loaded
+ * back, and the {@code popular.warmup.count} most popular ones the cluster
+ * cache does not have are translated on the bulk lane, at most
+ * {@code popular.warmup.perSecond}. {@link HealthResource} reports the node
+ * ready once the warm-up is done, or after
+ * {@code popular.warmup.maxWaitSeconds} if the upstream is slow.
+ */
+public final class PopularTranslations {
+
+  private static final boolean ENABLED = AppConfig.getBoolean("popular.enabled", true);
+  private static final int DEPTH = Math.max(1, AppConfig.getInt("popular.sketchDepth", 4));
+  // Rounded down to a power of two, so a cell is picked with a mask
+  private static final int WIDTH = Integer.highestOneBit(Math.max(64, AppConfig.getInt("popular.sketchWidth", 8192)));
+  private static final int TOP_K = Math.max(1, AppConfig.getInt("popular.topK", 500));
+  // Long texts are documents, not phrases worth warming
+  private static final int MAX_CHARS = AppConfig.getInt("popular.maxChars", 200);
+  private static final long SAVE_SECONDS = Math.max(1, AppConfig.getLong("popular.saveSeconds", 300));
+  private static final long HALF_LIFE_MINUTES = Math.max(1, AppConfig.getLong("popular.halfLifeMinutes", 24 * 60));
+  private static final int WARMUP_COUNT = Math.max(0, AppConfig.getInt("popular.warmup.count", 200));
+  private static final double WARMUP_PER_SECOND = AppConfig.getDouble("popular.warmup.perSecond", 2);
+  private static final long WARMUP_MAX_WAIT_MILLIS = AppConfig.getLong("popular.warmup.maxWaitSeconds", 120) * 1000;
+
+  private static final AtomicLongArray SKETCH = new AtomicLongArray(DEPTH * WIDTH);
+  // Target language, newline, text to estimated count
+  private static final Map<String, Long> TOP = new ConcurrentHashMap<>();
+  // Smallest count in TOP once it is full; a pair has to beat it to get in
+  private static volatile long threshold;
+
+  private static final LongAdder RECORDED = new LongAdder();
+  private static final LongAdder WARMUP_TRANSLATED = new LongAdder();
+  private static final LongAdder WARMUP_CACHED = new LongAdder();
+  private static final LongAdder WARMUP_FAILED = new LongAdder();
+  private static volatile int warmupTotal;
+  private static volatile boolean warmupFinished = true;
+  private static volatile long warmupStartedAt;
+
+  private static ScheduledExecutorService scheduler;
+  private static Thread warmer;
+
+  static {
+    Metrics.gauge("popular.recorded", RECORDED::sum);
+    Metrics.gauge("popular.tracked", TOP::size);
+    Metrics.gauge("popular.threshold", () -> threshold);
+    Metrics.gauge("popular.warmup.total", () -> warmupTotal);
+    Metrics.gauge("popular.warmup.translated", WARMUP_TRANSLATED::sum);
+    Metrics.gauge("popular.warmup.cached", WARMUP_CACHED::sum);
+    Metrics.gauge("popular.warmup.failed", WARMUP_FAILED::sum);
+  }
+
+  private PopularTranslations() {
+  }
+
+  /**
+   * A text and target language with its estimated request count
+   */
+  public record Pair(String text, String targetLang, long count) {
+  }
+
+  /**
+   * Warm-up progress for the readiness check
+   */
+  public record Warmup(int total, long translated, long cached, long failed, boolean finished) {
+  }
+
+  /**
+   * Load the saved pairs, start the periodic save and decay, and warm the
+   * translation cache in the background
+   */
+  public static void start() {
+    if (!ENABLED) {
+      return;
+    }
+    load();
+
+    scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "popular-translations");
+      thread.setDaemon(true);
+      return thread;
+    });
+    scheduler.scheduleWithFixedDelay(PopularTranslations::save, SAVE_SECONDS, SAVE_SECONDS, TimeUnit.SECONDS);
+    scheduler.scheduleAtFixedRate(PopularTranslations::decay, HALF_LIFE_MINUTES, HALF_LIFE_MINUTES,
+        TimeUnit.MINUTES);
+
+    if (WARMUP_COUNT > 0 && !TOP.isEmpty()) {
+      if (!TranslationCache.isAvailable()) {
+        System.out.println("Translation cache unavailable, skipping warm-up");
+        return;
+      }
+      warmupFinished = false;
+      warmupStartedAt = System.currentTimeMillis();
+      warmer = new Thread(PopularTranslations::warmUp, "popular-warmup");
+      warmer.setDaemon(true);
+      warmer.start();
+    }
+  }
+
+  /**
+   * Stop the warm-up and the periodic tasks, and save the pairs
+   */
+  public static void stop() {
+    if (scheduler == null) {
+      return;
+    }
+    if (warmer != null) {
+      warmer.interrupt();
+    }
+    scheduler.shutdown();
+    try {
+      scheduler.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    save();
+  }
+
+  /**
+   * Count a translate request
+   */
+  public static void record(String text, String targetLang) {
+    if (!ENABLED || text == null || targetLang == null || text.isBlank() || text.length() > MAX_CHARS) {
+      return;
+    }
+    RECORDED.increment();
+    String key = targetLang + '\n' + text;
+    long estimate = add(key, 1);
+
+    // Pairs already on top only need their count refreshed; no lock for the hot ones
+    if (TOP.replace(key, estimate) == null && estimate > threshold) {
+      offer(key, estimate);
+    }
+  }
+
+  /**
+   * The most requested pairs, most requested first
+   */
+  public static List<Pair> top(int limit) {
+    List<Pair> pairs = new ArrayList<>(TOP.size());
+    for (Map.Entry<String, Long> entry : TOP.entrySet()) {
+      String key = entry.getKey();
+      int newline = key.indexOf('\n');
+      pairs.add(new Pair(key.substring(newline + 1), key.substring(0, newline), entry.getValue()));
+    }
+    pairs.sort(Comparator.comparingLong(Pair::count).reversed());
+    return pairs.size() > limit ? pairs.subList(0, limit) : pairs;
+  }
+
+  /**
+   * Whether the startup warm-up is done or has had all the time it gets
+   */
+  public static boolean isWarm() {
+    return warmupFinished || System.currentTimeMillis() - warmupStartedAt >= WARMUP_MAX_WAIT_MILLIS;
+  }
+
+  /**
+   * Progress of the startup warm-up
+   */
+  public static Warmup warmup() {
+    return new Warmup(warmupTotal, WARMUP_TRANSLATED.sum(), WARMUP_CACHED.sum(), WARMUP_FAILED.sum(),
+        warmupFinished);
+  }
+
+  /**
+   * Add to a key's cells and return its estimate, the smallest of them
+   */
+  private static long add(String key, long count) {
+    // Double hashing: row i uses h1 + i * h2, as good as independent hashes here
+    int hash = key.hashCode();
+    int h1 = hash ^ (hash >>> 16);
+    int h2 = (hash * 0x9E3779B9) | 1;
+    long estimate = Long.MAX_VALUE;
+    for (int row = 0; row < DEPTH; row++) {
+      int cell = row * WIDTH + ((h1 + row * h2) & (WIDTH - 1));
+      estimate = Math.min(estimate, SKETCH.addAndGet(cell, count));
+    }
+    return estimate;
+  }
+
+  private static void offer(String key, long estimate) {
+    synchronized (TOP) {
+      if (TOP.size() >= TOP_K) {
+        if (estimate <= threshold) {
+          return;
+        }
+        String smallest = null;
+        long min = Long.MAX_VALUE;
+        for (Map.Entry<String, Long> entry : TOP.entrySet()) {
+          if (entry.getValue() < min) {
+            min = entry.getValue();
+            smallest = entry.getKey();
+          }
+        }
+        TOP.remove(smallest);
+      }
+      TOP.put(key, estimate);
+      if (TOP.size() >= TOP_K) {
+        threshold = TOP.values().stream().mapToLong(Long::longValue).min().orElse(0);
+      }
+    }
+  }
+
+  /**
+   * Halve every count. Increments racing with it may lose their half too,
+   * which an estimate can live with.
+   */
+  static void decay() {
+    synchronized (TOP) {
+      for (int i = 0; i < SKETCH.length(); i++) {
+        SKETCH.set(i, SKETCH.get(i) >> 1);
+      }
+      TOP.replaceAll((key, count) -> count >> 1);
+      TOP.values().removeIf(count -> count == 0);
+      threshold = TOP.size() >= TOP_K ? threshold >> 1 : 0;
+    }
+  }
+
+  /**
+   * Replace the saved pairs with the current top ones
+   */
+  static void save() {
+    List<Pair> pairs = top(TOP_K);
+    if (pairs.isEmpty()) {
+      return;
+    }
+
+    String sql = "INSERT INTO popular_translations (target_lang, text, count) VALUES (?, ?, ?)";
+    try (Connection conn = DatabaseManager.openConnection()) {
+      conn.setAutoCommit(false);
+      try (Statement stmt = conn.createStatement();
+          PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        stmt.executeUpdate("DELETE FROM popular_translations");
+        for (Pair pair : pairs) {
+          pstmt.setString(1, pair.targetLang());
+          pstmt.setString(2, pair.text());
+          pstmt.setLong(3, pair.count());
+          pstmt.addBatch();
+        }
+        pstmt.executeBatch();
+        conn.commit();
+      } catch (SQLException e) {
+        conn.rollback();
+        throw e;
+      }
+    } catch (SQLException e) {
+      System.err.println("Error saving popular translations: " + e.getMessage());
+    }
+  }
+
+  private static void load() {
+    String sql = "SELECT target_lang, text, count FROM popular_translations ORDER BY count DESC LIMIT ?";
+    try (Connection conn = DatabaseManager.openConnection();
+        PreparedStatement pstmt = conn.prepareStatement(sql)) {
+      pstmt.setInt(1, TOP_K);
+      try (ResultSet rs = pstmt.executeQuery()) {
+        while (rs.next()) {
+          String key = rs.getString(1) + '\n' + rs.getString(2);
+          TOP.put(key, add(key, rs.getLong(3)));
+        }
+      }
+    } catch (SQLException e) {
+      System.err.println("Error loading popular translations: " + e.getMessage());
+    }
+    if (TOP.size() >= TOP_K) {
+      threshold = TOP.values().stream().mapToLong(Long::longValue).min().orElse(0);
+    }
+  }
+
+  /**
+   * Translate the most popular pairs the cluster cache lacks, throttled and
+   * on the bulk lane so live traffic goes first
+   */
+  private static void warmUp() {
+    List<Pair> pairs = top(WARMUP_COUNT);
+    warmupTotal = pairs.size();
+    long pauseMillis = WARMUP_PER_SECOND > 0 ? (long) (1000 / WARMUP_PER_SECOND) : 0;
+    long started = System.nanoTime();
+    try {
+      for (Pair pair : pairs) {
+        if (TranslationCache.get(pair.text(), pair.targetLang()) != null) {
+          WARMUP_CACHED.increment();
+          continue;
+        }
+        String result = LLMClient.translate(pair.text(), pair.targetLang(), LlmScheduler.Lane.BULK);
+        if (Thread.currentThread().isInterrupted()) {
+          return;
+        }
+        if (LLMClient.isFailure(result)) {
+          WARMUP_FAILED.increment();
+        } else {
+          TranslationCache.putAsync(pair.text(), pair.targetLang(), result);
+          WARMUP_TRANSLATED.increment();
+        }
+        Thread.sleep(pauseMillis);
+      }
+      System.out.println("Warmed " + pairs.size() + " popular translations in "
+          + TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started) + " s: "
+          + WARMUP_TRANSLATED.sum() + " translated, " + WARMUP_CACHED.sum() + " already cached, "
+          + WARMUP_FAILED.sum() + " failed");
+    } catch (InterruptedException e) {
+      // Shutting down
+    } finally {
+      warmupFinished = true;
+    }
+  }
+}
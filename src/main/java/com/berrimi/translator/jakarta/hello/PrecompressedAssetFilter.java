@@ -0,0 +1,116 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.HashSet;
+import java.util.Set;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebFilter;
+import jakarta.servlet.http.HttpFilter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Serves the .br / .gz variants of static webapp assets produced by the
+ * "precompress-assets" Maven profile, when the client accepts them. Falls back
+ * to the default servlet when no variant was packaged.
+ */
+@WebFilter(urlPatterns = { "*.html", "*.css", "*.js", "*.svg", "*.json" })
+public class PrecompressedAssetFilter extends HttpFilter {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final String[][] ENCODINGS = { { "br", ".br" }, { "gzip", ".gz" } };
+
+  // Packaged resources never change at runtime, so the variants are listed
+  // once at startup and request paths never add to the set
+  private Set<String> variants = Set.of();
+
+  @Override
+  public void init() throws ServletException {
+    Set<String> found = new HashSet<>();
+    scan("/", found);
+    variants = Set.copyOf(found);
+  }
+
+  @Override
+  protected void doFilter(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+
+    String method = request.getMethod();
+    String acceptEncoding = request.getHeader("Accept-Encoding");
+    if ((!"GET".equals(method) && !"HEAD".equals(method)) || acceptEncoding == null) {
+      chain.doFilter(request, response);
+      return;
+    }
+
+    // Welcome files are resolved before filters run, so "/" arrives as "/index.html"
+    String path = request.getServletPath() + (request.getPathInfo() == null ? "" : request.getPathInfo());
+
+    for (String[] encoding : ENCODINGS) {
+      String variant = path + encoding[1];
+      if (AcceptEncoding.accepts(acceptEncoding, encoding[0]) && hasVariant(variant)) {
+        serve(request, response, path, variant, encoding[0]);
+        return;
+      }
+    }
+
+    response.addHeader("Vary", "Accept-Encoding");
+    chain.doFilter(request, response);
+  }
+
+  private void serve(HttpServletRequest request, HttpServletResponse response, String path,
+      String variant, String encoding) throws IOException {
+
+    URL resource = getServletContext().getResource(variant);
+    URLConnection connection = resource.openConnection();
+
+    String mimeType = getServletContext().getMimeType(path);
+    response.setContentType(mimeType == null ? "application/octet-stream" : mimeType);
+    if (mimeType != null && mimeType.startsWith("text/")) {
+      response.setCharacterEncoding("UTF-8");
+    }
+    response.setHeader("Content-Encoding", encoding);
+    response.addHeader("Vary", "Accept-Encoding");
+    response.setDateHeader("Last-Modified", connection.getLastModified());
+    long length = connection.getContentLengthLong();
+    if (length >= 0) {
+      response.setContentLengthLong(length);
+    }
+
+    if ("HEAD".equals(request.getMethod())) {
+      return;
+    }
+    try (InputStream input = connection.getInputStream()) {
+      input.transferTo(response.getOutputStream());
+    }
+  }
+
+  private boolean hasVariant(String variant) {
+    return variants.contains(variant);
+  }
+
+  private void scan(String directory, Set<String> found) {
+    Set<String> paths = getServletContext().getResourcePaths(directory);
+    if (paths == null) {
+      return;
+    }
+    for (String path : paths) {
+      if (path.endsWith("/")) {
+        if (!path.equals("/WEB-INF/") && !path.equals("/META-INF/")) {
+          scan(path, found);
+        }
+      } else {
+        for (String[] encoding : ENCODINGS) {
+          if (path.endsWith(encoding[1])) {
+            found.add(path);
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,267 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.annotation.Priority;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Priorities;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.container.ResourceInfo;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.ext.Provider;
+
+/**
+ * Per-caller and global rate limiting with {@link TokenBucket}s.
+ *
+ * Callers are identified by client address (the first X-Forwarded-For hop when
+ * {@code ratelimit.trustForwardedFor} is set). The username parameter is not
+ * authenticated, so it is never used: a fresh name per request would otherwise
+ * get a fresh bucket. Each request costs a configurable number of tokens per
+ * endpoint ("ratelimit.cost.translate", "ratelimit.cost.translate.history", ...;
+ * the longest configured path prefix wins, 0 exempts an endpoint). Bulk
+ * endpoints also pay for their text: jobs chunk by chunk as the worker
+ * translates them and documents segment by segment while they stream, see
+ * {@link #charCost}.
+ *
+ * Buckets that have refilled completely carry no state and are swept out
+ * periodically, and at most once a second while the map is full. Once
+ * {@code ratelimit.maxCallers} buckets are live, new callers share a fixed set
+ * of overflow buckets, so memory stays bounded however many distinct callers
+ * show up.
+ */
+@Provider
+@Priority(Priorities.AUTHENTICATION)
+public class RateLimitFilter implements ContainerRequestFilter {
+
+  private static final boolean ENABLED = AppConfig.getBoolean("ratelimit.enabled", true);
+  private static final long CALLER_CAPACITY = AppConfig.getLong("ratelimit.caller.capacity", 60);
+  private static final long CALLER_REFILL = AppConfig.getLong("ratelimit.caller.refillPerSecond", 1);
+  private static final int MAX_CALLERS = AppConfig.getInt("ratelimit.maxCallers", 100_000);
+  private static final long SWEEP_INTERVAL_MILLIS = AppConfig.getLong("ratelimit.sweepIntervalMillis", 60_000);
+  private static final long FULL_SWEEP_INTERVAL_MILLIS = 1000;
+  private static final boolean TRUST_FORWARDED_FOR = AppConfig.getBoolean("ratelimit.trustForwardedFor", false);
+  private static final long CHARS_PER_TOKEN = Math.max(1, AppConfig.getLong("ratelimit.charsPerToken", 400));
+
+  private static final Map<String, Long> DEFAULT_COSTS = Map.of(
+      "translate", 5L,
+      "translate.document", 20L,
+      "translate.history.export", 10L,
+      "translate.history", 1L,
+      "translate.clear-history", 1L,
+      "tts", 5L,
+      // Each translation a live WebSocket session starts
+      "live", 5L,
+      // Load balancer probes
+      "health", 0L);
+
+  private static final TokenBucket GLOBAL = new TokenBucket(
+      AppConfig.getLong("ratelimit.global.capacity", 2000),
+      AppConfig.getLong("ratelimit.global.refillPerSecond", 200),
+      TokenBucket.now());
+
+  private static final int OVERFLOW_STRIPES = 64;
+  private static final TokenBucket[] OVERFLOW = new TokenBucket[OVERFLOW_STRIPES];
+
+  static {
+    for (int i = 0; i < OVERFLOW_STRIPES; i++) {
+      OVERFLOW[i] = new TokenBucket(CALLER_CAPACITY, CALLER_REFILL, TokenBucket.now());
+    }
+  }
+
+  private static final ConcurrentHashMap<String, TokenBucket> BUCKETS = new ConcurrentHashMap<>();
+  private static final ConcurrentHashMap<Method, Long> COSTS = new ConcurrentHashMap<>();
+  private static final AtomicLong LAST_SWEEP = new AtomicLong(TokenBucket.now());
+
+  @Context
+  private HttpServletRequest servletRequest;
+
+  @Context
+  private ResourceInfo resourceInfo;
+
+  @Override
+  public void filter(ContainerRequestContext requestContext) {
+    if (!ENABLED || "OPTIONS".equals(requestContext.getMethod())) {
+      return;
+    }
+
+    long waitMillis = acquire(clientAddress(servletRequest), cost());
+    if (waitMillis != 0) {
+      requestContext.abortWith(Response.status(429)
+          .header("Retry-After", retryAfterSeconds(waitMillis))
+          .type(MediaType.APPLICATION_JSON)
+          .entity(JsonSupport.message("error", "Too many requests"))
+          .build());
+    }
+  }
+
+  /**
+   * Take tokens from the caller's bucket and the global one, for callers
+   * outside JAX-RS such as the live WebSocket
+   *
+   * @return 0 when they were taken, otherwise the milliseconds to wait
+   */
+  static long acquire(String clientAddress, long cost) {
+    if (!ENABLED || cost == 0) {
+      return 0;
+    }
+
+    long now = TokenBucket.now();
+    sweepIfDue(now);
+
+    TokenBucket bucket = bucketFor("ip:" + clientAddress, now);
+    long waitMillis = bucket.tryAcquire(cost, now);
+    if (waitMillis == 0) {
+      waitMillis = GLOBAL.tryAcquire(cost, now);
+      if (waitMillis != 0) {
+        bucket.refund(cost);
+      }
+    }
+    return waitMillis;
+  }
+
+  /**
+   * Wait until the tokens can be taken, for work that is paced rather than
+   * refused, such as the segments of a document already being streamed
+   *
+   * @return false if they never can be or the thread was interrupted
+   */
+  static boolean await(String clientAddress, long cost) {
+    while (true) {
+      long waitMillis = acquire(clientAddress, cost);
+      if (waitMillis == 0) {
+        return true;
+      }
+      if (waitMillis == Long.MAX_VALUE) {
+        return false;
+      }
+      try {
+        Thread.sleep(waitMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Tokens for bulk text of the given length, charged on top of the request:
+   * one per {@code ratelimit.charsPerToken} characters, at least one
+   */
+  static long charCost(long chars) {
+    return Math.max(1, (chars + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN);
+  }
+
+  /**
+   * Retry-After value for a wait returned by {@link #acquire}
+   */
+  static long retryAfterSeconds(long waitMillis) {
+    return waitMillis == Long.MAX_VALUE ? 60 : Math.max(1, (waitMillis + 999) / 1000);
+  }
+
+  /**
+   * Address callers are limited by: the remote address, or the first
+   * X-Forwarded-For hop when the proxy in front is trusted
+   */
+  static String clientAddress(HttpServletRequest request) {
+    if (TRUST_FORWARDED_FOR) {
+      String forwarded = request.getHeader("X-Forwarded-For");
+      if (forwarded != null && !forwarded.isBlank()) {
+        int comma = forwarded.indexOf(',');
+        return (comma < 0 ? forwarded : forwarded.substring(0, comma)).trim();
+      }
+    }
+    return request.getRemoteAddr();
+  }
+
+  private static TokenBucket bucketFor(String key, long now) {
+    TokenBucket bucket = BUCKETS.get(key);
+    if (bucket != null) {
+      return bucket;
+    }
+
+    if (BUCKETS.size() >= MAX_CALLERS) {
+      return OVERFLOW[(key.hashCode() & Integer.MAX_VALUE) % OVERFLOW_STRIPES];
+    }
+
+    TokenBucket created = new TokenBucket(CALLER_CAPACITY, CALLER_REFILL, now);
+    TokenBucket existing = BUCKETS.putIfAbsent(key, created);
+    return existing != null ? existing : created;
+  }
+
+  /**
+   * Drop buckets that have refilled completely. Only the thread that wins the
+   * CAS on the sweep timestamp walks the map; everyone else carries on. A full
+   * map is swept sooner, but not on every request while it stays full.
+   */
+  private static void sweepIfDue(long now) {
+    long last = LAST_SWEEP.get();
+    long elapsed = now - last;
+    boolean due = elapsed >= SWEEP_INTERVAL_MILLIS
+        || (elapsed >= FULL_SWEEP_INTERVAL_MILLIS && BUCKETS.size() >= MAX_CALLERS);
+    if (!due || !LAST_SWEEP.compareAndSet(last, now)) {
+      return;
+    }
+    BUCKETS.values().removeIf(bucket -> bucket.isFull(now));
+  }
+
+  /**
+   * Resolve the cost of the matched resource method from the longest configured
+   * prefix of its path template, e.g. "translate/history/export" tries
+   * translate.history.export, translate.history, translate. Template parameters
+   * are skipped so usernames never end up in keys.
+   */
+  private long cost() {
+    Method method = resourceInfo.getResourceMethod();
+    if (method == null) {
+      return resolveCost("");
+    }
+    return COSTS.computeIfAbsent(method, m -> resolveCost(
+        template(resourceInfo.getResourceClass().getAnnotation(Path.class), m.getAnnotation(Path.class))));
+  }
+
+  private static String template(Path classPath, Path methodPath) {
+    StringBuilder key = new StringBuilder();
+    for (Path path : new Path[] { classPath, methodPath }) {
+      if (path == null) {
+        continue;
+      }
+      for (String segment : path.value().split("/")) {
+        if (segment.isEmpty() || segment.startsWith("{")) {
+          continue;
+        }
+        if (key.length() > 0) {
+          key.append('.');
+        }
+        key.append(segment);
+      }
+    }
+    return key.toString();
+  }
+
+  /**
+   * Cost of a key such as "translate.history"; also used for costs outside JAX-RS
+   */
+  static long resolveCost(String key) {
+    String candidate = key;
+    while (!candidate.isEmpty()) {
+      long configured = AppConfig.getLong("ratelimit.cost." + candidate, -1);
+      if (configured >= 0) {
+        return configured;
+      }
+      Long fallback = DEFAULT_COSTS.get(candidate);
+      if (fallback != null) {
+        return fallback;
+      }
+      int dot = candidate.lastIndexOf('.');
+      candidate = dot < 0 ? "" : candidate.substring(0, dot);
+    }
+    return AppConfig.getLong("ratelimit.cost.default", 1);
+  }
+}
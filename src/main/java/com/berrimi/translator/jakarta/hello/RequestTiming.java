@@ -0,0 +1,127 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.util.Locale;
+
+/**
+ * Where the time of a REST request goes: upstream LLM calls, the database,
+ * speech synthesis and so on.
+ *
+ * {@link ServerTimingFilter} begins a timing for each request on its thread.
+ * Instrumented code brackets its work with {@link #start()} and
+ * {@link #stop(String, long)}; time spent under the same span name adds up.
+ * Code running outside a request, or on another thread, records nothing.
+ * With {@code timing.enabled=false}, start returns 0 without touching the
+ * thread local and stop returns at once.
+ */
+public final class RequestTiming {
+
+  static final boolean ENABLED = AppConfig.getBoolean("timing.enabled", true);
+
+  // Span names are constants, so a few slots and identity checks do
+  private static final int MAX_SPANS = 8;
+
+  private static final ThreadLocal<RequestTiming> CURRENT = new ThreadLocal<>();
+
+  private final long startedAt = System.nanoTime();
+  private final String[] names = new String[MAX_SPANS];
+  private final long[] nanos = new long[MAX_SPANS];
+  private final int[] counts = new int[MAX_SPANS];
+  private int size;
+
+  private RequestTiming() {
+  }
+
+  /**
+   * Start timing a request on this thread, dropping any timing left over by
+   * a previous request
+   */
+  static RequestTiming begin() {
+    RequestTiming timing = new RequestTiming();
+    CURRENT.set(timing);
+    return timing;
+  }
+
+  /**
+   * Stop recording spans on this thread
+   */
+  static void end() {
+    CURRENT.remove();
+  }
+
+  /**
+   * Mark the start of a span
+   *
+   * @return the start time to pass to {@link #stop}, or 0 if no request is
+   *         being timed on this thread
+   */
+  public static long start() {
+    return ENABLED && CURRENT.get() != null ? System.nanoTime() : 0;
+  }
+
+  /**
+   * Add the time since {@code startedAt} to a span of the current request
+   */
+  public static void stop(String span, long startedAt) {
+    if (startedAt == 0) {
+      return;
+    }
+    RequestTiming timing = CURRENT.get();
+    if (timing != null) {
+      timing.add(span, System.nanoTime() - startedAt);
+    }
+  }
+
+  /**
+   * Nanoseconds since the request began
+   */
+  long elapsed() {
+    return System.nanoTime() - startedAt;
+  }
+
+  /**
+   * Spans as a Server-Timing header value, e.g.
+   * {@code llm;dur=812.4;desc="1 call", db;dur=3.1;desc="2 calls", total;dur=820.0}
+   */
+  String header() {
+    StringBuilder value = new StringBuilder();
+    for (int i = 0; i < size; i++) {
+      value.append(names[i]).append(";dur=").append(millis(nanos[i]))
+          .append(";desc=\"").append(counts[i]).append(counts[i] == 1 ? " call\", " : " calls\", ");
+    }
+    return value.append("total;dur=").append(millis(elapsed())).toString();
+  }
+
+  /**
+   * Spans as key=value pairs for the slow request log, e.g.
+   * {@code llm_ms=812.4 llm_calls=1 db_ms=3.1 db_calls=2}
+   */
+  String fields() {
+    StringBuilder fields = new StringBuilder();
+    for (int i = 0; i < size; i++) {
+      String name = names[i].replace('-', '_');
+      fields.append(' ').append(name).append("_ms=").append(millis(nanos[i]))
+          .append(' ').append(name).append("_calls=").append(counts[i]);
+    }
+    return fields.toString();
+  }
+
+  static String millis(long nanos) {
+    return String.format(Locale.ROOT, "%.1f", nanos / 1e6);
+  }
+
+  private void add(String span, long elapsed) {
+    for (int i = 0; i < size; i++) {
+      if (names[i] == span || names[i].equals(span)) {
+        nanos[i] += elapsed;
+        counts[i]++;
+        return;
+      }
+    }
+    if (size < MAX_SPANS) {
+      names[size] = span;
+      nanos[size] = elapsed;
+      counts[size] = 1;
+      size++;
+    }
+  }
+}
@@ -0,0 +1,466 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Versioned schema changes on top of the tables created by {@link DatabaseManager}.
+ *
+ * The applied version is kept in SQLite's {@code PRAGMA user_version}; each step
+ * runs in its own transaction together with the version bump. Steps run at
+ * startup, or offline on a copy of a large database with
+ * {@code java -cp translator.jar:sqlite-jdbc.jar com.berrimi.translator.jakarta.hello.SchemaMigrations <db file>},
+ * which also migrates the history partitions next to it.
+ */
+public final class SchemaMigrations {
+
+  /** Version of the schema this code reads and writes */
+  public static final int CURRENT_VERSION = 4;
+
+  private static final int BATCH_SIZE = 1000;
+  private static final int TRAIN_SAMPLES = AppConfig.getInt("texts.trainSamples", 5000);
+
+  // Partition rows get ids from the lower half of each millisecond, main rows
+  // from the upper half, so rows migrated separately never collide when an
+  // unarchived main row later moves into its partition
+  private static final long MAIN_SEQUENCE_BASE = 1L << 21;
+
+  private SchemaMigrations() {
+  }
+
+  /**
+   * Apply every step newer than the database's version, then bring the
+   * history partitions in the given directory to the same version
+   */
+  public static void migrate(Connection conn, Path partitionDirectory) throws SQLException {
+    int version = getVersion(conn, "main");
+
+    if (version < 1) {
+      createTextTables(conn);
+      apply(conn, "main", 1, SchemaMigrations::moveHistoryTextsToTextStore);
+    }
+    if (version < 2) {
+      try (Statement stmt = conn.createStatement()) {
+        stmt.execute("""
+            CREATE TABLE IF NOT EXISTS settings (
+                name TEXT PRIMARY KEY,
+                value BLOB NOT NULL
+            );
+            """);
+      }
+      apply(conn, "main", 2, c -> useIntegerHistoryKeys(c, "main", MAIN_SEQUENCE_BASE));
+    }
+    if (version < 3) {
+      apply(conn, "main", 3, SchemaMigrations::addJobClients);
+    }
+
+    migratePartitions(conn, partitionDirectory);
+
+    // Indexes partitions already brought to the current version above
+    if (version < 4) {
+      apply(conn, "main", 4, c -> indexPartitionUsers(c, partitionDirectory));
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length != 1) {
+      System.err.println("Usage: SchemaMigrations <path to translator.db>");
+      System.exit(2);
+    }
+
+    File file = new File(args[0]).getAbsoluteFile();
+    long before = file.length();
+    try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + file.getPath())) {
+      System.out.println("Schema version " + getVersion(conn, "main"));
+      migrate(conn, file.toPath().resolveSibling(HistoryPartitions.DIRECTORY_NAME));
+      try (Statement stmt = conn.createStatement()) {
+        stmt.execute("VACUUM");
+      }
+      System.out.println("Schema version " + getVersion(conn, "main"));
+    }
+    System.out.println("Database size " + before + " -> " + file.length() + " bytes");
+  }
+
+  @FunctionalInterface
+  private interface Step {
+    void run(Connection conn) throws SQLException;
+  }
+
+  private static void apply(Connection conn, String schema, int version, Step step) throws SQLException {
+    long start = System.currentTimeMillis();
+    boolean autoCommit = conn.getAutoCommit();
+    conn.setAutoCommit(false);
+    try {
+      step.run(conn);
+      try (Statement stmt = conn.createStatement()) {
+        stmt.execute("PRAGMA " + schema + ".user_version = " + version);
+      }
+      conn.commit();
+      System.out.println("Migrated " + schema + " database to schema version " + version + " in "
+          + (System.currentTimeMillis() - start) + " ms");
+    } catch (SQLException | RuntimeException e) {
+      conn.rollback();
+      throw e;
+    } finally {
+      conn.setAutoCommit(autoCommit);
+    }
+  }
+
+  /**
+   * Schema version of the main database or an attached one
+   */
+  public static int getVersion(Connection conn, String schema) throws SQLException {
+    try (Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery("PRAGMA " + schema + ".user_version")) {
+      return rs.next() ? rs.getInt(1) : 0;
+    }
+  }
+
+  /**
+   * Version 1 prerequisites, created and seeded outside the copy transaction so
+   * that a dictionary is never used in memory without being stored
+   */
+  private static void createTextTables(Connection conn) throws SQLException {
+    try (Statement stmt = conn.createStatement()) {
+      for (String ddl : textTables("main")) {
+        stmt.execute(ddl);
+      }
+    }
+
+    TextStore.initialize(conn);
+    if (TextCodec.hasDictionary()) {
+      return;
+    }
+
+    List<String> samples = new ArrayList<>();
+    try (PreparedStatement pstmt = conn.prepareStatement("""
+        SELECT original_text, translated_text FROM translation_history
+        ORDER BY random() LIMIT ?
+        """)) {
+      pstmt.setInt(1, TRAIN_SAMPLES / 2);
+      try (ResultSet rs = pstmt.executeQuery()) {
+        while (rs.next()) {
+          samples.add(rs.getString(1));
+          samples.add(rs.getString(2));
+        }
+      }
+    }
+    if (samples.size() >= 100) {
+      TextStore.trainDictionary(conn, samples);
+    }
+  }
+
+  /**
+   * Version 1: history rows refer to deduplicated, compressed texts
+   */
+  private static void moveHistoryTextsToTextStore(Connection conn) throws SQLException {
+    try (Statement stmt = conn.createStatement()) {
+      stmt.execute("""
+          CREATE TABLE translation_history_new (
+              id TEXT PRIMARY KEY,
+              username TEXT NOT NULL,
+              original_id INTEGER NOT NULL,
+              translated_id INTEGER NOT NULL,
+              target_lang TEXT NOT NULL,
+              timestamp TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+              FOREIGN KEY (username) REFERENCES users(username) ON DELETE CASCADE
+          );
+          """);
+      stmt.execute("""
+          CREATE TRIGGER trg_history_texts_insert AFTER INSERT ON translation_history_new
+          BEGIN
+              UPDATE texts SET refs = refs + 1 WHERE id = NEW.original_id;
+              UPDATE texts SET refs = refs + 1 WHERE id = NEW.translated_id;
+          END;
+          """);
+      stmt.execute("""
+          CREATE TRIGGER trg_history_texts_delete AFTER DELETE ON translation_history_new
+          BEGIN
+              UPDATE texts SET refs = refs - 1 WHERE id = OLD.original_id;
+              UPDATE texts SET refs = refs - 1 WHERE id = OLD.translated_id;
+              DELETE FROM texts WHERE id IN (OLD.original_id, OLD.translated_id) AND refs <= 0;
+          END;
+          """);
+    }
+
+    String select = """
+        SELECT id, username, original_text, translated_text, target_lang, timestamp
+        FROM translation_history
+        """;
+    String insert = """
+        INSERT INTO translation_history_new
+        (id, username, original_id, translated_id, target_lang, timestamp)
+        VALUES (?, ?, ?, ?, ?, ?)
+        """;
+
+    long rows = 0;
+    try (Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery(select);
+        PreparedStatement pstmt = conn.prepareStatement(insert)) {
+
+      while (rs.next()) {
+        pstmt.setString(1, rs.getString("id"));
+        pstmt.setString(2, rs.getString("username"));
+        pstmt.setLong(3, TextStore.put(conn, rs.getString("original_text")));
+        pstmt.setLong(4, TextStore.put(conn, rs.getString("translated_text")));
+        pstmt.setString(5, rs.getString("target_lang"));
+        // Copied as stored, whether epoch millis or CURRENT_TIMESTAMP text
+        pstmt.setObject(6, rs.getObject("timestamp"));
+        pstmt.addBatch();
+        if (++rows % BATCH_SIZE == 0) {
+          pstmt.executeBatch();
+        }
+      }
+      pstmt.executeBatch();
+    }
+
+    try (Statement stmt = conn.createStatement()) {
+      stmt.execute("DROP TABLE translation_history");
+      stmt.execute("ALTER TABLE translation_history_new RENAME TO translation_history");
+      stmt.execute("CREATE INDEX idx_history_username ON translation_history(username)");
+      stmt.execute("CREATE INDEX idx_history_timestamp ON translation_history(timestamp DESC)");
+    }
+    System.out.println("Moved " + rows + " history rows to the text store");
+  }
+
+  /**
+   * Version 2: integer user_id references and time-ordered integer row ids
+   * (see {@link HistoryIds}) in place of username and UUID text keys. Rows
+   * whose user no longer exists, which partitions can still hold, are dropped.
+   */
+  private static void useIntegerHistoryKeys(Connection conn, String schema, long sequenceBase) throws SQLException {
+    try (Statement stmt = conn.createStatement()) {
+      // Orphans are deleted, not just left behind, so the triggers release their texts
+      stmt.execute("""
+          DELETE FROM %s.translation_history
+          WHERE username NOT IN (SELECT username FROM main.users)
+          """.formatted(schema));
+      stmt.execute(historyTable(schema + ".translation_history_new", "main".equals(schema)));
+    }
+
+    String select = """
+        SELECT u.id AS user_id, h.original_id, h.translated_id, h.target_lang, h.timestamp
+        FROM %s.translation_history h
+        JOIN main.users u ON u.username = h.username
+        ORDER BY h.timestamp
+        """.formatted(schema);
+    String insert = """
+        INSERT INTO %s.translation_history_new
+        (id, user_id, original_id, translated_id, target_lang, timestamp)
+        VALUES (?, ?, ?, ?, ?, ?)
+        """.formatted(schema);
+
+    long rows = 0;
+    long last = -1;
+    try (Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery(select);
+        PreparedStatement pstmt = conn.prepareStatement(insert)) {
+
+      while (rs.next()) {
+        long millis = rs.getTimestamp("timestamp").getTime();
+        long id = Math.max(last + 1, HistoryIds.lowerBound(millis) + sequenceBase);
+        last = id;
+
+        pstmt.setLong(1, id);
+        pstmt.setLong(2, rs.getLong("user_id"));
+        pstmt.setLong(3, rs.getLong("original_id"));
+        pstmt.setLong(4, rs.getLong("translated_id"));
+        pstmt.setString(5, rs.getString("target_lang"));
+        pstmt.setLong(6, millis);
+        pstmt.addBatch();
+        if (++rows % BATCH_SIZE == 0) {
+          pstmt.executeBatch();
+        }
+      }
+      pstmt.executeBatch();
+    }
+
+    // Dropping the old table does not fire its triggers, so text refs carry over as they are
+    try (Statement stmt = conn.createStatement()) {
+      stmt.execute("DROP TABLE " + schema + ".translation_history");
+      stmt.execute("ALTER TABLE " + schema + ".translation_history_new RENAME TO translation_history");
+      stmt.execute(historyIndex(schema));
+      for (String ddl : historyTriggers(schema)) {
+        stmt.execute(ddl);
+      }
+    }
+    System.out.println("Rekeyed " + rows + " history rows in " + schema);
+  }
+
+  /**
+   * Jobs remember who queued them, so the worker can charge the caller's rate
+   * limit as it translates, and are found by caller and by age
+   */
+  private static void addJobClients(Connection conn) throws SQLException {
+    try (Statement stmt = conn.createStatement()) {
+      stmt.execute("ALTER TABLE translation_jobs ADD COLUMN client_address TEXT");
+      stmt.execute("CREATE INDEX IF NOT EXISTS idx_jobs_client ON translation_jobs(client_address)");
+      stmt.execute("CREATE INDEX IF NOT EXISTS idx_jobs_created ON translation_jobs(created_at)");
+    }
+  }
+
+  /**
+   * Record which partitions hold rows of which user, so reading a user's
+   * history only attaches those
+   */
+  private static void indexPartitionUsers(Connection conn, Path directory) throws SQLException {
+    try (Statement stmt = conn.createStatement()) {
+      stmt.execute(partitionUsersTable());
+    }
+    String insert = """
+        INSERT OR IGNORE INTO history_partition_users (user_id, month)
+        SELECT id, ? FROM users WHERE id = ?
+        """;
+    // Partitions are read on connections of their own: SQLite cannot attach
+    // a database inside the migration's transaction
+    try (PreparedStatement pstmt = conn.prepareStatement(insert)) {
+      for (Path file : partitionFiles(directory)) {
+        String name = file.getFileName().toString();
+        String month = name.substring("history-".length(), name.length() - ".db".length());
+        try (Connection partition = DriverManager.getConnection("jdbc:sqlite:" + file);
+            Statement stmt = partition.createStatement();
+            ResultSet rs = stmt.executeQuery("SELECT DISTINCT user_id FROM translation_history")) {
+          while (rs.next()) {
+            pstmt.setString(1, month);
+            pstmt.setLong(2, rs.getLong(1));
+            pstmt.addBatch();
+          }
+        }
+        pstmt.executeBatch();
+      }
+    }
+  }
+
+  /**
+   * Months of the history partitions holding rows of each user, see
+   * {@link HistoryPartitions}
+   */
+  static String partitionUsersTable() {
+    return """
+        CREATE TABLE IF NOT EXISTS main.history_partition_users (
+            user_id INTEGER NOT NULL,
+            month TEXT NOT NULL,
+            PRIMARY KEY (user_id, month),
+            FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE
+        ) WITHOUT ROWID;
+        """;
+  }
+
+  private static List<Path> partitionFiles(Path directory) throws SQLException {
+    List<Path> files = new ArrayList<>();
+    if (!Files.isDirectory(directory)) {
+      return files;
+    }
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "history-*.db")) {
+      stream.forEach(files::add);
+    } catch (IOException e) {
+      throw new SQLException("Cannot list history partitions: " + e.getMessage(), e);
+    }
+    return files;
+  }
+
+  private static void migratePartitions(Connection conn, Path directory) throws SQLException {
+    for (Path file : partitionFiles(directory)) {
+      try (PreparedStatement attach = conn.prepareStatement("ATTACH DATABASE ? AS archive")) {
+        attach.setString(1, file.toString());
+        attach.execute();
+      }
+      try {
+        if (getVersion(conn, "archive") < 2) {
+          apply(conn, "archive", 2, c -> useIntegerHistoryKeys(c, "archive", 0));
+        }
+        if (getVersion(conn, "archive") < CURRENT_VERSION) {
+          // Later versions only change tables of the main file
+          apply(conn, "archive", CURRENT_VERSION, c -> {
+          });
+        }
+      } finally {
+        try (Statement stmt = conn.createStatement()) {
+          stmt.execute("DETACH DATABASE archive");
+        }
+      }
+    }
+  }
+
+  /**
+   * Texts and dictionaries tables, see {@link TextStore}
+   */
+  static String[] textTables(String schema) {
+    return new String[] {
+        """
+        CREATE TABLE IF NOT EXISTS %s.texts (
+            id INTEGER PRIMARY KEY,
+            hash BLOB NOT NULL UNIQUE,
+            codec INTEGER NOT NULL,
+            body BLOB NOT NULL,
+            refs INTEGER NOT NULL DEFAULT 0
+        );
+        """.formatted(schema),
+        """
+        CREATE TABLE IF NOT EXISTS %s.text_dictionaries (
+            id INTEGER PRIMARY KEY,
+            body BLOB NOT NULL,
+            created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+        );
+        """.formatted(schema)
+    };
+  }
+
+  /**
+   * Current history table; partitions have no users table to reference
+   */
+  static String historyTable(String qualifiedName, boolean referencesUsers) {
+    return """
+        CREATE TABLE IF NOT EXISTS %s (
+            id INTEGER PRIMARY KEY,
+            user_id INTEGER NOT NULL,
+            original_id INTEGER NOT NULL,
+            translated_id INTEGER NOT NULL,
+            target_lang TEXT NOT NULL,
+            timestamp INTEGER NOT NULL%s
+        );
+        """.formatted(qualifiedName,
+        referencesUsers ? ",\n    FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE" : "");
+  }
+
+  /**
+   * Per-user index; ids are time-ordered, so it also serves newest-first reads
+   */
+  static String historyIndex(String schema) {
+    return "CREATE INDEX IF NOT EXISTS " + schema + ".idx_history_user ON translation_history(user_id, id)";
+  }
+
+  /**
+   * Reference counting of texts by history rows
+   */
+  static String[] historyTriggers(String schema) {
+    return new String[] {
+        """
+        CREATE TRIGGER IF NOT EXISTS %s.trg_history_texts_insert AFTER INSERT ON translation_history
+        BEGIN
+            UPDATE texts SET refs = refs + 1 WHERE id = NEW.original_id;
+            UPDATE texts SET refs = refs + 1 WHERE id = NEW.translated_id;
+        END;
+        """.formatted(schema),
+        """
+        CREATE TRIGGER IF NOT EXISTS %s.trg_history_texts_delete AFTER DELETE ON translation_history
+        BEGIN
+            UPDATE texts SET refs = refs - 1 WHERE id = OLD.original_id;
+            UPDATE texts SET refs = refs - 1 WHERE id = OLD.translated_id;
+            DELETE FROM texts WHERE id IN (OLD.original_id, OLD.translated_id) AND refs <= 0;
+        END;
+        """.formatted(schema)
+    };
+  }
+}
@@ -0,0 +1,103 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+import jakarta.annotation.Priority;
+import jakarta.ws.rs.Priorities;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.container.PreMatching;
+import jakarta.ws.rs.ext.Provider;
+import jakarta.ws.rs.ext.WriterInterceptor;
+import jakarta.ws.rs.ext.WriterInterceptorContext;
+
+/**
+ * Times every REST request with a {@link RequestTiming} and reports the
+ * breakdown in a {@code Server-Timing} header.
+ *
+ * The timing begins before anything else runs and the header is set by the
+ * last response filter. Streamed bodies, JSON included, are written after
+ * the headers are sent, so that "write" time only shows in the log line of
+ * requests slower than {@code timing.slowMillis}. Set
+ * {@code timing.header=false} to keep timings out of responses and only
+ * log slow requests.
+ */
+@Provider
+@PreMatching
+// Lowest value: first request filter, last response filter, outermost interceptor
+@Priority(Priorities.AUTHENTICATION - 500)
+public class ServerTimingFilter implements ContainerRequestFilter, ContainerResponseFilter, WriterInterceptor {
+
+  private static final boolean HEADER = AppConfig.getBoolean("timing.header", true);
+  private static final long SLOW_NANOS = AppConfig.getLong("timing.slowMillis", 2000) * 1_000_000L;
+
+  private static final String TIMING = RequestTiming.class.getName();
+  private static final String REQUEST_LINE = TIMING + ".request";
+
+  private static final LongAdder SLOW_REQUESTS = new LongAdder();
+
+  static {
+    Metrics.gauge("timing.slowRequests", SLOW_REQUESTS::sum);
+  }
+
+  @Override
+  public void filter(ContainerRequestContext requestContext) {
+    if (RequestTiming.ENABLED) {
+      requestContext.setProperty(TIMING, RequestTiming.begin());
+    }
+  }
+
+  @Override
+  public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+    RequestTiming timing = (RequestTiming) requestContext.getProperty(TIMING);
+    if (timing == null) {
+      return;
+    }
+    RequestTiming.end();
+
+    if (HEADER) {
+      responseContext.getHeaders().putSingle("Server-Timing", timing.header());
+    }
+    String request = "method=" + requestContext.getMethod()
+        + " path=" + requestContext.getUriInfo().getPath()
+        + " status=" + responseContext.getStatus();
+    if (responseContext.hasEntity()) {
+      // Logged once the body is written
+      requestContext.setProperty(REQUEST_LINE, request);
+    } else {
+      logIfSlow(timing, request, -1);
+    }
+  }
+
+  @Override
+  public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+    RequestTiming timing = (RequestTiming) context.getProperty(TIMING);
+    String request = (String) context.getProperty(REQUEST_LINE);
+    if (timing == null || request == null) {
+      context.proceed();
+      return;
+    }
+
+    long started = System.nanoTime();
+    try {
+      context.proceed();
+    } finally {
+      logIfSlow(timing, request, System.nanoTime() - started);
+    }
+  }
+
+  private static void logIfSlow(RequestTiming timing, String request, long writeNanos) {
+    long total = timing.elapsed();
+    if (total < SLOW_NANOS) {
+      return;
+    }
+    SLOW_REQUESTS.increment();
+    System.out.println("Slow request: " + request
+        + " total_ms=" + RequestTiming.millis(total)
+        + (writeNanos < 0 ? "" : " write_ms=" + RequestTiming.millis(writeNanos))
+        + timing.fields());
+  }
+}
@@ -0,0 +1,181 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.util.List;
+import java.util.Locale;
+
+import com.google.cloud.texttospeech.v1.AudioEncoding;
+
+import jakarta.ws.rs.core.MediaType;
+
+/**
+ * Audio encoding, sample rate and speaking rate of synthesized speech.
+ *
+ * A format is picked from the "format", "sampleRate" and "rate" query
+ * parameters, or else from the first audio type in the Accept header that we
+ * can produce. Ogg Opus is much smaller than MP3 for speech, so clients that
+ * accept it should ask for it. Every format has its own {@link #key()}, so its
+ * audio is cached apart from the others.
+ */
+public final class SpeechFormat {
+
+  /**
+   * Encodings we serve, with their media types
+   */
+  public enum Codec {
+    OGG_OPUS(AudioEncoding.OGG_OPUS, "audio/ogg"),
+    MP3(AudioEncoding.MP3, "audio/mpeg"),
+    // The API returns LINEAR16 with a WAV header
+    LINEAR16(AudioEncoding.LINEAR16, "audio/wav");
+
+    private final AudioEncoding encoding;
+    private final String mediaType;
+
+    Codec(AudioEncoding encoding, String mediaType) {
+      this.encoding = encoding;
+      this.mediaType = mediaType;
+    }
+
+    public AudioEncoding encoding() {
+      return encoding;
+    }
+
+    public String mediaType() {
+      return mediaType;
+    }
+  }
+
+  private static final int MIN_SAMPLE_RATE = 8000;
+  private static final int MAX_SAMPLE_RATE = 48000;
+  // 0 lets the API use the voice's natural rate
+  private static final int DEFAULT_SAMPLE_RATE = AppConfig.getInt("tts.sampleRateHertz", 0);
+  private static final double DEFAULT_SPEAKING_RATE = AppConfig.getDouble("tts.speakingRate", 1.0);
+
+  /**
+   * Format used when the client states no preference
+   */
+  public static final SpeechFormat DEFAULT = new SpeechFormat(
+      parseCodec(AppConfig.get("tts.defaultFormat", "mp3"), Codec.MP3), DEFAULT_SAMPLE_RATE, DEFAULT_SPEAKING_RATE);
+
+  private final Codec codec;
+  private final int sampleRateHertz;
+  private final double speakingRate;
+
+  private SpeechFormat(Codec codec, int sampleRateHertz, double speakingRate) {
+    this.codec = codec;
+    this.sampleRateHertz = sampleRateHertz;
+    this.speakingRate = speakingRate;
+  }
+
+  /**
+   * Pick a format from request parameters, any of which may be null, and the
+   * client's acceptable media types in preference order
+   *
+   * @throws IllegalArgumentException if a parameter is not understood
+   */
+  public static SpeechFormat negotiate(String format, String sampleRate, String rate, List<MediaType> accept) {
+    Codec codec = format == null || format.isBlank() ? fromAccept(accept) : parseCodec(format, null);
+    if (codec == null) {
+      throw new IllegalArgumentException("Format must be ogg, mp3 or wav");
+    }
+
+    int sampleRateHertz = DEFAULT_SAMPLE_RATE;
+    if (sampleRate != null && !sampleRate.isBlank()) {
+      try {
+        sampleRateHertz = Integer.parseInt(sampleRate.trim());
+      } catch (NumberFormatException e) {
+        sampleRateHertz = -1;
+      }
+      if (sampleRateHertz < MIN_SAMPLE_RATE || sampleRateHertz > MAX_SAMPLE_RATE) {
+        throw new IllegalArgumentException("sampleRate must be between " + MIN_SAMPLE_RATE
+            + " and " + MAX_SAMPLE_RATE);
+      }
+    }
+
+    double speakingRate = DEFAULT_SPEAKING_RATE;
+    if (rate != null && !rate.isBlank()) {
+      try {
+        speakingRate = Double.parseDouble(rate.trim());
+      } catch (NumberFormatException e) {
+        speakingRate = -1;
+      }
+      // The API's range; quarter-speed steps keep the number of cached variants small
+      if (speakingRate < 0.25 || speakingRate > 4.0) {
+        throw new IllegalArgumentException("rate must be between 0.25 and 4.0");
+      }
+      speakingRate = Math.round(speakingRate * 4) / 4.0;
+    }
+
+    if (codec == DEFAULT.codec && sampleRateHertz == DEFAULT.sampleRateHertz
+        && speakingRate == DEFAULT.speakingRate) {
+      return DEFAULT;
+    }
+    return new SpeechFormat(codec, sampleRateHertz, speakingRate);
+  }
+
+  public Codec codec() {
+    return codec;
+  }
+
+  /**
+   * Sample rate in Hz, or 0 for the voice's natural rate
+   */
+  public int sampleRateHertz() {
+    return sampleRateHertz;
+  }
+
+  public double speakingRate() {
+    return speakingRate;
+  }
+
+  public String mediaType() {
+    return codec.mediaType();
+  }
+
+  /**
+   * Identifies the variant in cache keys and ETags
+   */
+  public String key() {
+    return codec.name() + '/' + sampleRateHertz + '/' + speakingRate;
+  }
+
+  private static Codec fromAccept(List<MediaType> accept) {
+    if (accept != null) {
+      for (MediaType type : accept) {
+        if (type.isWildcardType()) {
+          // */* or nothing better: the default
+          break;
+        }
+        if (!"audio".equalsIgnoreCase(type.getType())) {
+          continue;
+        }
+        if (type.isWildcardSubtype()) {
+          break;
+        }
+        Codec codec = parseCodec(type.getSubtype(), null);
+        if (codec != null) {
+          return codec;
+        }
+      }
+    }
+    return DEFAULT.codec;
+  }
+
+  private static Codec parseCodec(String name, Codec fallback) {
+    switch (name.trim().toLowerCase(Locale.ROOT)) {
+      case "ogg":
+      case "opus":
+      case "ogg_opus":
+        return Codec.OGG_OPUS;
+      case "mp3":
+      case "mpeg":
+        return Codec.MP3;
+      case "wav":
+      case "wave":
+      case "x-wav":
+      case "linear16":
+        return Codec.LINEAR16;
+      default:
+        return fallback;
+    }
+  }
+}
@@ -0,0 +1,243 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Speculative speech synthesis of fresh translations.
+ *
+ * Users nearly always play a translation right after it appears, so once a
+ * translation is ready its audio is synthesized in the background and kept
+ * for a short time ({@code tts.prefetch.ttlSeconds}). A speech request for
+ * the same text and language then takes the audio from here, waiting for a
+ * synthesis that is still running rather than starting a second one.
+ *
+ * Speculation is bounded by a small pool with a bounded queue, at most
+ * {@code tts.prefetch.perUser} pending syntheses per caller and a maximum
+ * text length; anything beyond is skipped. The hit, miss and wasted gauges
+ * show whether the extra synthesis pays off. Audio is prefetched in one
+ * format ({@code tts.prefetch.format}) and only serves requests for it.
+ */
+public final class SpeechPrefetcher {
+
+  private static final boolean ENABLED = AppConfig.getBoolean("tts.prefetch.enabled", true);
+  private static final int THREADS = Math.max(1, AppConfig.getInt("tts.prefetch.threads", 2));
+  private static final int QUEUE_SIZE = Math.max(1, AppConfig.getInt("tts.prefetch.queueSize", 64));
+  private static final int PER_USER = Math.max(1, AppConfig.getInt("tts.prefetch.perUser", 2));
+  private static final int MAX_CHARS = AppConfig.getInt("tts.prefetch.maxChars", 500);
+  private static final int MAX_ENTRIES = Math.max(1, AppConfig.getInt("tts.prefetch.maxEntries", 200));
+  private static final long TTL_MILLIS = AppConfig.getLong("tts.prefetch.ttlSeconds", 120) * 1000;
+  private static final long WAIT_MILLIS = AppConfig.getLong("tts.prefetch.waitMillis", 10_000);
+  // Prefetch in the format most clients ask for; other formats are synthesized on demand
+  private static final SpeechFormat FORMAT = prefetchFormat();
+
+  private static final String ANONYMOUS = "";
+
+  private static final ThreadPoolExecutor POOL = new ThreadPoolExecutor(THREADS, THREADS, 0, TimeUnit.SECONDS,
+      new ArrayBlockingQueue<>(QUEUE_SIZE), runnable -> {
+        Thread thread = new Thread(runnable, "speech-prefetch");
+        thread.setDaemon(true);
+        return thread;
+      }, new ThreadPoolExecutor.AbortPolicy());
+
+  // Access-ordered, so the least recently used entry goes first when full
+  private static final Map<String, Entry> ENTRIES = new LinkedHashMap<>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+      if (size() > MAX_ENTRIES) {
+        eldest.getValue().discard();
+        return true;
+      }
+      return false;
+    }
+  };
+
+  private static final Map<String, Integer> PENDING = new ConcurrentHashMap<>();
+
+  private static final LongAdder SCHEDULED = new LongAdder();
+  private static final LongAdder SKIPPED = new LongAdder();
+  private static final LongAdder FAILED = new LongAdder();
+  private static final LongAdder HITS = new LongAdder();
+  private static final LongAdder MISSES = new LongAdder();
+  private static final LongAdder WASTED = new LongAdder();
+
+  static {
+    Metrics.gauge("tts.prefetch.scheduled", SCHEDULED::sum);
+    Metrics.gauge("tts.prefetch.skipped", SKIPPED::sum);
+    Metrics.gauge("tts.prefetch.failed", FAILED::sum);
+    Metrics.gauge("tts.prefetch.hits", HITS::sum);
+    Metrics.gauge("tts.prefetch.misses", MISSES::sum);
+    Metrics.gauge("tts.prefetch.wasted", WASTED::sum);
+    Metrics.gauge("tts.prefetch.hitRatio", () -> {
+      long hits = HITS.sum();
+      long total = hits + MISSES.sum();
+      return total == 0 ? 0.0 : (double) hits / total;
+    });
+    Metrics.gauge("tts.prefetch.cached", () -> {
+      synchronized (ENTRIES) {
+        return ENTRIES.size();
+      }
+    });
+  }
+
+  private SpeechPrefetcher() {
+  }
+
+  /**
+   * Start synthesizing a translation's audio in the background, unless a
+   * limit says to skip it
+   */
+  public static void prefetch(String text, String toLang, String username) {
+    if (!ENABLED || text == null || text.isBlank() || text.length() > MAX_CHARS) {
+      return;
+    }
+
+    String languageCode = TextToSpeechService.getLanguageCode(toLang);
+    String key = key(text, languageCode, FORMAT);
+    String caller = username == null || username.isBlank() ? ANONYMOUS : username;
+
+    Entry entry;
+    synchronized (ENTRIES) {
+      Entry existing = ENTRIES.get(key);
+      if (existing != null && !existing.isExpired()) {
+        return;
+      }
+      if (existing != null) {
+        existing.discard();
+      }
+      if (PENDING.getOrDefault(caller, 0) >= PER_USER) {
+        SKIPPED.increment();
+        return;
+      }
+      entry = new Entry();
+      ENTRIES.put(key, entry);
+      PENDING.merge(caller, 1, Integer::sum);
+    }
+
+    try {
+      POOL.execute(() -> {
+        try {
+          byte[] audio = TextToSpeechService.synthesize(text, languageCode, FORMAT);
+          if (audio == null) {
+            FAILED.increment();
+            synchronized (ENTRIES) {
+              ENTRIES.remove(key, entry);
+            }
+          } else {
+            UsageMeter.recordSpeech(username, toLang, text.length());
+          }
+          entry.audio.complete(audio);
+        } finally {
+          release(caller);
+        }
+      });
+      SCHEDULED.increment();
+    } catch (RejectedExecutionException e) {
+      SKIPPED.increment();
+      release(caller);
+      synchronized (ENTRIES) {
+        ENTRIES.remove(key, entry);
+      }
+      entry.audio.complete(null);
+    }
+  }
+
+  /**
+   * Get prefetched audio for a speech request, waiting for a synthesis still
+   * in progress
+   *
+   * @return the audio, or null if the caller has to synthesize it
+   */
+  public static byte[] take(String text, String languageCode, SpeechFormat format) {
+    if (!ENABLED) {
+      return null;
+    }
+
+    String key = key(text, languageCode, format);
+    Entry entry;
+    synchronized (ENTRIES) {
+      entry = ENTRIES.get(key);
+      if (entry != null && entry.isExpired()) {
+        ENTRIES.remove(key);
+        entry.discard();
+        entry = null;
+      }
+    }
+    if (entry == null) {
+      MISSES.increment();
+      return null;
+    }
+
+    long started = RequestTiming.start();
+    try {
+      byte[] audio = entry.audio.get(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+      if (audio == null) {
+        MISSES.increment();
+        return null;
+      }
+      entry.used = true;
+      HITS.increment();
+      return audio;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException | TimeoutException e) {
+      System.err.println("Error waiting for prefetched speech: " + e.getMessage());
+    } finally {
+      RequestTiming.stop("tts", started);
+    }
+    MISSES.increment();
+    return null;
+  }
+
+  /**
+   * Stop the prefetch threads; pending syntheses are dropped
+   */
+  public static void shutdown() {
+    POOL.shutdownNow();
+  }
+
+  private static void release(String caller) {
+    PENDING.computeIfPresent(caller, (name, count) -> count > 1 ? count - 1 : null);
+  }
+
+  private static String key(String text, String languageCode, SpeechFormat format) {
+    byte[] hash = TextCodec.hash(format.key() + '\n' + languageCode + '\n' + text);
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+  }
+
+  private static SpeechFormat prefetchFormat() {
+    try {
+      return SpeechFormat.negotiate(AppConfig.get("tts.prefetch.format", null), null, null, null);
+    } catch (IllegalArgumentException e) {
+      System.err.println("Invalid tts.prefetch.format, using the default: " + e.getMessage());
+      return SpeechFormat.DEFAULT;
+    }
+  }
+
+  private static final class Entry {
+    private final CompletableFuture<byte[]> audio = new CompletableFuture<>();
+    private final long expiresAt = System.currentTimeMillis() + TTL_MILLIS;
+    private volatile boolean used;
+
+    private boolean isExpired() {
+      return System.currentTimeMillis() >= expiresAt;
+    }
+
+    // Counts speculation that was paid for but never played
+    private void discard() {
+      if (!used && audio.getNow(null) != null) {
+        WASTED.increment();
+      }
+    }
+  }
+}
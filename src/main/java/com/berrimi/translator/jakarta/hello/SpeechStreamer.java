@@ -0,0 +1,301 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.cloud.texttospeech.v1.TextToSpeechClient;
+
+import jakarta.ws.rs.core.StreamingOutput;
+
+/**
+ * Speaks long texts as a stream of audio.
+ *
+ * The text is cut at sentence ends into chunks of up to
+ * {@code tts.stream.chunkChars}; the first chunk is a single sentence so
+ * playback can start early. At most {@code tts.stream.maxInFlight} chunks are
+ * synthesized at once, and each chunk's MP3 frames are written as soon as it
+ * and every chunk before it are ready. The clips are joined into one stream:
+ * MP3 frames are self-contained once any leading ID3 tag is dropped, Ogg
+ * allows one logical stream to follow another, and WAV gets a single header
+ * with an open-ended length followed by each chunk's samples.
+ *
+ * A failed first chunk fails the request; a later chunk that fails is left
+ * out, since the response status has already been sent by then. A stream
+ * whose body is not being written {@code tts.stream.abandonSeconds} after it
+ * was opened, e.g. because the client left, is closed and its syntheses
+ * cancelled.
+ */
+public final class SpeechStreamer {
+
+  private static final int CHUNK_CHARS = Math.max(50, AppConfig.getInt("tts.stream.chunkChars", 400));
+  // The API limits input to 5000 bytes; Arabic script takes two bytes a character
+  private static final int MAX_CHUNK_CHARS = Math.max(CHUNK_CHARS, AppConfig.getInt("tts.stream.maxChunkChars", 1500));
+  private static final int MAX_IN_FLIGHT = Math.max(1, AppConfig.getInt("tts.stream.maxInFlight", 3));
+  private static final int THREADS = Math.max(1, AppConfig.getInt("tts.stream.threads", 8));
+  private static final long ABANDON_SECONDS = Math.max(1, AppConfig.getLong("tts.stream.abandonSeconds", 60));
+
+  private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+  private static final ExecutorService POOL = Executors.newFixedThreadPool(THREADS, runnable -> {
+    Thread thread = new Thread(runnable, "speech-streamer-" + THREAD_COUNTER.incrementAndGet());
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private static final LongAdder STREAMS = new LongAdder();
+  private static final LongAdder CHUNKS = new LongAdder();
+  private static final LongAdder FAILED_CHUNKS = new LongAdder();
+  private static final LongAdder ABANDONED = new LongAdder();
+
+  static {
+    Metrics.gauge("tts.stream.streams", STREAMS::sum);
+    Metrics.gauge("tts.stream.chunks", CHUNKS::sum);
+    Metrics.gauge("tts.stream.failedChunks", FAILED_CHUNKS::sum);
+    Metrics.gauge("tts.stream.abandoned", ABANDONED::sum);
+  }
+
+  private SpeechStreamer() {
+  }
+
+  /**
+   * Check whether a text is long enough to be spoken in several chunks
+   */
+  public static boolean isLong(String text) {
+    return text.length() > CHUNK_CHARS;
+  }
+
+  /**
+   * Start speaking a text. Returns once the first chunk is synthesized, so a
+   * failure can still be reported with a status code.
+   *
+   * @return the rest of the speech as a response body, or null if the first
+   *         chunk could not be synthesized
+   */
+  public static StreamingOutput open(String text, String languageCode, SpeechFormat format) {
+    List<String> chunks = split(text);
+    TextToSpeechClient client;
+    try {
+      client = TextToSpeechClient.create();
+    } catch (IOException e) {
+      System.err.println("Error creating text-to-speech client: " + e.getMessage());
+      return null;
+    }
+
+    ArrayDeque<Future<byte[]>> window = new ArrayDeque<>(MAX_IN_FLIGHT);
+    int[] next = { 0 };
+    while (next[0] < chunks.size() && window.size() < MAX_IN_FLIGHT) {
+      window.add(submit(client, chunks.get(next[0]++), languageCode, format));
+    }
+
+    byte[] first;
+    try {
+      first = window.poll().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      first = null;
+    } catch (ExecutionException e) {
+      first = null;
+    }
+    if (first == null) {
+      close(client, window);
+      return null;
+    }
+
+    STREAMS.increment();
+    byte[] firstAudio = first;
+    // Whoever sets this first owns the client and the window: the body or the cleanup
+    AtomicBoolean claimed = new AtomicBoolean();
+    CompletableFuture.delayedExecutor(ABANDON_SECONDS, TimeUnit.SECONDS, POOL).execute(() -> {
+      if (claimed.compareAndSet(false, true)) {
+        ABANDONED.increment();
+        close(client, window);
+      }
+    });
+    return output -> {
+      if (!claimed.compareAndSet(false, true)) {
+        throw new IOException("Speech stream was abandoned before it was written");
+      }
+      try {
+        write(output, firstAudio, format.codec(), false);
+        while (!window.isEmpty()) {
+          if (next[0] < chunks.size()) {
+            window.add(submit(client, chunks.get(next[0]++), languageCode, format));
+          }
+          writeNext(window, output, format.codec());
+        }
+      } finally {
+        // Client went away: stop synthesizing what nobody will hear
+        close(client, window);
+      }
+    };
+  }
+
+  /**
+   * Stop the synthesis threads
+   */
+  public static void shutdown() {
+    POOL.shutdownNow();
+  }
+
+  /**
+   * Cut a text at sentence ends into chunks: the first sentence alone, then
+   * sentences packed up to the chunk size. A sentence over the hard limit is
+   * cut at a space.
+   */
+  static List<String> split(String text) {
+    List<String> sentences = new ArrayList<>();
+    int start = 0;
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      boolean end = c == '\n'
+          || ((c == '.' || c == '!' || c == '?' || c == '\u061F' || c == '\u2026')
+              && (i + 1 == text.length() || Character.isWhitespace(text.charAt(i + 1))));
+      if (end) {
+        addSentence(sentences, text.substring(start, i + 1));
+        start = i + 1;
+      }
+    }
+    addSentence(sentences, text.substring(start));
+
+    List<String> chunks = new ArrayList<>();
+    StringBuilder chunk = new StringBuilder();
+    for (String sentence : sentences) {
+      if (chunk.length() > 0 && (chunks.isEmpty() || chunk.length() + sentence.length() > CHUNK_CHARS)) {
+        chunks.add(chunk.toString());
+        chunk.setLength(0);
+      }
+      if (chunk.length() > 0) {
+        chunk.append(' ');
+      }
+      chunk.append(sentence);
+    }
+    if (chunk.length() > 0) {
+      chunks.add(chunk.toString());
+    }
+    return chunks;
+  }
+
+  private static void addSentence(List<String> sentences, String sentence) {
+    String rest = sentence.trim();
+    while (rest.length() > MAX_CHUNK_CHARS) {
+      int cut = rest.lastIndexOf(' ', MAX_CHUNK_CHARS);
+      if (cut <= 0) {
+        cut = MAX_CHUNK_CHARS;
+      }
+      sentences.add(rest.substring(0, cut));
+      rest = rest.substring(cut).trim();
+    }
+    if (!rest.isEmpty()) {
+      sentences.add(rest);
+    }
+  }
+
+  private static Future<byte[]> submit(TextToSpeechClient client, String chunk, String languageCode,
+      SpeechFormat format) {
+    return POOL.submit(() -> {
+      CHUNKS.increment();
+      byte[] audio = TextToSpeechService.synthesize(client, chunk, languageCode, format);
+      if (audio == null) {
+        FAILED_CHUNKS.increment();
+      }
+      return audio;
+    });
+  }
+
+  private static void close(TextToSpeechClient client, ArrayDeque<Future<byte[]>> window) {
+    window.forEach(future -> future.cancel(true));
+    client.close();
+  }
+
+  private static void writeNext(ArrayDeque<Future<byte[]>> window, OutputStream output, SpeechFormat.Codec codec)
+      throws IOException {
+    try {
+      byte[] audio = window.poll().get();
+      if (audio != null) {
+        write(output, audio, codec, true);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while synthesizing speech", e);
+    } catch (ExecutionException e) {
+      throw new IOException("Error synthesizing speech chunk", e.getCause());
+    }
+  }
+
+  private static void write(OutputStream output, byte[] audio, SpeechFormat.Codec codec, boolean continuation)
+      throws IOException {
+    int offset = 0;
+    switch (codec) {
+      case MP3:
+        offset = continuation ? id3Length(audio) : 0;
+        break;
+      case LINEAR16:
+        int data = wavDataOffset(audio);
+        if (data < 0) {
+          break;
+        }
+        if (continuation) {
+          offset = data;
+        } else {
+          // The total length is unknown until the last chunk; players read to the end
+          audio = audio.clone();
+          setUnknownLength(audio, 4);
+          setUnknownLength(audio, data - 4);
+        }
+        break;
+      default:
+        break;
+    }
+    output.write(audio, offset, audio.length - offset);
+    output.flush();
+  }
+
+  /**
+   * Offset of the samples in a WAV file, or -1 if it has no data chunk
+   */
+  private static int wavDataOffset(byte[] audio) {
+    if (audio.length < 12 || audio[0] != 'R' || audio[1] != 'I' || audio[2] != 'F' || audio[3] != 'F') {
+      return -1;
+    }
+    int offset = 12;
+    while (offset + 8 <= audio.length) {
+      long size = (audio[offset + 4] & 0xffL) | (audio[offset + 5] & 0xffL) << 8
+          | (audio[offset + 6] & 0xffL) << 16 | (audio[offset + 7] & 0xffL) << 24;
+      if (audio[offset] == 'd' && audio[offset + 1] == 'a' && audio[offset + 2] == 't' && audio[offset + 3] == 'a') {
+        return offset + 8;
+      }
+      // Chunks are padded to an even size
+      offset += 8 + (int) Math.min(audio.length, size + (size & 1));
+    }
+    return -1;
+  }
+
+  private static void setUnknownLength(byte[] audio, int offset) {
+    for (int i = 0; i < 4; i++) {
+      audio[offset + i] = (byte) 0xff;
+    }
+  }
+
+  /**
+   * Length of a leading ID3v2 tag, which is only valid at the start of a file
+   */
+  private static int id3Length(byte[] audio) {
+    if (audio.length < 10 || audio[0] != 'I' || audio[1] != 'D' || audio[2] != '3') {
+      return 0;
+    }
+    // Tag size is a 28-bit syncsafe integer after the 10-byte header
+    int size = (audio[6] & 0x7f) << 21 | (audio[7] & 0x7f) << 14 | (audio[8] & 0x7f) << 7 | (audio[9] & 0x7f);
+    return Math.min(audio.length, 10 + size);
+  }
+}
@@ -0,0 +1,459 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import org.sqlite.BusyHandler;
+
+/**
+ * Times every SQL statement run on the SQLite connections handed out by
+ * {@link DatabaseManager} and {@link HistoryPartitions}.
+ *
+ * Connections, statements and result sets are wrapped in dynamic proxies. An
+ * execution lasts from the execute call until its result set is closed, so
+ * reading the rows counts too; SQLite does most of a query's work while
+ * stepping through them. Executions are aggregated per SQL template (the
+ * statement text with whitespace collapsed and partition schemas replaced by
+ * {@code p?}), which {@link MetricsResource} serves at /api/metrics/sql.
+ *
+ * A busy handler replaces {@code busy_timeout}: it waits with the same
+ * backoff for up to {@code db.busyTimeoutMillis}, and counts every retry
+ * against the statement that hit the lock. Statements slower than
+ * {@code db.slowMillis} are logged with their {@code EXPLAIN QUERY PLAN},
+ * which is captured on the same connection, so attached partitions resolve,
+ * and kept for {@code db.planMaxAgeMillis}.
+ */
+public final class SqlMonitor {
+
+  private static final boolean ENABLED = AppConfig.getBoolean("db.instrument", true);
+  private static final long SLOW_NANOS = AppConfig.getLong("db.slowMillis", 100) * 1_000_000L;
+  private static final int BUSY_TIMEOUT_MILLIS = AppConfig.getInt("db.busyTimeoutMillis", 5000);
+  private static final long PLAN_MAX_AGE_MILLIS = AppConfig.getLong("db.planMaxAgeMillis", 600_000);
+  // Dynamic SQL could otherwise grow the table without bound
+  private static final int MAX_TEMPLATES = AppConfig.getInt("db.maxTemplates", 1000);
+
+  // SQLite's own busy backoff in milliseconds; the last delay repeats
+  private static final int[] BUSY_DELAYS = { 1, 2, 5, 10, 15, 20, 25, 25, 25, 50, 50, 100 };
+
+  // Latency histogram buckets: bucket i holds executions under 2^i microseconds
+  private static final int BUCKETS = 32;
+
+  private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+  private static final Pattern PARTITION_SCHEMA = Pattern.compile("\\bp\\d{6}\\b");
+
+  // Statement text as prepared, and normalized, to template
+  private static final Map<String, Template> BY_SQL = new ConcurrentHashMap<>();
+  private static final Map<String, Template> TEMPLATES = new ConcurrentHashMap<>();
+  private static final Template OTHER = new Template("(other statements)");
+
+  private static final LongAdder EXECUTIONS = new LongAdder();
+  private static final LongAdder SLOW = new LongAdder();
+  private static final LongAdder BUSY_RETRIES = new LongAdder();
+  private static final LongAdder BUSY_TIMEOUTS = new LongAdder();
+
+  // Retries of the statement running on this thread; the handler runs inside its step
+  private static final ThreadLocal<long[]> THREAD_BUSY_RETRIES = ThreadLocal.withInitial(() -> new long[1]);
+
+  private static final BusyHandler BUSY_HANDLER = new BusyHandler() {
+    @Override
+    protected int callback(int retries) {
+      int delay = BUSY_DELAYS[Math.min(retries, BUSY_DELAYS.length - 1)];
+      if (waited(retries) + delay > BUSY_TIMEOUT_MILLIS) {
+        BUSY_TIMEOUTS.increment();
+        return 0;
+      }
+      BUSY_RETRIES.increment();
+      THREAD_BUSY_RETRIES.get()[0]++;
+      try {
+        Thread.sleep(delay);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return 0;
+      }
+      return 1;
+    }
+  };
+
+  static {
+    Metrics.gauge("db.statements", EXECUTIONS::sum);
+    Metrics.gauge("db.slowStatements", SLOW::sum);
+    Metrics.gauge("db.busyRetries", BUSY_RETRIES::sum);
+    Metrics.gauge("db.busyTimeouts", BUSY_TIMEOUTS::sum);
+    Metrics.gauge("db.templates", TEMPLATES::size);
+  }
+
+  private SqlMonitor() {
+  }
+
+  /**
+   * Instrument a SQLite connection. Installs the busy handler, so call it
+   * after any {@code PRAGMA busy_timeout}, which would replace the handler.
+   */
+  public static Connection wrap(Connection conn) throws SQLException {
+    if (!ENABLED) {
+      return conn;
+    }
+    BusyHandler.setHandler(conn, BUSY_HANDLER);
+    return (Connection) Proxy.newProxyInstance(SqlMonitor.class.getClassLoader(),
+        new Class<?>[] { Connection.class }, new ConnectionHandler(conn));
+  }
+
+  /**
+   * Per-template statistics, slowest total first
+   */
+  public static List<Template> templates() {
+    List<Template> templates = new ArrayList<>(TEMPLATES.values());
+    if (OTHER.executions.sum() > 0) {
+      templates.add(OTHER);
+    }
+    templates.sort(Comparator.comparingLong((Template template) -> template.nanos.sum()).reversed());
+    return templates;
+  }
+
+  /**
+   * Statistics of one SQL template
+   */
+  public static final class Template {
+    private final String sql;
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder busyRetries = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+    private volatile String plan;
+    private volatile long planCapturedAt;
+
+    private Template(String sql) {
+      this.sql = sql;
+    }
+
+    public String sql() {
+      return sql;
+    }
+
+    public long executions() {
+      return executions.sum();
+    }
+
+    public long errors() {
+      return errors.sum();
+    }
+
+    public long rows() {
+      return rows.sum();
+    }
+
+    public long busyRetries() {
+      return busyRetries.sum();
+    }
+
+    public double totalMillis() {
+      return nanos.sum() / 1e6;
+    }
+
+    public double maxMillis() {
+      return maxNanos.get() / 1e6;
+    }
+
+    /**
+     * Upper bound of the latency bucket holding the given fraction of
+     * executions, in milliseconds
+     */
+    public double percentileMillis(double fraction) {
+      long total = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        total += histogram.get(i);
+      }
+      long rank = (long) Math.ceil(fraction * total);
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        seen += histogram.get(i);
+        if (seen >= rank && seen > 0) {
+          return (1L << i) / 1e3;
+        }
+      }
+      return 0;
+    }
+
+    /**
+     * Last captured query plan, or null if the template was never slow
+     */
+    public String plan() {
+      return plan;
+    }
+
+    private void record(long elapsed, long rowCount, long retries, boolean failed) {
+      executions.increment();
+      nanos.add(elapsed);
+      maxNanos.accumulate(elapsed);
+      rows.add(rowCount);
+      if (retries > 0) {
+        busyRetries.add(retries);
+      }
+      if (failed) {
+        errors.increment();
+      }
+      long micros = elapsed / 1000;
+      histogram.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros)));
+    }
+  }
+
+  private static Template template(String sql) {
+    Template template = BY_SQL.get(sql);
+    if (template != null) {
+      return template;
+    }
+
+    String normalized = PARTITION_SCHEMA.matcher(WHITESPACE.matcher(sql.trim()).replaceAll(" ")).replaceAll("p?");
+    template = TEMPLATES.get(normalized);
+    if (template == null) {
+      if (TEMPLATES.size() >= MAX_TEMPLATES) {
+        return OTHER;
+      }
+      template = TEMPLATES.computeIfAbsent(normalized, Template::new);
+    }
+    // Each partition's text maps here too, a few a month
+    if (BY_SQL.size() < MAX_TEMPLATES * 4) {
+      BY_SQL.putIfAbsent(sql, template);
+    }
+    return template;
+  }
+
+  // Total milliseconds SQLite's backoff has slept before this retry
+  private static long waited(int retries) {
+    long total = 0;
+    for (int i = 0; i < retries; i++) {
+      total += BUSY_DELAYS[Math.min(i, BUSY_DELAYS.length - 1)];
+    }
+    return total;
+  }
+
+  private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * One execution of a statement, open until its rows are read
+   */
+  private static final class Execution {
+    private final Connection conn;
+    private final String sql;
+    private final Template template;
+    private final long busyRetriesBefore;
+    private long nanos;
+    private long rows;
+    private boolean failed;
+    private boolean finished;
+
+    private Execution(Connection conn, String sql, Template template) {
+      this.conn = conn;
+      this.sql = sql;
+      this.template = template;
+      this.busyRetriesBefore = THREAD_BUSY_RETRIES.get()[0];
+    }
+
+    private void finish() {
+      if (finished) {
+        return;
+      }
+      finished = true;
+      long retries = THREAD_BUSY_RETRIES.get()[0] - busyRetriesBefore;
+      EXECUTIONS.increment();
+      template.record(nanos, rows, retries, failed);
+      if (nanos >= SLOW_NANOS) {
+        SLOW.increment();
+        System.out.println(String.format(Locale.ROOT, "Slow SQL: %.1f ms, %d rows, %d busy retries: %s",
+            nanos / 1e6, rows, retries, template.sql) + planOf(this));
+      }
+    }
+  }
+
+  private static String planOf(Execution execution) {
+    Template template = execution.template;
+    String head = template.sql.length() < 8 ? "" : template.sql.substring(0, 7).toUpperCase(Locale.ROOT);
+    if (!(head.startsWith("SELECT") || head.startsWith("INSERT") || head.startsWith("UPDATE")
+        || head.startsWith("DELETE") || head.startsWith("WITH") || head.startsWith("REPLACE"))) {
+      return "";
+    }
+
+    long now = System.currentTimeMillis();
+    if (template.plan == null || now - template.planCapturedAt > PLAN_MAX_AGE_MILLIS) {
+      template.planCapturedAt = now;
+      template.plan = explain(execution.conn, execution.sql);
+    }
+    return "\n" + template.plan;
+  }
+
+  private static String explain(Connection conn, String sql) {
+    StringBuilder plan = new StringBuilder();
+    try (PreparedStatement pstmt = conn.prepareStatement("EXPLAIN QUERY PLAN " + sql);
+        ResultSet rs = pstmt.executeQuery()) {
+      // Rows are id, parent, notused, detail; children follow their parent
+      Map<Integer, Integer> depth = new HashMap<>();
+      while (rs.next()) {
+        int level = depth.getOrDefault(rs.getInt("parent"), 0) + 1;
+        depth.put(rs.getInt("id"), level);
+        if (plan.length() > 0) {
+          plan.append('\n');
+        }
+        plan.append("  ".repeat(level)).append(rs.getString("detail"));
+      }
+    } catch (SQLException e) {
+      plan.append("  (no plan: ").append(e.getMessage()).append(')');
+    }
+    return plan.toString();
+  }
+
+  private static final class ConnectionHandler implements InvocationHandler {
+    private final Connection conn;
+
+    private ConnectionHandler(Connection conn) {
+      this.conn = conn;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      Object result = SqlMonitor.invoke(conn, method, args);
+      switch (method.getName()) {
+        case "prepareStatement":
+          return Proxy.newProxyInstance(SqlMonitor.class.getClassLoader(),
+              new Class<?>[] { PreparedStatement.class },
+              new StatementHandler(conn, (Statement) result, (String) args[0]));
+        case "createStatement":
+          return Proxy.newProxyInstance(SqlMonitor.class.getClassLoader(),
+              new Class<?>[] { Statement.class }, new StatementHandler(conn, (Statement) result, null));
+        default:
+          return result;
+      }
+    }
+  }
+
+  private static final class StatementHandler implements InvocationHandler {
+    private final Connection conn;
+    private final Statement statement;
+    private final String preparedSql;
+    private final Template preparedTemplate;
+    private Execution current;
+
+    private StatementHandler(Connection conn, Statement statement, String preparedSql) {
+      this.conn = conn;
+      this.statement = statement;
+      this.preparedSql = preparedSql;
+      this.preparedTemplate = preparedSql == null ? null : template(preparedSql);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      String name = method.getName();
+      if (!name.startsWith("execute")) {
+        if (name.equals("close") && current != null) {
+          current.finish();
+        }
+        return SqlMonitor.invoke(statement, method, args);
+      }
+
+      // A new execution closes the previous one's result set
+      if (current != null) {
+        current.finish();
+      }
+      Execution execution = args != null && args.length > 0 && args[0] instanceof String sql
+          ? new Execution(conn, sql, template(sql))
+          : new Execution(conn, preparedSql, preparedTemplate);
+      current = execution;
+
+      long started = System.nanoTime();
+      Object result;
+      try {
+        result = SqlMonitor.invoke(statement, method, args);
+      } catch (Throwable e) {
+        execution.nanos = System.nanoTime() - started;
+        execution.failed = true;
+        execution.finish();
+        throw e;
+      }
+      execution.nanos = System.nanoTime() - started;
+
+      if (result instanceof ResultSet rs) {
+        return Proxy.newProxyInstance(SqlMonitor.class.getClassLoader(), new Class<?>[] { ResultSet.class },
+            new ResultSetHandler(rs, execution));
+      }
+      if (result instanceof Integer count) {
+        execution.rows = Math.max(0, count);
+      } else if (result instanceof Long count) {
+        execution.rows = Math.max(0, count);
+      } else if (result instanceof int[] counts) {
+        for (int count : counts) {
+          execution.rows += Math.max(0, count);
+        }
+      } else if (result instanceof long[] counts) {
+        for (long count : counts) {
+          execution.rows += Math.max(0, count);
+        }
+      }
+      execution.finish();
+      return result;
+    }
+  }
+
+  private static final class ResultSetHandler implements InvocationHandler {
+    private final ResultSet rs;
+    private final Execution execution;
+
+    private ResultSetHandler(ResultSet rs, Execution execution) {
+      this.rs = rs;
+      this.execution = execution;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      switch (method.getName()) {
+        case "next":
+          long started = System.nanoTime();
+          try {
+            boolean more = rs.next();
+            if (more) {
+              execution.rows++;
+            }
+            return more;
+          } catch (SQLException e) {
+            execution.failed = true;
+            throw e;
+          } finally {
+            execution.nanos += System.nanoTime() - started;
+          }
+        case "close":
+          try {
+            return SqlMonitor.invoke(rs, method, args);
+          } finally {
+            execution.finish();
+          }
+        default:
+          return SqlMonitor.invoke(rs, method, args);
+      }
+    }
+  }
+}
@@ -0,0 +1,481 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * History in the local SQLite file, with texts in {@link TextStore} and older
+ * months in {@link HistoryPartitions}.
+ */
+public class SqliteHistoryStore implements HistoryStore {
+
+  private static final int EXPORT_FETCH_SIZE = AppConfig.getInt("export.fetchSize", 500);
+
+  private static final String SELECT_HISTORY = selectHistory("main");
+
+  private static final String KEY_SETTING = "ids.key";
+
+  /**
+   * Load the history id key, generating it on first start, and move the id
+   * sequence past the newest stored row
+   */
+  public SqliteHistoryStore() {
+    try (Connection conn = DatabaseManager.openConnection()) {
+      try (PreparedStatement insert = conn.prepareStatement(
+          "INSERT OR IGNORE INTO settings (name, value) VALUES (?, ?)")) {
+        insert.setString(1, KEY_SETTING);
+        insert.setBytes(2, HistoryIds.generateKey());
+        insert.executeUpdate();
+      }
+
+      byte[] key;
+      try (PreparedStatement select = conn.prepareStatement("SELECT value FROM settings WHERE name = ?")) {
+        select.setString(1, KEY_SETTING);
+        try (ResultSet rs = select.executeQuery()) {
+          if (!rs.next()) {
+            throw new SQLException("Setting " + KEY_SETTING + " is missing after inserting it");
+          }
+          key = rs.getBytes(1);
+        }
+      }
+      try (Statement stmt = conn.createStatement();
+          ResultSet rs = stmt.executeQuery("SELECT MAX(id) FROM translation_history")) {
+        // An aggregate always has one row; MAX is NULL, read as 0, when there are none
+        HistoryIds.initialize(key, rs.next() ? rs.getLong(1) : 0);
+      }
+    } catch (SQLException e) {
+      throw new IllegalStateException("Cannot load history id key: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Add translations and assign their ids. The texts, the rows and the cleanup
+   * share one transaction on a dedicated connection, so a concurrent delete
+   * cannot collect a text between storing it and referencing it.
+   */
+  @Override
+  public boolean addTranslations(String username, List<TranslationHistory> histories) {
+    String sql = """
+        INSERT INTO translation_history
+        (id, user_id, original_id, translated_id, target_lang, timestamp)
+        SELECT ?, id, ?, ?, ?, ? FROM users WHERE username = ?
+        """;
+
+    try (Connection conn = DatabaseManager.openConnection()) {
+      conn.setAutoCommit(false);
+      try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        for (TranslationHistory history : histories) {
+          long id = HistoryIds.next();
+          history.setId(HistoryIds.toExternal(id));
+
+          pstmt.setLong(1, id);
+          pstmt.setLong(2, TextStore.put(conn, history.getOriginalText()));
+          pstmt.setLong(3, TextStore.put(conn, history.getTranslatedText()));
+          pstmt.setString(4, history.getTargetLang());
+          pstmt.setLong(5, history.getTimestamp().getTime());
+          pstmt.setString(6, username);
+          pstmt.addBatch();
+        }
+
+        // Rows select their user id, so an unknown user inserts nothing
+        for (int count : pstmt.executeBatch()) {
+          if (count == 0) {
+            conn.rollback();
+            System.err.println("Error adding translation history: unknown user " + username);
+            return false;
+          }
+        }
+        if (!histories.isEmpty()) {
+          // Clean up old history entries if exceeded max
+          cleanupOldHistory(conn, userId(conn, username));
+        }
+        conn.commit();
+      } catch (SQLException e) {
+        conn.rollback();
+        throw e;
+      }
+      return true;
+
+    } catch (SQLException e) {
+      System.err.println("Error adding translation history: " + e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Get user's translation history (most recent first). Archive partitions
+   * holding the user's rows are only attached, newest first, while fewer rows
+   * than the limit have been read.
+   */
+  @Override
+  public List<TranslationHistory> getHistory(String username) {
+    List<TranslationHistory> historyList = new ArrayList<>();
+    String where = """
+        WHERE u.username = ?
+        ORDER BY h.id DESC
+        LIMIT ?
+        """;
+
+    List<YearMonth> partitions = List.of();
+    try (Connection conn = DatabaseManager.openConnection()) {
+      readHistory(conn, SELECT_HISTORY + where, username, historyList);
+      Long userId = userId(conn, username);
+      if (historyList.size() < MAX_HISTORY_PER_USER && userId != null) {
+        partitions = HistoryPartitions.newestFirst(conn, userId);
+      }
+    } catch (SQLException e) {
+      System.err.println("Error getting translation history: " + e.getMessage());
+    }
+
+    if (partitions.isEmpty()) {
+      return historyList;
+    }
+
+    try (Connection conn = DatabaseManager.openConnection()) {
+      for (YearMonth month : partitions) {
+        if (historyList.size() >= MAX_HISTORY_PER_USER) {
+          break;
+        }
+        HistoryPartitions.attach(conn, month);
+        try {
+          readHistory(conn, selectHistory(HistoryPartitions.schema(month)) + where, username, historyList);
+        } finally {
+          HistoryPartitions.detach(conn, month);
+        }
+      }
+    } catch (SQLException e) {
+      System.err.println("Error getting translation history from partitions: " + e.getMessage());
+    }
+
+    return historyList;
+  }
+
+  /**
+   * Stream a user's history (or everyone's, when username is null) in
+   * [from, to) oldest first from a forward-only cursor, without collecting the
+   * rows; null bounds are open. Only the archive partitions overlapping the
+   * range are attached and read, in one UNION ALL with the main file (or
+   * several, when more partitions are needed than SQLite can attach at once).
+   * Uses a dedicated connection because the caller keeps it open while writing
+   * the response. The export reads one snapshot; in WAL mode writers carry on
+   * meanwhile instead of waiting for it.
+   */
+  @Override
+  public void exportHistory(String username, Instant from, Instant to, HistoryRepository.RowHandler handler)
+      throws SQLException, IOException {
+
+    Long fromMillis = from == null ? null : from.toEpochMilli();
+    Long toMillis = to == null ? null : to.toEpochMilli();
+    List<YearMonth> partitions = HistoryPartitions.overlapping(fromMillis, toMillis);
+
+    try (Connection conn = DatabaseManager.openConnection()) {
+      int groupStart = 0;
+      do {
+        int groupEnd = Math.min(partitions.size(), groupStart + HistoryPartitions.MAX_ATTACHED);
+        List<YearMonth> group = partitions.subList(groupStart, groupEnd);
+        // The main file may still hold rows of any month, so it goes in the last group
+        boolean includeMain = groupEnd == partitions.size();
+        exportGroup(conn, group, includeMain, username, fromMillis, toMillis, handler);
+        groupStart = groupEnd;
+      } while (groupStart < partitions.size());
+    }
+  }
+
+  private static void exportGroup(Connection conn, List<YearMonth> group, boolean includeMain, String username,
+      Long fromMillis, Long toMillis, HistoryRepository.RowHandler handler) throws SQLException, IOException {
+
+    // Ids are time-ordered, so time bounds become rowid bounds
+    StringBuilder where = new StringBuilder("WHERE 1 = 1");
+    List<Object> params = new ArrayList<>();
+    if (username != null) {
+      where.append(" AND u.username = ?");
+      params.add(username);
+    }
+    if (fromMillis != null) {
+      where.append(" AND h.id >= ?");
+      params.add(HistoryIds.lowerBound(fromMillis));
+    }
+    if (toMillis != null) {
+      where.append(" AND h.id < ?");
+      params.add(HistoryIds.lowerBound(toMillis));
+    }
+
+    List<String> schemas = new ArrayList<>();
+    group.forEach(month -> schemas.add(HistoryPartitions.schema(month)));
+    if (includeMain) {
+      schemas.add("main");
+    }
+
+    StringBuilder sql = new StringBuilder();
+    for (String schema : schemas) {
+      if (sql.length() > 0) {
+        sql.append("UNION ALL\n");
+      }
+      sql.append(selectHistory(schema)).append(where).append('\n');
+    }
+    // Each leg reads in id order from its primary key or user index, so
+    // SQLite merges the legs rather than sorting the whole result
+    sql.append("ORDER BY id");
+
+    for (YearMonth month : group) {
+      HistoryPartitions.attach(conn, month);
+    }
+    try (PreparedStatement pstmt = conn.prepareStatement(sql.toString(), ResultSet.TYPE_FORWARD_ONLY,
+        ResultSet.CONCUR_READ_ONLY)) {
+
+      pstmt.setFetchSize(EXPORT_FETCH_SIZE);
+      int index = 1;
+      for (int leg = 0; leg < schemas.size(); leg++) {
+        for (Object param : params) {
+          pstmt.setObject(index++, param);
+        }
+      }
+
+      try (ResultSet rs = pstmt.executeQuery()) {
+        TranslationHistory row = new TranslationHistory();
+        while (rs.next()) {
+          // One reusable row object; handlers must not keep it
+          readRow(rs, row);
+          handler.handle(row);
+        }
+      }
+    } finally {
+      for (YearMonth month : group) {
+        HistoryPartitions.detach(conn, month);
+      }
+    }
+  }
+
+  /**
+   * Get a specific translation by ID. The id tells which month's partition to
+   * look in if the row is no longer in the main file.
+   */
+  @Override
+  public TranslationHistory getTranslationById(String id) {
+    long rowId = HistoryIds.fromExternal(id);
+    if (rowId < 0) {
+      return null;
+    }
+    String where = "WHERE h.id = ?";
+
+    try (Connection conn = DatabaseManager.openConnection()) {
+      TranslationHistory history = readById(conn, SELECT_HISTORY + where, rowId);
+      if (history != null) {
+        return history;
+      }
+    } catch (SQLException e) {
+      System.err.println("Error getting translation by ID: " + e.getMessage());
+    }
+
+    YearMonth month = HistoryIds.month(rowId);
+    if (!HistoryPartitions.exists(month)) {
+      return null;
+    }
+    try (Connection conn = DatabaseManager.openConnection()) {
+      HistoryPartitions.attach(conn, month);
+      return readById(conn, selectHistory(HistoryPartitions.schema(month)) + where, rowId);
+    } catch (SQLException e) {
+      System.err.println("Error getting translation by ID from partition " + month + ": " + e.getMessage());
+    }
+
+    return null;
+  }
+
+  /**
+   * Clear user's history, archived months included
+   */
+  @Override
+  public boolean clearHistory(String username) {
+    String sql = "DELETE FROM translation_history WHERE user_id = ?";
+
+    try (Connection conn = DatabaseManager.openConnection()) {
+      Long userId = userId(conn, username);
+      if (userId != null) {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+          pstmt.setLong(1, userId);
+          pstmt.executeUpdate();
+        }
+        HistoryPartitions.deleteUser(userId);
+      }
+      return true;
+
+    } catch (SQLException e) {
+      System.err.println("Error clearing history: " + e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Delete a specific translation by ID
+   */
+  @Override
+  public boolean deleteTranslation(String id, String username) {
+    long rowId = HistoryIds.fromExternal(id);
+    if (rowId < 0) {
+      return false;
+    }
+    String sql = """
+        DELETE FROM %s.translation_history
+        WHERE id = ? AND user_id = (SELECT id FROM main.users WHERE username = ?)
+        """;
+    int rowsAffected;
+
+    try (Connection conn = DatabaseManager.openConnection();
+        PreparedStatement pstmt = conn.prepareStatement(sql.formatted("main"))) {
+
+      pstmt.setLong(1, rowId);
+      pstmt.setString(2, username);
+      rowsAffected = pstmt.executeUpdate();
+
+    } catch (SQLException e) {
+      System.err.println("Error deleting translation: " + e.getMessage());
+      return false;
+    }
+
+    YearMonth month = HistoryIds.month(rowId);
+    if (rowsAffected == 0 && HistoryPartitions.exists(month)) {
+      try (Connection conn = DatabaseManager.openConnection()) {
+        HistoryPartitions.attach(conn, month);
+        try (PreparedStatement pstmt = conn.prepareStatement(sql.formatted(HistoryPartitions.schema(month)))) {
+          pstmt.setLong(1, rowId);
+          pstmt.setString(2, username);
+          rowsAffected = pstmt.executeUpdate();
+        }
+      } catch (SQLException e) {
+        System.err.println("Error deleting translation from partition " + month + ": " + e.getMessage());
+      }
+    }
+
+    return rowsAffected > 0;
+  }
+
+  /**
+   * Get count of translations for a user, archived months included
+   */
+  @Override
+  public int getHistoryCount(String username) {
+    String sql = "SELECT COUNT(*) as count FROM translation_history WHERE user_id = ?";
+    Long userId;
+    List<YearMonth> partitions;
+    int count = 0;
+
+    try (Connection conn = DatabaseManager.openConnection()) {
+      userId = userId(conn, username);
+      if (userId == null) {
+        return 0;
+      }
+      count += countHistory(conn, sql, userId);
+      partitions = HistoryPartitions.newestFirst(conn, userId);
+    } catch (SQLException e) {
+      System.err.println("Error getting history count: " + e.getMessage());
+      return count;
+    }
+
+    for (YearMonth month : partitions) {
+      try (Connection conn = HistoryPartitions.open(month)) {
+        count += countHistory(conn, sql, userId);
+      } catch (SQLException e) {
+        System.err.println("Error getting history count from partition " + month + ": " + e.getMessage());
+      }
+    }
+
+    return count;
+  }
+
+  /**
+   * Clean up old history entries if exceeded max
+   */
+  private static void cleanupOldHistory(Connection conn, long userId) throws SQLException {
+    String sql = """
+        DELETE FROM translation_history
+        WHERE user_id = ? AND id <= (
+            SELECT id FROM translation_history
+            WHERE user_id = ?
+            ORDER BY id DESC
+            LIMIT 1 OFFSET ?
+        )
+        """;
+
+    try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+      pstmt.setLong(1, userId);
+      pstmt.setLong(2, userId);
+      pstmt.setInt(3, MAX_HISTORY_PER_USER);
+      pstmt.executeUpdate();
+    }
+  }
+
+  private static String selectHistory(String schema) {
+    return """
+        SELECT h.id AS id, u.username, o.codec AS original_codec, o.body AS original_body,
+            t.codec AS translated_codec, t.body AS translated_body, h.target_lang, h.timestamp
+        FROM %1$s.translation_history h
+        JOIN main.users u ON u.id = h.user_id
+        JOIN %1$s.texts o ON o.id = h.original_id
+        JOIN %1$s.texts t ON t.id = h.translated_id
+        """.formatted(schema);
+  }
+
+  private static Long userId(Connection conn, String username) throws SQLException {
+    try (PreparedStatement pstmt = conn.prepareStatement("SELECT id FROM users WHERE username = ?")) {
+      pstmt.setString(1, username);
+      ResultSet rs = pstmt.executeQuery();
+      return rs.next() ? rs.getLong("id") : null;
+    }
+  }
+
+  private static void readHistory(Connection conn, String sql, String username, List<TranslationHistory> historyList)
+      throws SQLException {
+
+    try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+      pstmt.setString(1, username);
+      pstmt.setInt(2, MAX_HISTORY_PER_USER - historyList.size());
+
+      ResultSet rs = pstmt.executeQuery();
+
+      while (rs.next()) {
+        TranslationHistory history = new TranslationHistory();
+        readRow(rs, history);
+        historyList.add(history);
+      }
+    }
+  }
+
+  private static TranslationHistory readById(Connection conn, String sql, long id) throws SQLException {
+    try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+      pstmt.setLong(1, id);
+      ResultSet rs = pstmt.executeQuery();
+
+      if (rs.next()) {
+        TranslationHistory history = new TranslationHistory();
+        readRow(rs, history);
+        return history;
+      }
+      return null;
+    }
+  }
+
+  private static int countHistory(Connection conn, String sql, long userId) throws SQLException {
+    try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+      pstmt.setLong(1, userId);
+      ResultSet rs = pstmt.executeQuery();
+      return rs.next() ? rs.getInt("count") : 0;
+    }
+  }
+
+  private static void readRow(ResultSet rs, TranslationHistory history) throws SQLException {
+    history.setId(HistoryIds.toExternal(rs.getLong("id")));
+    history.setUsername(rs.getString("username"));
+    history.setOriginalText(TextStore.read(rs, "original_codec", "original_body"));
+    history.setTranslatedText(TextStore.read(rs, "translated_codec", "translated_body"));
+    history.setTargetLang(rs.getString("target_lang"));
+    history.setTimestamp(rs.getTimestamp("timestamp"));
+  }
+}
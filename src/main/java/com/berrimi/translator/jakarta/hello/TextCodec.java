@@ -0,0 +1,216 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Content hashing and compression of stored translation texts.
+ *
+ * Codec ids: {@link #RAW} is plain UTF-8, {@link #DEFLATE} is raw deflate, and
+ * any id from {@link #FIRST_DICTIONARY} up is raw deflate primed with the
+ * trained dictionary of that id. Short texts gain nothing from deflate and are
+ * kept raw, as is anything that does not shrink.
+ */
+public final class TextCodec {
+
+  public static final int RAW = 0;
+  public static final int DEFLATE = 1;
+  public static final int FIRST_DICTIONARY = 2;
+
+  private static final int MIN_COMPRESS_BYTES = AppConfig.getInt("texts.compressMinBytes", 48);
+  private static final int LEVEL = AppConfig.getInt("texts.compressionLevel", 6);
+  private static final int HASH_BYTES = 16;
+
+  private static final Map<Integer, byte[]> DICTIONARIES = new ConcurrentHashMap<>();
+  private static volatile int currentDictionary = DEFLATE;
+
+  private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+  });
+  private static final ThreadLocal<Deflater> DEFLATERS = ThreadLocal.withInitial(() -> new Deflater(LEVEL, true));
+  private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(() -> new Inflater(true));
+
+  private TextCodec() {
+  }
+
+  /**
+   * An encoded text body with the codec that produced it
+   */
+  public record Encoded(int codec, byte[] body) {
+  }
+
+  /**
+   * Content address of a text: the first 16 bytes of its SHA-256
+   */
+  public static byte[] hash(String text) {
+    MessageDigest digest = SHA256.get();
+    digest.reset();
+    return Arrays.copyOf(digest.digest(text.getBytes(StandardCharsets.UTF_8)), HASH_BYTES);
+  }
+
+  /**
+   * Make a dictionary available for decoding, and for encoding if it is the newest
+   */
+  public static void registerDictionary(int id, byte[] dictionary) {
+    DICTIONARIES.put(id, dictionary);
+    if (id > currentDictionary) {
+      currentDictionary = id;
+    }
+  }
+
+  /**
+   * Check whether any trained dictionary has been registered
+   */
+  public static boolean hasDictionary() {
+    return currentDictionary >= FIRST_DICTIONARY;
+  }
+
+  /**
+   * Encode with the newest dictionary, or as-is when compression does not pay
+   */
+  public static Encoded encode(String text) {
+    byte[] raw = text.getBytes(StandardCharsets.UTF_8);
+    if (raw.length < MIN_COMPRESS_BYTES) {
+      return new Encoded(RAW, raw);
+    }
+
+    int codec = currentDictionary;
+    Deflater deflater = DEFLATERS.get();
+    deflater.reset();
+    if (codec >= FIRST_DICTIONARY) {
+      deflater.setDictionary(DICTIONARIES.get(codec));
+    }
+    deflater.setInput(raw);
+    deflater.finish();
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length);
+    byte[] buffer = new byte[Math.max(64, raw.length)];
+    while (!deflater.finished()) {
+      int n = deflater.deflate(buffer);
+      out.write(buffer, 0, n);
+      if (out.size() >= raw.length) {
+        return new Encoded(RAW, raw);
+      }
+    }
+    return new Encoded(codec, out.toByteArray());
+  }
+
+  /**
+   * Decode a stored body
+   */
+  public static String decode(int codec, byte[] body) {
+    if (codec == RAW) {
+      return new String(body, StandardCharsets.UTF_8);
+    }
+
+    Inflater inflater = INFLATERS.get();
+    inflater.reset();
+    if (codec >= FIRST_DICTIONARY) {
+      byte[] dictionary = DICTIONARIES.get(codec);
+      if (dictionary == null) {
+        throw new IllegalStateException("Unknown text dictionary " + codec);
+      }
+      inflater.setDictionary(dictionary);
+    }
+    inflater.setInput(body);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream(body.length * 4);
+    byte[] buffer = new byte[Math.max(256, body.length * 4)];
+    try {
+      while (!inflater.finished()) {
+        int n = inflater.inflate(buffer);
+        if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new IllegalStateException("Truncated text body");
+        }
+        out.write(buffer, 0, n);
+      }
+    } catch (DataFormatException e) {
+      throw new IllegalStateException("Corrupt text body: " + e.getMessage(), e);
+    }
+    return out.toString(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Train a deflate dictionary from sample texts.
+   *
+   * Word 1- to 3-grams are scored by occurrences times length; the best ones are
+   * packed into at most maxBytes, most valuable last, where deflate reaches them
+   * with the shortest distances.
+   *
+   * @return the dictionary, or null if the samples repeat too little to be worth one
+   */
+  public static byte[] train(List<String> samples, int maxBytes) {
+    Map<String, Integer> counts = new HashMap<>();
+    int maxEntries = 500_000;
+
+    for (String sample : samples) {
+      String[] words = sample.trim().split("\\s+");
+      for (int n = 1; n <= 3; n++) {
+        for (int i = 0; i + n <= words.length; i++) {
+          String gram = String.join(" ", Arrays.asList(words).subList(i, i + n));
+          if (gram.length() < 4) {
+            continue;
+          }
+          if (counts.size() < maxEntries || counts.containsKey(gram)) {
+            counts.merge(gram, 1, Integer::sum);
+          }
+        }
+      }
+    }
+
+    List<Map.Entry<String, Integer>> ranked = new ArrayList<>();
+    for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+      if (entry.getValue() >= 2) {
+        ranked.add(entry);
+      }
+    }
+    ranked.sort((a, b) -> Long.compare(
+        (long) b.getValue() * b.getKey().length(), (long) a.getValue() * a.getKey().length()));
+
+    List<String> picked = new ArrayList<>();
+    StringBuilder seen = new StringBuilder();
+    int size = 0;
+    for (Map.Entry<String, Integer> entry : ranked) {
+      String gram = entry.getKey();
+      int bytes = gram.getBytes(StandardCharsets.UTF_8).length + 1;
+      if (size + bytes > maxBytes) {
+        continue;
+      }
+      // Substrings of grams already picked add nothing
+      if (seen.indexOf(gram) >= 0) {
+        continue;
+      }
+      picked.add(gram);
+      seen.append(gram).append('\n');
+      size += bytes;
+      if (size >= maxBytes - 4) {
+        break;
+      }
+    }
+
+    if (size < 256) {
+      return null;
+    }
+
+    StringBuilder dictionary = new StringBuilder(size);
+    for (int i = picked.size() - 1; i >= 0; i--) {
+      dictionary.append(picked.get(i)).append(' ');
+    }
+    return dictionary.toString().getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,134 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Content-addressed storage of translation texts.
+ *
+ * Every distinct text is stored once in the {@code texts} table, keyed by
+ * {@link TextCodec#hash} and encoded by {@link TextCodec}; history rows refer to
+ * it by integer id. Triggers on translation_history keep a reference count and
+ * delete a text once the last row using it is gone.
+ */
+public final class TextStore {
+
+  private static final int TRAIN_MIN_TEXTS = AppConfig.getInt("texts.trainMinTexts", 1000);
+  private static final int TRAIN_SAMPLES = AppConfig.getInt("texts.trainSamples", 5000);
+  private static final int DICTIONARY_BYTES = Math.min(32 * 1024, AppConfig.getInt("texts.dictionaryBytes", 16 * 1024));
+
+  private TextStore() {
+  }
+
+  /**
+   * Get the id of a stored text, inserting it if it is new. Must run in the
+   * caller's transaction together with the row that references it, or a
+   * concurrent delete could collect the text in between.
+   */
+  public static long put(Connection conn, String text) throws SQLException {
+    byte[] hash = TextCodec.hash(text);
+
+    // Most texts are repeats; skip encoding them
+    Long id = find(conn, hash);
+    if (id != null) {
+      return id;
+    }
+
+    // A text stored since the lookup is left alone and found below
+    TextCodec.Encoded encoded = TextCodec.encode(text);
+    try (PreparedStatement insert = conn.prepareStatement(
+        "INSERT INTO texts (hash, codec, body) VALUES (?, ?, ?) ON CONFLICT (hash) DO NOTHING")) {
+      insert.setBytes(1, hash);
+      insert.setInt(2, encoded.codec());
+      insert.setBytes(3, encoded.body());
+      insert.executeUpdate();
+    }
+    return find(conn, hash);
+  }
+
+  private static Long find(Connection conn, byte[] hash) throws SQLException {
+    try (PreparedStatement select = conn.prepareStatement("SELECT id FROM texts WHERE hash = ?")) {
+      select.setBytes(1, hash);
+      try (ResultSet rs = select.executeQuery()) {
+        return rs.next() ? rs.getLong(1) : null;
+      }
+    }
+  }
+
+  /**
+   * Decode a text selected as a codec and a body column
+   */
+  public static String read(ResultSet rs, String codecColumn, String bodyColumn) throws SQLException {
+    return TextCodec.decode(rs.getInt(codecColumn), rs.getBytes(bodyColumn));
+  }
+
+  /**
+   * Register the stored dictionaries, and train the first one once enough texts exist
+   */
+  public static void initialize(Connection conn) throws SQLException {
+    try (Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT id, body FROM text_dictionaries")) {
+      while (rs.next()) {
+        TextCodec.registerDictionary(rs.getInt("id"), rs.getBytes("body"));
+      }
+    }
+
+    if (TextCodec.hasDictionary()) {
+      return;
+    }
+
+    List<String> samples = new ArrayList<>();
+    try (Statement stmt = conn.createStatement();
+        ResultSet count = stmt.executeQuery("SELECT COUNT(*) FROM texts")) {
+      if (count.getLong(1) < TRAIN_MIN_TEXTS) {
+        return;
+      }
+    }
+    try (PreparedStatement pstmt = conn.prepareStatement(
+        "SELECT codec, body FROM texts ORDER BY random() LIMIT ?")) {
+      pstmt.setInt(1, TRAIN_SAMPLES);
+      try (ResultSet rs = pstmt.executeQuery()) {
+        while (rs.next()) {
+          samples.add(read(rs, "codec", "body"));
+        }
+      }
+    }
+    trainDictionary(conn, samples);
+  }
+
+  /**
+   * Train a dictionary from samples, store it and use it for new texts
+   *
+   * @return whether the samples were repetitive enough to produce one
+   */
+  public static boolean trainDictionary(Connection conn, List<String> samples) throws SQLException {
+    byte[] dictionary = TextCodec.train(samples, DICTIONARY_BYTES);
+    if (dictionary == null) {
+      return false;
+    }
+
+    String sql = """
+        INSERT INTO text_dictionaries (id, body)
+        SELECT MAX(COALESCE(MAX(id) + 1, 0), ?), ? FROM text_dictionaries
+        RETURNING id
+        """;
+
+    try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+      pstmt.setInt(1, TextCodec.FIRST_DICTIONARY);
+      pstmt.setBytes(2, dictionary);
+      try (ResultSet rs = pstmt.executeQuery()) {
+        rs.next();
+        int id = rs.getInt(1);
+        TextCodec.registerDictionary(id, dictionary);
+        System.out.println("Trained text dictionary " + id + " (" + dictionary.length + " bytes) from "
+            + samples.size() + " texts");
+      }
+    }
+    return true;
+  }
+}
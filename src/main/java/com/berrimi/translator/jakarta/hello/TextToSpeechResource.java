@@ -1,5 +1,89 @@
 package com.berrimi.translator.jakarta.hello;
 
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+
+@Path("tts")
 public class TextToSpeechResource {
 
+  // Synthesis is billed per character, so bound what one request can ask for
+  private static final int MAX_CHARS = AppConfig.getInt("tts.maxChars", 5000);
+
+  /**
+   * Speak a text in the voice for a target language, given like the
+   * translate endpoint's "to" parameter; without it the voice follows the
+   * language identified in the text. The audio format comes from the
+   * "format" (ogg, mp3 or wav), "sampleRate" and "rate" parameters or the
+   * Accept header, see {@link SpeechFormat}. Audio prefetched after the
+   * translation is served without a new synthesis. Long texts are spoken as
+   * a stream that starts playing after the first sentence; texts over
+   * {@code tts.maxChars} are refused. The username is used for usage metering
+   * only.
+   */
+  @GET
+  @Produces({ "audio/ogg", "audio/mpeg", "audio/wav", MediaType.APPLICATION_JSON })
+  public Response speak(@QueryParam("text") String text,
+      @QueryParam("to") String toLang,
+      @QueryParam("username") String username,
+      @QueryParam("format") String format,
+      @QueryParam("sampleRate") String sampleRate,
+      @QueryParam("rate") String rate,
+      @Context HttpHeaders headers) {
+
+    if (text == null || text.isBlank()) {
+      return Response.status(400).type(MediaType.APPLICATION_JSON)
+          .entity(JsonSupport.message("error", "Text cannot be empty")).build();
+    }
+    if (text.length() > MAX_CHARS) {
+      return Response.status(400).type(MediaType.APPLICATION_JSON)
+          .entity(JsonSupport.message("error", "Text is longer than " + MAX_CHARS + " characters")).build();
+    }
+
+    SpeechFormat speechFormat;
+    try {
+      speechFormat = SpeechFormat.negotiate(format, sampleRate, rate, headers.getAcceptableMediaTypes());
+    } catch (IllegalArgumentException e) {
+      return Response.status(400).type(MediaType.APPLICATION_JSON)
+          .entity(JsonSupport.message("error", e.getMessage())).build();
+    }
+
+    String languageCode = toLang == null || toLang.isBlank()
+        ? TextToSpeechService.detectLanguageCode(text)
+        : TextToSpeechService.getLanguageCode(toLang);
+    byte[] audio = SpeechPrefetcher.take(text, languageCode, speechFormat);
+    if (audio != null) {
+      return Response.ok(audio, speechFormat.mediaType()).build();
+    }
+
+    // Metered only when synthesis succeeded, like the prefetcher does
+    String meteredLang = toLang == null || toLang.isBlank() ? languageCode : toLang;
+    if (SpeechStreamer.isLong(text)) {
+      StreamingOutput speech = SpeechStreamer.open(text, languageCode, speechFormat);
+      if (speech == null) {
+        return synthesisFailed();
+      }
+      UsageMeter.recordSpeech(username, meteredLang, text.length());
+      return Response.ok(speech, speechFormat.mediaType()).build();
+    }
+
+    audio = TextToSpeechService.synthesize(text, languageCode, speechFormat);
+    if (audio == null) {
+      return synthesisFailed();
+    }
+    UsageMeter.recordSpeech(username, meteredLang, text.length());
+    return Response.ok(audio, speechFormat.mediaType()).build();
+  }
+
+  private static Response synthesisFailed() {
+    return Response.status(502).type(MediaType.APPLICATION_JSON)
+        .entity(JsonSupport.message("error", "Speech synthesis failed"))
+        .header("Cache-Control", "no-store").build();
+  }
 }
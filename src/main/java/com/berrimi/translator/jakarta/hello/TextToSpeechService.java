@@ -1,7 +1,6 @@
 package com.berrimi.translator.jakarta.hello;
 
 import com.google.cloud.texttospeech.v1.AudioConfig;
-import com.google.cloud.texttospeech.v1.AudioEncoding;
 import com.google.cloud.texttospeech.v1.SsmlVoiceGender;
 import com.google.cloud.texttospeech.v1.SynthesisInput;
 import com.google.cloud.texttospeech.v1.SynthesizeSpeechResponse;
@@ -52,6 +51,46 @@ public class TextToSpeechService {
      * @return Base64 encoded audio bytes
      */
     public static String textToSpeech(String text, String languageCode) {
+        byte[] audio = synthesize(text, languageCode);
+        // Convert to base64 for easy transmission
+        return audio == null ? null : Base64.getEncoder().encodeToString(audio);
+    }
+    
+    /**
+     * Convert text to speech using Google TTS API
+     * @param text The text to convert to speech
+     * @param languageCode The language code (e.g., "en-US", "ar-AR", "fr-FR")
+     * @return MP3 audio bytes, or null if synthesis failed
+     */
+    public static byte[] synthesize(String text, String languageCode) {
+        return synthesize(text, languageCode, SpeechFormat.DEFAULT);
+    }
+    
+    /**
+     * Convert text to speech in the given encoding, sample rate and speaking rate
+     * @return audio bytes, or null if synthesis failed
+     */
+    public static byte[] synthesize(String text, String languageCode, SpeechFormat format) {
+        if (text == null || text.trim().isEmpty()) {
+            return null;
+        }
+        
+        try (TextToSpeechClient textToSpeechClient = TextToSpeechClient.create()) {
+            return synthesize(textToSpeechClient, text, languageCode, format);
+        } catch (Exception e) {
+            System.err.println("Error in text-to-speech conversion: " + e.getMessage());
+            e.printStackTrace();
+            return null;
+        }
+    }
+    
+    /**
+     * Convert text to speech with a client the caller owns, so several chunks
+     * of one text can share its connection
+     * @return audio bytes, or null if synthesis failed
+     */
+    static byte[] synthesize(TextToSpeechClient textToSpeechClient, String text, String languageCode,
+            SpeechFormat format) {
         if (text == null || text.trim().isEmpty()) {
             return null;
         }
@@ -61,8 +100,8 @@ public class TextToSpeechService {
             languageCode = "ar-AR";
         }
         
-        try (TextToSpeechClient textToSpeechClient = TextToSpeechClient.create()) {
-            
+        long started = RequestTiming.start();
+        try {
             // Set the text input to be synthesized
             SynthesisInput input = SynthesisInput.newBuilder()
                     .setText(text)
@@ -75,27 +114,29 @@ public class TextToSpeechService {
                     .build();
             
             // Select the type of audio file you want returned
-            AudioConfig audioConfig = AudioConfig.newBuilder()
-                    .setAudioEncoding(AudioEncoding.MP3)  // Using MP3 for better compatibility
-                    .setSpeakingRate(1.0)  // Normal speed
+            AudioConfig.Builder audioConfig = AudioConfig.newBuilder()
+                    .setAudioEncoding(format.codec().encoding())  // Negotiated with the client
+                    .setSpeakingRate(format.speakingRate())
                     .setPitch(0.0)  // Normal pitch
-                    .setVolumeGainDb(0.0)  // Normal volume
-                    .build();
+                    .setVolumeGainDb(0.0);  // Normal volume
+            if (format.sampleRateHertz() > 0) {
+                audioConfig.setSampleRateHertz(format.sampleRateHertz());
+            }
             
             // Perform the text-to-speech request
             SynthesizeSpeechResponse response = textToSpeechClient.synthesizeSpeech(
-                    input, voice, audioConfig);
+                    input, voice, audioConfig.build());
             
             // Get the audio content from the response
             ByteString audioContents = response.getAudioContent();
-            
-            // Convert to base64 for easy transmission
-            return Base64.getEncoder().encodeToString(audioContents.toByteArray());
+            return audioContents.toByteArray();
             
         } catch (Exception e) {
             System.err.println("Error in text-to-speech conversion: " + e.getMessage());
             e.printStackTrace();
             return null;
+        } finally {
+            RequestTiming.stop("tts", started);
         }
     }
     
@@ -103,61 +144,22 @@ public class TextToSpeechService {
      * Detect language and return appropriate TTS language code
      */
     public static String detectLanguageCode(String text) {
-        // Simple language detection for common languages in your app
-        if (text == null || text.trim().isEmpty()) {
+        String language = LanguageIdentifier.identify(text);
+        if (language == null) {
             return "ar-AR"; // Default to Arabic
         }
-        
-        String lowerText = text.toLowerCase();
-        
-        // Check for Arabic characters (including Darija)
-        if (containsArabic(text)) {
-            return "ar-AR"; // Arabic
-        } else if (containsFrenchKeywords(lowerText)) {
-            return "fr-FR"; // French
-        } else if (containsEnglishKeywords(lowerText)) {
-            return "en-US"; // English
-        } else if (containsSpanishKeywords(lowerText)) {
-            return "es-ES"; // Spanish
-        }
-        
-        // Default to Arabic
-        return "ar-AR";
-    }
-    
-    private static boolean containsArabic(String text) {
-        // Arabic Unicode range
-        return text.matches(".*[\\u0600-\\u06FF].*");
-    }
-    
-    private static boolean containsFrenchKeywords(String text) {
-        String[] frenchWords = {"bonjour", "merci", "oui", "non", "s'il vous plaît", "français"};
-        for (String word : frenchWords) {
-            if (text.contains(word)) {
-                return true;
-            }
-        }
-        return false;
-    }
-    
-    private static boolean containsEnglishKeywords(String text) {
-        String[] englishWords = {"hello", "thank you", "yes", "no", "please", "english"};
-        for (String word : englishWords) {
-            if (text.contains(word)) {
-                return true;
-            }
-        }
-        return false;
-    }
-    
-    private static boolean containsSpanishKeywords(String text) {
-        String[] spanishWords = {"hola", "gracias", "sí", "no", "por favor", "español"};
-        for (String word : spanishWords) {
-            if (text.contains(word)) {
-                return true;
-            }
+
+        switch (language) {
+            case "en":
+                return "en-US";
+            case "fr":
+                return "fr-FR";
+            case "es":
+                return "es-ES";
+            default:
+                // Darija in either script and Amazigh are read with the Arabic voice
+                return "ar-AR";
         }
-        return false;
     }
     
     /**
@@ -0,0 +1,106 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket.
+ *
+ * The whole state lives in one long so it can be updated with a single CAS:
+ * the high 22 bits hold the balance in milli-tokens, the low 42 bits the time of
+ * the last refill in milliseconds. Capacity is therefore limited to
+ * {@link #MAX_CAPACITY} tokens.
+ */
+public final class TokenBucket {
+
+  private static final int TIME_BITS = 42;
+  private static final long TIME_MASK = (1L << TIME_BITS) - 1;
+  public static final long MAX_CAPACITY = ((1L << (Long.SIZE - TIME_BITS)) - 1) / 1000;
+  private static final long ORIGIN = System.nanoTime();
+
+  private final long capacity;
+  private final long refillPerMilli;
+  private final AtomicLong state;
+
+  /**
+   * @param capacity        burst size in tokens
+   * @param refillPerSecond tokens added per second
+   * @param nowMillis       current time from {@link #now()}
+   */
+  public TokenBucket(long capacity, long refillPerSecond, long nowMillis) {
+    if (capacity <= 0 || capacity > MAX_CAPACITY || refillPerSecond < 0) {
+      throw new IllegalArgumentException("Invalid bucket: capacity=" + capacity + ", refill=" + refillPerSecond);
+    }
+    // Tokens per second equals milli-tokens per millisecond
+    this.capacity = capacity * 1000;
+    this.refillPerMilli = refillPerSecond;
+    this.state = new AtomicLong(pack(this.capacity, nowMillis));
+  }
+
+  /**
+   * Monotonic milliseconds for bucket timestamps
+   */
+  public static long now() {
+    return (System.nanoTime() - ORIGIN) / 1_000_000;
+  }
+
+  /**
+   * Take tokens if available
+   *
+   * @return 0 when the tokens were taken, otherwise the milliseconds until they will be
+   */
+  public long tryAcquire(long tokens, long nowMillis) {
+    long cost = tokens * 1000;
+    while (true) {
+      long current = state.get();
+      long last = current & TIME_MASK;
+      long available = available(current, nowMillis);
+
+      if (available < cost) {
+        if (refillPerMilli == 0 || cost > capacity) {
+          return Long.MAX_VALUE;
+        }
+        return (cost - available + refillPerMilli - 1) / refillPerMilli;
+      }
+
+      long next = pack(available - cost, Math.max(last, nowMillis));
+      if (state.compareAndSet(current, next)) {
+        return 0;
+      }
+    }
+  }
+
+  /**
+   * Give back tokens taken by {@link #tryAcquire} when a later check rejected the request
+   */
+  public void refund(long tokens) {
+    long amount = tokens * 1000;
+    while (true) {
+      long current = state.get();
+      long balance = Math.min(capacity, (current >>> TIME_BITS) + amount);
+      if (state.compareAndSet(current, pack(balance, current & TIME_MASK))) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * A full bucket carries no state and can be dropped and recreated later
+   */
+  public boolean isFull(long nowMillis) {
+    return available(state.get(), nowMillis) >= capacity;
+  }
+
+  private long available(long current, long nowMillis) {
+    long elapsed = Math.max(0, nowMillis - (current & TIME_MASK));
+    long balance = current >>> TIME_BITS;
+    if (elapsed > 0 && refillPerMilli > 0) {
+      // Once elapsed reaches capacity the bucket is full for any refill rate >= 1
+      balance += elapsed >= capacity ? capacity : Math.min(capacity, elapsed * refillPerMilli);
+    }
+    return Math.min(capacity, balance);
+  }
+
+  private static long pack(long milliTokens, long millis) {
+    return (milliTokens << TIME_BITS) | (millis & TIME_MASK);
+  }
+}
@@ -0,0 +1,152 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+
+/**
+ * Cluster-wide cache of LLM translations, shared by every WildFly node.
+ *
+ * Entries live in the distributed Infinispan cache "translations" of the
+ * server's "translator" cache container, which
+ * {@code src/main/wildfly/translation-cache.cli} adds to standalone-ha.xml.
+ * Each entry is owned by two nodes; the others keep entries they read in their
+ * L1 near cache, so a translation paid for once is served by the whole cluster.
+ * web.xml binds the cache to {@code java:comp/env/infinispan/translations}.
+ *
+ * Results are stored from a background thread so a slow cluster write never
+ * delays the response; when the store queue is full the result is simply not
+ * cached. Failed translations are never cached.
+ */
+public final class TranslationCache {
+
+  private static final boolean ENABLED = AppConfig.getBoolean("translationCache.enabled", true);
+  private static final String JNDI_NAME = AppConfig.get("translationCache.jndiName",
+      "java:comp/env/infinispan/translations");
+  private static final int MAX_PENDING = Math.max(1, AppConfig.getInt("translationCache.maxPendingWrites", 1000));
+
+  private static final LongAdder HITS = new LongAdder();
+  private static final LongAdder MISSES = new LongAdder();
+  private static final LongAdder DROPPED = new LongAdder();
+
+  private static final ThreadPoolExecutor WRITER = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+      new ArrayBlockingQueue<>(MAX_PENDING), runnable -> {
+        Thread thread = new Thread(runnable, "translation-cache-writer");
+        thread.setDaemon(true);
+        return thread;
+      }, (runnable, executor) -> DROPPED.increment());
+
+  private static volatile ConcurrentMap<String, String> cache;
+  private static volatile boolean resolved;
+
+  static {
+    Metrics.gauge("translationCache.hits", HITS::sum);
+    Metrics.gauge("translationCache.misses", MISSES::sum);
+    Metrics.gauge("translationCache.droppedWrites", DROPPED::sum);
+    Metrics.gauge("translationCache.pendingWrites", () -> WRITER.getQueue().size());
+  }
+
+  private TranslationCache() {
+  }
+
+  /**
+   * Get a cached translation, or null if there is none
+   */
+  public static String get(String text, String to) {
+    ConcurrentMap<String, String> translations = cache();
+    if (translations == null) {
+      return null;
+    }
+
+    long started = RequestTiming.start();
+    try {
+      String translation = translations.get(key(text, to));
+      (translation == null ? MISSES : HITS).increment();
+      return translation;
+    } catch (RuntimeException e) {
+      // An unreachable owner must not fail the request; translate instead
+      System.err.println("Error reading translation cache: " + e.getMessage());
+      MISSES.increment();
+      return null;
+    } finally {
+      RequestTiming.stop("cache", started);
+    }
+  }
+
+  /**
+   * Store a translation in the background
+   */
+  public static void putAsync(String text, String to, String translation) {
+    ConcurrentMap<String, String> translations = cache();
+    if (translations == null || translation == null || LLMClient.isFailure(translation)) {
+      return;
+    }
+
+    String key = key(text, to);
+    WRITER.execute(() -> {
+      try {
+        translations.put(key, translation);
+      } catch (RuntimeException e) {
+        System.err.println("Error writing translation cache: " + e.getMessage());
+      }
+    });
+  }
+
+  /**
+   * Whether the cluster cache is enabled and bound
+   */
+  public static boolean isAvailable() {
+    return cache() != null;
+  }
+
+  /**
+   * Use the given cache instead of the one bound in JNDI, e.g. an embedded
+   * Infinispan cache in tests
+   */
+  static synchronized void useCache(ConcurrentMap<String, String> translations) {
+    cache = translations;
+    resolved = true;
+  }
+
+  /**
+   * Stop the background writer; pending writes are dropped
+   */
+  public static void shutdown() {
+    WRITER.shutdownNow();
+  }
+
+  // Keys are a hash of the target language and the text, so long texts do
+  // not travel between nodes as keys
+  static String key(String text, String to) {
+    byte[] hash = TextCodec.hash(to + '\n' + text);
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static ConcurrentMap<String, String> cache() {
+    if (!ENABLED) {
+      return null;
+    }
+    if (!resolved) {
+      synchronized (TranslationCache.class) {
+        if (!resolved) {
+          try {
+            // Infinispan's Cache is a ConcurrentMap, so no Infinispan API is needed here
+            cache = (ConcurrentMap<String, String>) new InitialContext().lookup(JNDI_NAME);
+            System.out.println("Translation cache: " + JNDI_NAME);
+          } catch (NamingException | ClassCastException e) {
+            System.err.println("Error looking up translation cache, translating without it: " + e.getMessage());
+          }
+          resolved = true;
+        }
+      }
+    }
+    return cache;
+  }
+}
@@ -0,0 +1,90 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+public class TranslationJob {
+  private String id;
+  private String username;
+  private String targetLang;
+  private int totalItems;
+  private Date createdAt;
+  private List<TranslationJobItem> items = new ArrayList<>();
+
+  public TranslationJob() {
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public void setId(String id) {
+    this.id = id;
+  }
+
+  public String getUsername() {
+    return username;
+  }
+
+  public void setUsername(String username) {
+    this.username = username;
+  }
+
+  public String getTargetLang() {
+    return targetLang;
+  }
+
+  public void setTargetLang(String targetLang) {
+    this.targetLang = targetLang;
+  }
+
+  public int getTotalItems() {
+    return totalItems;
+  }
+
+  public void setTotalItems(int totalItems) {
+    this.totalItems = totalItems;
+  }
+
+  public Date getCreatedAt() {
+    return createdAt;
+  }
+
+  public void setCreatedAt(Date createdAt) {
+    this.createdAt = createdAt;
+  }
+
+  public List<TranslationJobItem> getItems() {
+    return items;
+  }
+
+  public void setItems(List<TranslationJobItem> items) {
+    this.items = items;
+  }
+
+  /**
+   * Count items in the given status
+   */
+  public int count(String status) {
+    int count = 0;
+    for (TranslationJobItem item : items) {
+      if (status.equals(item.getStatus())) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Overall job status derived from its items
+   */
+  public String getStatus() {
+    int done = count(TranslationJobItem.DONE);
+    int failed = count(TranslationJobItem.FAILED);
+    if (done + failed == totalItems) {
+      return failed == 0 ? "completed" : "completed_with_errors";
+    }
+    return done + failed + count(TranslationJobItem.RUNNING) == 0 ? "queued" : "running";
+  }
+}
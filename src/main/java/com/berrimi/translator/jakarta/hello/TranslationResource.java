@@ -1,72 +1,239 @@
 package com.berrimi.translator.jakarta.hello;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Properties;
-import java.util.UUID;
+import java.util.Map;
+import java.util.Set;
 
-import jakarta.json.Json;
-import jakarta.json.JsonArrayBuilder;
-import jakarta.json.JsonObject;
-import jakarta.json.JsonObjectBuilder;
+import jakarta.json.stream.JsonGenerator;
+import jakarta.servlet.http.HttpServletRequest;
+
+import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.DefaultValue;
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
+import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
 
 @Path("translate")
 public class TranslationResource {
 
+  private static final String NDJSON = "application/x-ndjson";
+  private static final String CSV = "text/csv";
+  private static final String EXPORT_TOKEN = AppConfig.get("export.allUsers.token", null);
+  private static final int MAX_TARGETS = Math.max(1, AppConfig.getInt("translate.maxTargets", 6));
+
+  @Context
+  private HttpServletRequest servletRequest;
+
   @GET
   @Produces(MediaType.APPLICATION_JSON)
   public Response translate(@QueryParam("text") String text,
       @QueryParam("to") @DefaultValue("darija") String toLang,
-      @QueryParam("username") String username) { // Added username parameter
+      @QueryParam("username") String username, // Added username parameter
+      @QueryParam("priority") @DefaultValue("interactive") String priority) {
 
     if (text == null || text.isBlank()) {
-      JsonObject error = Json.createObjectBuilder()
-          .add("error", "Text cannot be empty")
+      return Response.status(400).entity(JsonSupport.message("error", "Text cannot be empty")).build();
+    }
+
+    // A comma-separated "to" asks for several languages at once
+    List<String> targets = targets(toLang);
+    if (targets.isEmpty()) {
+      return Response.status(400).entity(JsonSupport.message("error", "Target language is required")).build();
+    }
+    if (targets.size() > MAX_TARGETS) {
+      return Response.status(400)
+          .entity(JsonSupport.message("error", "At most " + MAX_TARGETS + " target languages per request"))
           .build();
-      return Response.status(400).entity(error.toString()).build();
     }
+    if (targets.size() > 1) {
+      // The filter charged for one language; every further one costs as much again
+      long extra = RateLimitFilter.resolveCost("translate") * (targets.size() - 1);
+      long waitMillis = RateLimitFilter.acquire(RateLimitFilter.clientAddress(servletRequest), extra);
+      if (waitMillis != 0) {
+        return Response.status(429)
+            .header("Retry-After", RateLimitFilter.retryAfterSeconds(waitMillis))
+            .entity(JsonSupport.message("error", "Too many requests"))
+            .build();
+      }
+      return translateToMany(text, targets, username, LlmScheduler.Lane.fromHint(priority));
+    }
+    toLang = targets.get(0);
+
+    // Serve repeated texts from the cluster cache, otherwise ask the LLM
+    String result = TranslationCache.get(text, toLang);
+    long llmTokens = 0;
+    if (result == null) {
+      result = LLMClient.translate(text, toLang, LlmScheduler.Lane.fromHint(priority));
+      llmTokens = LLMClient.lastTokens();
+      if (LLMClient.isOverloaded(result)) {
+        // Shed before anything is metered or saved; the client retries later
+        return Response.status(503)
+            .header("Retry-After", LlmScheduler.retryAfterSeconds())
+            .header("Cache-Control", "no-store")
+            .entity(JsonSupport.message("error", "Translation service is busy, try again shortly"))
+            .build();
+      }
+      TranslationCache.putAsync(text, toLang, result);
+    }
+    UsageMeter.recordTranslation(username, toLang, text.length(), llmTokens);
+    PopularTranslations.record(text, toLang);
+    String translation = result == null ? "" : result;
 
-    // Get translation from LLM
-    String result = LLMClient.translate(text, toLang);
+    // The user will most likely play it next; have the audio ready by then
+    if (!LLMClient.isFailure(result)) {
+      SpeechPrefetcher.prefetch(result, toLang, username);
+    }
 
     // If username is provided, save to history
     if (username != null && !username.isBlank()) {
-      String historyId = UUID.randomUUID().toString();
       TranslationHistory history = new TranslationHistory(
-          historyId,
+          null,
           username,
           text,
           result,
           toLang);
-      HistoryRepository.addTranslation(username, history);
+      // The repository assigns the id, but only when the row was saved
+      if (HistoryRepository.addTranslation(username, history)) {
+        String historyId = history.getId();
+
+        // Return response with history ID
+        return Response.ok(JsonSupport.stream(json -> json.writeStartObject()
+            .write("translation", translation)
+            .write("historyId", historyId)
+            .writeEnd())).build();
+      }
+    }
 
-      // Return response with history ID
-      JsonObject json = Json.createObjectBuilder()
-          .add("translation", result == null ? "" : result)
-          .add("historyId", historyId)
-          .build();
+    // Return response without history ID for unauthenticated users or a failed save
+    Response.ResponseBuilder response = Response.ok(JsonSupport.message("translation", translation));
+    if (LLMClient.isFailure(result)) {
+      // Keep upstream failures out of browser and proxy caches
+      response.header("Cache-Control", "no-store");
+    }
+    return response.build();
+  }
 
-      return Response.ok(json.toString()).build();
-    } else {
-      // Return response without history ID for unauthenticated users
-      JsonObject json = Json.createObjectBuilder()
-          .add("translation", result == null ? "" : result)
-          .build();
+  /**
+   * Translate a text to several languages: cached ones from the cluster
+   * cache, the rest through {@link MultiTargetTranslator}, and one history
+   * row per language saved with a single batched write
+   */
+  private Response translateToMany(String text, List<String> targets, String username, LlmScheduler.Lane lane) {
+    Map<String, String> translations = new LinkedHashMap<>();
+    List<String> missing = new ArrayList<>();
+    for (String to : targets) {
+      String cached = TranslationCache.get(text, to);
+      translations.put(to, cached);
+      if (cached == null) {
+        missing.add(to);
+      }
+    }
 
-      return Response.ok(json.toString()).build();
+    long llmTokens = 0;
+    if (!missing.isEmpty()) {
+      Map<String, String> translated = MultiTargetTranslator.translate(text, missing, lane);
+      llmTokens = MultiTargetTranslator.lastTokens();
+      translated.forEach((to, result) -> TranslationCache.putAsync(text, to, result));
+      if (translated.values().stream().anyMatch(LLMClient::isOverloaded)) {
+        // What did get translated is cached for the retry
+        return Response.status(503)
+            .header("Retry-After", LlmScheduler.retryAfterSeconds())
+            .header("Cache-Control", "no-store")
+            .entity(JsonSupport.message("error", "Translation service is busy, try again shortly"))
+            .build();
+      }
+      translations.putAll(translated);
+    }
+
+    // The tokens paid for all the languages that needed a call; share them out
+    for (String to : targets) {
+      long tokens = missing.contains(to) ? llmTokens / missing.size() : 0;
+      UsageMeter.recordTranslation(username, to, text.length(), tokens);
+      PopularTranslations.record(text, to);
+    }
+
+    Map<String, String> historyIds = new LinkedHashMap<>();
+    if (username != null && !username.isBlank()) {
+      List<TranslationHistory> histories = new ArrayList<>(targets.size());
+      for (String to : targets) {
+        histories.add(new TranslationHistory(null, username, text, translations.get(to), to));
+      }
+      // One transaction for all rows; the repository assigns the ids
+      if (HistoryRepository.addTranslations(username, histories)) {
+        for (TranslationHistory history : histories) {
+          historyIds.put(history.getTargetLang(), history.getId());
+        }
+      }
     }
+
+    boolean failed = translations.values().stream().anyMatch(LLMClient::isFailure);
+    Response.ResponseBuilder response = Response.ok(JsonSupport.stream(json -> {
+      json.writeStartObject().writeStartObject("translations");
+      translations.forEach((to, translation) -> json.write(to, translation == null ? "" : translation));
+      json.writeEnd();
+      if (!historyIds.isEmpty()) {
+        json.writeStartObject("historyIds");
+        historyIds.forEach(json::write);
+        json.writeEnd();
+      }
+      json.writeEnd();
+    }));
+    if (failed) {
+      // Keep upstream failures out of browser and proxy caches
+      response.header("Cache-Control", "no-store");
+    }
+    return response.build();
+  }
+
+  /**
+   * Target languages of a comma-separated "to", trimmed, without repeats
+   */
+  private static List<String> targets(String toLang) {
+    Set<String> targets = new LinkedHashSet<>();
+    for (String to : toLang.split(",")) {
+      if (!to.isBlank()) {
+        targets.add(to.trim());
+      }
+    }
+    return new ArrayList<>(targets);
+  }
+
+  @POST
+  @Path("document")
+  @Consumes({ MediaType.TEXT_PLAIN, "text/markdown" })
+  @Produces(MediaType.TEXT_PLAIN + ";charset=UTF-8")
+  public Response translateDocument(InputStream document,
+      @QueryParam("to") @DefaultValue("darija") String toLang,
+      @QueryParam("priority") @DefaultValue("bulk") String priority) {
+
+    // Segments are read, translated and written back while the upload is still arriving
+    LlmScheduler.Lane lane = LlmScheduler.Lane.fromHint(priority);
+    String client = RateLimitFilter.clientAddress(servletRequest);
+    StreamingOutput response = output -> DocumentTranslator.translate(document, output, toLang, lane, client);
+
+    return Response.ok(response).build();
   }
 
   @GET
@@ -74,34 +241,85 @@ public class TranslationResource {
   @Produces(MediaType.APPLICATION_JSON)
   public Response getHistory(@QueryParam("username") String username) {
     if (username == null || username.isBlank()) {
-      JsonObject error = Json.createObjectBuilder()
-          .add("error", "Username is required")
-          .build();
-      return Response.status(400).entity(error.toString()).build();
+      return Response.status(400).entity(JsonSupport.message("error", "Username is required")).build();
     }
 
     List<TranslationHistory> history = HistoryRepository.getHistory(username);
 
-    // Convert history list to JSON array
-    JsonArrayBuilder arrayBuilder = Json.createArrayBuilder();
+    // Write history entries straight to the response stream
+    StreamingOutput response = JsonSupport.stream(json -> {
+      json.writeStartObject().writeStartArray("history");
+
+      for (TranslationHistory item : history) {
+        json.writeStartObject()
+            .write("id", item.getId())
+            .write("originalText", item.getOriginalText())
+            .write("translatedText", item.getTranslatedText())
+            .write("targetLang", item.getTargetLang())
+            .write("timestamp", item.getTimestamp().toString())
+            .writeEnd();
+      }
 
-    for (TranslationHistory item : history) {
-      JsonObjectBuilder itemBuilder = Json.createObjectBuilder()
-          .add("id", item.getId())
-          .add("originalText", item.getOriginalText())
-          .add("translatedText", item.getTranslatedText())
-          .add("targetLang", item.getTargetLang())
-          .add("timestamp", item.getTimestamp().toString());
+      json.writeEnd()
+          .write("count", history.size())
+          .writeEnd();
+    });
+
+    return Response.ok(response).build();
+  }
 
-      arrayBuilder.add(itemBuilder);
+  @GET
+  @Path("history/export")
+  @Produces({ NDJSON, CSV })
+  public Response exportHistory(@QueryParam("username") String username,
+      @QueryParam("format") @DefaultValue("ndjson") String format,
+      @QueryParam("from") String from,
+      @QueryParam("to") String to,
+      @HeaderParam("X-Export-Token") String exportToken) {
+
+    // Exporting every user's history is reserved for holders of the configured token
+    boolean allUsers = (username == null || username.isBlank())
+        && EXPORT_TOKEN != null && EXPORT_TOKEN.equals(exportToken);
+    if ((username == null || username.isBlank()) && !allUsers) {
+      return Response.status(400).type(MediaType.APPLICATION_JSON)
+          .entity(JsonSupport.message("error", "Username is required")).build();
     }
 
-    JsonObject response = Json.createObjectBuilder()
-        .add("history", arrayBuilder)
-        .add("count", history.size())
-        .build();
+    boolean csv = "csv".equalsIgnoreCase(format);
+    if (!csv && !"ndjson".equalsIgnoreCase(format)) {
+      return Response.status(400).type(MediaType.APPLICATION_JSON)
+          .entity(JsonSupport.message("error", "Format must be ndjson or csv")).build();
+    }
 
-    return Response.ok(response.toString()).build();
+    Instant fromInstant;
+    Instant toInstant;
+    try {
+      fromInstant = parseInstant(from);
+      toInstant = parseInstant(to);
+    } catch (DateTimeParseException e) {
+      return Response.status(400).type(MediaType.APPLICATION_JSON)
+          .entity(JsonSupport.message("error", "from and to must be ISO-8601 dates or instants")).build();
+    }
+
+    String owner = allUsers ? null : username;
+    StreamingOutput response = output -> {
+      try {
+        if (csv) {
+          writeCsv(owner, fromInstant, toInstant, output);
+        } else {
+          writeNdjson(owner, fromInstant, toInstant, output);
+        }
+      } catch (SQLException e) {
+        System.err.println("Error exporting history: " + e.getMessage());
+        throw new IOException("History export failed", e);
+      }
+    };
+
+    return Response.ok(response)
+        .type(csv ? CSV + ";charset=UTF-8" : NDJSON)
+        .header("Content-Disposition", "attachment; filename=\"history." + (csv ? "csv" : "ndjson") + "\"")
+        .header("Cache-Control", "no-store")
+        .build();
   }
 
   @GET
@@ -109,94 +327,85 @@ public class TranslationResource {
   @Produces(MediaType.APPLICATION_JSON)
   public Response clearHistory(@QueryParam("username") String username) {
     if (username == null || username.isBlank()) {
-      JsonObject error = Json.createObjectBuilder()
-          .add("error", "Username is required")
-          .build();
-      return Response.status(400).entity(error.toString()).build();
+      return Response.status(400).entity(JsonSupport.message("error", "Username is required")).build();
     }
 
     HistoryRepository.clearHistory(username);
 
-    JsonObject response = Json.createObjectBuilder()
-        .add("message", "History cleared successfully")
-        .build();
-
-    return Response.ok(response.toString()).build();
+    return Response.ok(JsonSupport.message("message", "History cleared successfully")).build();
   }
-}
-
-class LLMClient {
 
-  private static final String API_KEY = loadKey();
-
-  private static String loadKey() {
-    try (InputStream input = LLMClient.class.getClassLoader()
-        .getResourceAsStream("translator.properties")) {
-
-      if (input == null) {
-        System.err.println("translator.properties not found in resources!");
-        return null;
-      }
-
-      Properties props = new Properties();
-      props.load(input);
-      return props.getProperty("API_KEY");
-    } catch (IOException e) {
-      return null;
+  private static void writeNdjson(String username, Instant from, Instant to, OutputStream output)
+      throws SQLException, IOException {
+    BufferedOutputStream buffered = new BufferedOutputStream(output, 16 * 1024);
+    try (JsonGenerator json = JsonSupport.createNdjsonGenerator(buffered)) {
+      // One generator for the whole stream; each array element is written as a line
+      json.writeStartArray();
+      HistoryRepository.exportHistory(username, from, to, row -> json.writeStartObject()
+          .write("id", row.getId())
+          .write("username", row.getUsername())
+          .write("originalText", row.getOriginalText())
+          .write("translatedText", row.getTranslatedText())
+          .write("targetLang", row.getTargetLang())
+          .write("timestamp", row.getTimestamp().toInstant().toString())
+          .writeEnd());
+      json.writeEnd();
     }
+    buffered.flush();
   }
 
-  public static String translate(String text, String to) {
-    try {
-      HttpClient client = HttpClient.newHttpClient();
-
-      String prompt = "Detect the language of the following text and translate it to " + to +
-          ". Return only the translation, without extra explanation:\n" + text;
-
-      String body = """
-          {
-            "model": "kwaipilot/kat-coder-pro:free",
-            "messages": [
-              { "role": "user", "content": "%s" }
-            ]
-          }
-          """.formatted(escapeJson(prompt));
-
-      HttpRequest request = HttpRequest.newBuilder()
-          .uri(URI.create("https://openrouter.ai/api/v1/chat/completions"))
-          .header("Content-Type", "application/json")
-          .header("Authorization", "Bearer " + API_KEY)
-          .POST(HttpRequest.BodyPublishers.ofString(body))
-          .build();
-
-      HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-
-      return parseOpenRouterResponse(response.body());
-
-    } catch (Exception e) {
-      return "Error: " + e.getMessage();
-    }
+  private static void writeCsv(String username, Instant from, Instant to, OutputStream output)
+      throws SQLException, IOException {
+    Writer writer = new OutputStreamWriter(new BufferedOutputStream(output, 16 * 1024), StandardCharsets.UTF_8);
+    writer.write("id,username,original_text,translated_text,target_lang,timestamp\r\n");
+    HistoryRepository.exportHistory(username, from, to, row -> {
+      writeCsvField(writer, row.getId());
+      writer.write(',');
+      writeCsvField(writer, row.getUsername());
+      writer.write(',');
+      writeCsvField(writer, row.getOriginalText());
+      writer.write(',');
+      writeCsvField(writer, row.getTranslatedText());
+      writer.write(',');
+      writeCsvField(writer, row.getTargetLang());
+      writer.write(',');
+      writer.write(row.getTimestamp().toInstant().toString());
+      writer.write("\r\n");
+    });
+    writer.flush();
   }
 
-  private static String escapeJson(String s) {
-    return s.replace("\\", "\\\\")
-        .replace("\"", "\\\"")
-        .replace("\n", "\\n")
-        .replace("\r", "\\r")
-        .replace("\t", "\\t");
+  /**
+   * Parse a range bound given as a date (midnight UTC) or an instant
+   */
+  private static Instant parseInstant(String value) {
+    if (value == null || value.isBlank()) {
+      return null;
+    }
+    if (value.length() == 10) {
+      return LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+    return Instant.parse(value);
   }
 
-  private static String parseOpenRouterResponse(String responseJson) {
-    try {
-      int idx = responseJson.indexOf("\"content\":");
-      if (idx == -1) {
-        return "Invalid response: " + responseJson;
-      }
-      int start = responseJson.indexOf("\"", idx + 10) + 1;
-      int end = responseJson.indexOf("\"", start);
-      return responseJson.substring(start, end);
-    } catch (Exception e) {
-      return "Parsing error: " + e.getMessage();
+  /**
+   * Write a field quoted per RFC 4180 when it contains separators, quotes or line breaks
+   */
+  private static void writeCsvField(Writer writer, String value) throws IOException {
+    if (value == null) {
+      return;
+    }
+    boolean quote = false;
+    for (int i = 0; i < value.length() && !quote; i++) {
+      char c = value.charAt(i);
+      quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+    }
+    if (!quote) {
+      writer.write(value);
+      return;
     }
+    writer.write('"');
+    writer.write(value.replace("\"", "\"\""));
+    writer.write('"');
   }
 }
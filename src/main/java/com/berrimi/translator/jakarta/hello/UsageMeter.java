@@ -0,0 +1,306 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-user, per-target-language usage: translations, source characters, LLM
+ * tokens and synthesized characters.
+ *
+ * Requests only add to in-memory counters, found with two map lookups and
+ * no allocation. Every {@code usage.flushSeconds} the counters are drained
+ * and their deltas added to the daily rows of the usage_totals table in one
+ * transaction. Totals are per node, like the job queue, as the table lives in
+ * the local SQLite database.
+ *
+ * A meter that drained to zero is taken out of the map after the flush. A
+ * request may still hold it from a lookup just before, so it is drained once
+ * more at the next flush and only then dropped.
+ */
+public final class UsageMeter {
+
+  private static final long FLUSH_SECONDS = Math.max(1, AppConfig.getLong("usage.flushSeconds", 5));
+  // Usernames and languages come from query parameters, so bound the meters
+  private static final int MAX_METERS = AppConfig.getInt("usage.maxMeters", 100_000);
+  private static final int MAX_LANGUAGE_LENGTH = 32;
+
+  // Unauthenticated requests, and users beyond MAX_METERS
+  private static final String ANONYMOUS = "";
+
+  private static final Map<String, Map<String, Meter>> METERS = new ConcurrentHashMap<>();
+  private static final LongAdder METER_COUNT = new LongAdder();
+  private static final LongAdder FLUSHES = new LongAdder();
+  private static final LongAdder FLUSH_FAILURES = new LongAdder();
+
+  private static ScheduledExecutorService scheduler;
+  // Meters evicted by the last flush, guarded by the class lock
+  private static List<Retired> retired = new ArrayList<>();
+
+  static {
+    Metrics.gauge("usage.meters", METER_COUNT::sum);
+    Metrics.gauge("usage.flushes", FLUSHES::sum);
+    Metrics.gauge("usage.flushFailures", FLUSH_FAILURES::sum);
+  }
+
+  private UsageMeter() {
+  }
+
+  /**
+   * Start the periodic flush
+   */
+  public static void start() {
+    scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "usage-flush");
+      thread.setDaemon(true);
+      return thread;
+    });
+    scheduler.scheduleWithFixedDelay(UsageMeter::flush, FLUSH_SECONDS, FLUSH_SECONDS, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Stop the periodic flush and write what is left
+   */
+  public static void stop() {
+    if (scheduler == null) {
+      return;
+    }
+    scheduler.shutdown();
+    try {
+      scheduler.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    flush();
+  }
+
+  /**
+   * Count a translation of a text and the LLM tokens it took (0 when it was
+   * served without a call)
+   */
+  public static void recordTranslation(String username, String targetLang, int characters, long llmTokens) {
+    Meter meter = meter(username, targetLang);
+    meter.translations.increment();
+    meter.characters.add(characters);
+    if (llmTokens > 0) {
+      meter.llmTokens.add(llmTokens);
+    }
+  }
+
+  /**
+   * Count characters sent to speech synthesis
+   */
+  public static void recordSpeech(String username, String targetLang, int characters) {
+    meter(username, targetLang).ttsCharacters.add(characters);
+  }
+
+  /**
+   * Usage totals of a user per target language: the stored totals plus what
+   * has not been flushed yet
+   *
+   * @return target language to {translations, characters, llmTokens, ttsCharacters}
+   */
+  public static Map<String, long[]> totals(String username) throws SQLException {
+    String sql = """
+        SELECT target_lang, SUM(translations), SUM(characters), SUM(llm_tokens), SUM(tts_characters)
+        FROM usage_totals
+        WHERE username = ?
+        GROUP BY target_lang
+        """;
+    Map<String, long[]> totals = new TreeMap<>();
+
+    // Holding the lock keeps a flush from moving counts between memory and table mid-read
+    synchronized (UsageMeter.class) {
+      try (Connection conn = DatabaseManager.openConnection();
+          PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        pstmt.setString(1, username);
+        try (ResultSet rs = pstmt.executeQuery()) {
+          while (rs.next()) {
+            long[] row = totals.computeIfAbsent(rs.getString(1), lang -> new long[4]);
+            for (int i = 0; i < 4; i++) {
+              row[i] += rs.getLong(i + 2);
+            }
+          }
+        }
+      }
+
+      Map<String, Meter> languages = METERS.get(username);
+      if (languages != null) {
+        for (Map.Entry<String, Meter> entry : languages.entrySet()) {
+          addPending(totals, entry.getKey(), entry.getValue());
+        }
+      }
+      for (Retired meter : retired) {
+        if (meter.username().equals(username)) {
+          addPending(totals, meter.targetLang(), meter.meter());
+        }
+      }
+    }
+    return totals;
+  }
+
+  /**
+   * Drain the counters into the usage table with one transaction. If the write
+   * fails, the deltas go back into the counters for the next flush.
+   */
+  static synchronized void flush() {
+    List<String[]> keys = new ArrayList<>();
+    List<long[]> deltas = new ArrayList<>();
+    // Late adds to the meters evicted last time
+    for (Retired meter : retired) {
+      long[] delta = meter.meter().drain();
+      if (!isZero(delta)) {
+        keys.add(new String[] { meter.username(), meter.targetLang() });
+        deltas.add(delta);
+      }
+    }
+    retired = new ArrayList<>();
+
+    for (Map.Entry<String, Map<String, Meter>> user : METERS.entrySet()) {
+      for (Map.Entry<String, Meter> language : user.getValue().entrySet()) {
+        long[] delta = language.getValue().drain();
+        if (!isZero(delta)) {
+          keys.add(new String[] { user.getKey(), language.getKey() });
+          deltas.add(delta);
+        } else if (user.getValue().remove(language.getKey(), language.getValue())) {
+          METER_COUNT.decrement();
+          retired.add(new Retired(user.getKey(), language.getKey(), language.getValue()));
+        }
+      }
+      // Under the map's lock for this user, so no meter is being added meanwhile
+      METERS.computeIfPresent(user.getKey(), (name, languages) -> languages.isEmpty() ? null : languages);
+    }
+    if (deltas.isEmpty()) {
+      return;
+    }
+
+    String sql = """
+        INSERT INTO usage_totals (username, target_lang, day, translations, characters, llm_tokens, tts_characters)
+        VALUES (?, ?, ?, ?, ?, ?, ?)
+        ON CONFLICT (username, target_lang, day) DO UPDATE SET
+            translations = translations + excluded.translations,
+            characters = characters + excluded.characters,
+            llm_tokens = llm_tokens + excluded.llm_tokens,
+            tts_characters = tts_characters + excluded.tts_characters
+        """;
+    String day = LocalDate.now(ZoneOffset.UTC).toString();
+
+    try (Connection conn = DatabaseManager.openConnection()) {
+      conn.setAutoCommit(false);
+      try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        for (int i = 0; i < deltas.size(); i++) {
+          long[] delta = deltas.get(i);
+          pstmt.setString(1, keys.get(i)[0]);
+          pstmt.setString(2, keys.get(i)[1]);
+          pstmt.setString(3, day);
+          for (int j = 0; j < 4; j++) {
+            pstmt.setLong(4 + j, delta[j]);
+          }
+          pstmt.addBatch();
+        }
+        pstmt.executeBatch();
+        conn.commit();
+        FLUSHES.increment();
+        return;
+      } catch (SQLException e) {
+        conn.rollback();
+        throw e;
+      }
+    } catch (SQLException e) {
+      System.err.println("Error flushing usage: " + e.getMessage());
+    }
+
+    FLUSH_FAILURES.increment();
+    for (int i = 0; i < deltas.size(); i++) {
+      meter(keys.get(i)[0], keys.get(i)[1]).add(deltas.get(i));
+    }
+  }
+
+  private static Meter meter(String username, String targetLang) {
+    String user = username == null || username.isBlank() ? ANONYMOUS : username;
+    // toLowerCase returns the same string when there is nothing to change
+    String language = targetLang == null ? "" : targetLang.toLowerCase(Locale.ROOT);
+    if (language.length() > MAX_LANGUAGE_LENGTH) {
+      language = language.substring(0, MAX_LANGUAGE_LENGTH);
+    }
+
+    // Fast path: both levels exist, no allocation
+    Map<String, Meter> languages = METERS.get(user);
+    if (languages != null) {
+      Meter meter = languages.get(language);
+      if (meter != null) {
+        return meter;
+      }
+    }
+
+    if (METER_COUNT.sum() >= MAX_METERS) {
+      user = ANONYMOUS;
+      language = "";
+    }
+    // Add the meter under the user's entry, so a flush can't drop the map in between
+    String key = language;
+    Meter[] meter = new Meter[1];
+    METERS.compute(user, (name, existing) -> {
+      Map<String, Meter> map = existing == null ? new ConcurrentHashMap<>() : existing;
+      meter[0] = map.computeIfAbsent(key, lang -> {
+        METER_COUNT.increment();
+        return new Meter();
+      });
+      return map;
+    });
+    return meter[0];
+  }
+
+  private static boolean isZero(long[] delta) {
+    return delta[0] == 0 && delta[1] == 0 && delta[2] == 0 && delta[3] == 0;
+  }
+
+  private static void addPending(Map<String, long[]> totals, String targetLang, Meter meter) {
+    long[] pending = meter.sum();
+    long[] row = totals.computeIfAbsent(targetLang, lang -> new long[4]);
+    for (int i = 0; i < 4; i++) {
+      row[i] += pending[i];
+    }
+  }
+
+  private record Retired(String username, String targetLang, Meter meter) {
+  }
+
+  private static final class Meter {
+    private final LongAdder translations = new LongAdder();
+    private final LongAdder characters = new LongAdder();
+    private final LongAdder llmTokens = new LongAdder();
+    private final LongAdder ttsCharacters = new LongAdder();
+
+    private long[] sum() {
+      return new long[] { translations.sum(), characters.sum(), llmTokens.sum(), ttsCharacters.sum() };
+    }
+
+    // sumThenReset swaps each cell with zero, so concurrent adds land in this
+    // delta or the next one and are never lost
+    private long[] drain() {
+      return new long[] { translations.sumThenReset(), characters.sumThenReset(),
+          llmTokens.sumThenReset(), ttsCharacters.sumThenReset() };
+    }
+
+    private void add(long[] delta) {
+      translations.add(delta[0]);
+      characters.add(delta[1]);
+      llmTokens.add(delta[2]);
+      ttsCharacters.add(delta[3]);
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package com.berrimi.translator.jakarta.hello;
+
+import java.sql.SQLException;
+import java.util.Map;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+@Path("usage")
+public class UsageResource {
+
+  /**
+   * A user's usage per target language, including counts not yet flushed
+   */
+  @GET
+  @Produces(MediaType.APPLICATION_JSON)
+  public Response getUsage(@QueryParam("username") String username) {
+    if (username == null || username.isBlank()) {
+      return Response.status(400).entity(JsonSupport.message("error", "Username is required")).build();
+    }
+
+    Map<String, long[]> totals;
+    try {
+      totals = UsageMeter.totals(username);
+    } catch (SQLException e) {
+      System.err.println("Error reading usage: " + e.getMessage());
+      return Response.status(500).entity(JsonSupport.message("error", "Usage is unavailable")).build();
+    }
+
+    long[] sum = new long[4];
+    return Response.ok(JsonSupport.stream(json -> {
+      json.writeStartObject()
+          .write("username", username)
+          .writeStartArray("languages");
+
+      for (Map.Entry<String, long[]> entry : totals.entrySet()) {
+        long[] row = entry.getValue();
+        json.writeStartObject()
+            .write("targetLang", entry.getKey())
+            .write("translations", row[0])
+            .write("characters", row[1])
+            .write("llmTokens", row[2])
+            .write("ttsCharacters", row[3])
+            .writeEnd();
+        for (int i = 0; i < 4; i++) {
+          sum[i] += row[i];
+        }
+      }
+
+      json.writeEnd()
+          .write("translations", sum[0])
+          .write("characters", sum[1])
+          .write("llmTokens", sum[2])
+          .write("ttsCharacters", sum[3])
+          .writeEnd();
+    })).header("Cache-Control", "no-store").build();
+  }
+}
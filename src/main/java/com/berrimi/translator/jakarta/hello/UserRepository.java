@@ -1,39 +1,24 @@
 package com.berrimi.translator.jakarta.hello;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Base64;
 
+/**
+ * User account operations, stored by the configured {@link UserStore}.
+ * Store calls count as the "db" span of the request's {@link RequestTiming}.
+ */
 public class UserRepository {
 
   /**
    * Register a new user
    */
   public static boolean register(User user) {
-    String sql = "INSERT INTO users (username, password, email, phone) VALUES (?, ?, ?, ?)";
-
-    try (Connection conn = DatabaseManager.getConnection();
-        PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-      pstmt.setString(1, user.getUsername());
-      pstmt.setString(2, hashPassword(user.getPassword())); // Hash password
-      pstmt.setString(3, user.getEmail());
-      pstmt.setString(4, user.getPhone());
-
-      pstmt.executeUpdate();
-      return true;
-
-    } catch (SQLException e) {
-      // Username already exists (UNIQUE constraint violation)
-      if (e.getMessage().contains("UNIQUE constraint failed")) {
-        return false;
-      }
-      System.err.println("Error registering user: " + e.getMessage());
-      return false;
+    long started = RequestTiming.start();
+    try {
+      return Persistence.users().register(user, hashPassword(user.getPassword()));
+    } finally {
+      RequestTiming.stop("db", started);
     }
   }
 
@@ -41,51 +26,25 @@ public class UserRepository {
    * Login user
    */
   public static boolean login(String username, String password) {
-    String sql = "SELECT password FROM users WHERE username = ?";
-
-    try (Connection conn = DatabaseManager.getConnection();
-        PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-      pstmt.setString(1, username);
-      ResultSet rs = pstmt.executeQuery();
-
-      if (rs.next()) {
-        String storedHash = rs.getString("password");
-        String inputHash = hashPassword(password);
-        return storedHash.equals(inputHash);
-      }
-      return false;
-
-    } catch (SQLException e) {
-      System.err.println("Error logging in: " + e.getMessage());
-      return false;
+    long started = RequestTiming.start();
+    String storedHash;
+    try {
+      storedHash = Persistence.users().getPasswordHash(username);
+    } finally {
+      RequestTiming.stop("db", started);
     }
+    return storedHash != null && storedHash.equals(hashPassword(password));
   }
 
   /**
    * Get user by username
    */
   public static User getUser(String username) {
-    String sql = "SELECT username, email, phone FROM users WHERE username = ?";
-
-    try (Connection conn = DatabaseManager.getConnection();
-        PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-      pstmt.setString(1, username);
-      ResultSet rs = pstmt.executeQuery();
-
-      if (rs.next()) {
-        User user = new User();
-        user.setUsername(rs.getString("username"));
-        user.setEmail(rs.getString("email"));
-        user.setPhone(rs.getString("phone"));
-        return user;
-      }
-      return null;
-
-    } catch (SQLException e) {
-      System.err.println("Error getting user: " + e.getMessage());
-      return null;
+    long started = RequestTiming.start();
+    try {
+      return Persistence.users().getUser(username);
+    } finally {
+      RequestTiming.stop("db", started);
     }
   }
 
@@ -93,18 +52,11 @@ public class UserRepository {
    * Check if user exists
    */
   public static boolean userExists(String username) {
-    String sql = "SELECT 1 FROM users WHERE username = ?";
-
-    try (Connection conn = DatabaseManager.getConnection();
-        PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-      pstmt.setString(1, username);
-      ResultSet rs = pstmt.executeQuery();
-      return rs.next();
-
-    } catch (SQLException e) {
-      System.err.println("Error checking user existence: " + e.getMessage());
-      return false;
+    long started = RequestTiming.start();
+    try {
+      return Persistence.users().userExists(username);
+    } finally {
+      RequestTiming.stop("db", started);
     }
   }
 
@@ -112,21 +64,11 @@ public class UserRepository {
    * Update user information (email and phone)
    */
   public static boolean updateUser(String username, String email, String phone) {
-    String sql = "UPDATE users SET email = ?, phone = ? WHERE username = ?";
-
-    try (Connection conn = DatabaseManager.getConnection();
-        PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-      pstmt.setString(1, email);
-      pstmt.setString(2, phone);
-      pstmt.setString(3, username);
-
-      int rowsAffected = pstmt.executeUpdate();
-      return rowsAffected > 0;
-
-    } catch (SQLException e) {
-      System.err.println("Error updating user: " + e.getMessage());
-      return false;
+    long started = RequestTiming.start();
+    try {
+      return Persistence.users().updateUser(username, email, phone);
+    } finally {
+      RequestTiming.stop("db", started);
     }
   }
 
@@ -138,21 +80,11 @@ public class UserRepository {
     if (!login(username, oldPassword)) {
       return false;
     }
-
-    String sql = "UPDATE users SET password = ? WHERE username = ?";
-
-    try (Connection conn = DatabaseManager.getConnection();
-        PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-      pstmt.setString(1, hashPassword(newPassword));
-      pstmt.setString(2, username);
-
-      int rowsAffected = pstmt.executeUpdate();
-      return rowsAffected > 0;
-
-    } catch (SQLException e) {
-      System.err.println("Error updating password: " + e.getMessage());
-      return false;
+    long started = RequestTiming.start();
+    try {
+      return Persistence.users().updatePassword(username, hashPassword(newPassword));
+    } finally {
+      RequestTiming.stop("db", started);
     }
   }
 
@@ -160,25 +92,21 @@ public class UserRepository {
    * Delete user
    */
   public static boolean deleteUser(String username) {
-    String sql = "DELETE FROM users WHERE username = ?";
-
-    try (Connection conn = DatabaseManager.getConnection();
-        PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-      pstmt.setString(1, username);
-      int rowsAffected = pstmt.executeUpdate();
-      return rowsAffected > 0;
-
-    } catch (SQLException e) {
-      System.err.println("Error deleting user: " + e.getMessage());
-      return false;
+    long started = RequestTiming.start();
+    boolean deleted;
+    try {
+      deleted = Persistence.users().deleteUser(username);
+    } finally {
+      RequestTiming.stop("db", started);
     }
+    HistoryVersions.bump(username);
+    return deleted;
   }
 
   /**
    * Hash password using SHA-256
    */
-  private static String hashPassword(String password) {
+  static String hashPassword(String password) {
     try {
       MessageDigest digest = MessageDigest.getInstance("SHA-256");
       byte[] hash = digest.digest(password.getBytes());
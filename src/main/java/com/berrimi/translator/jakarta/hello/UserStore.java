@@ -0,0 +1,36 @@
+package com.berrimi.translator.jakarta.hello;
+
+/**
+ * Storage backend of user accounts, selected by {@link Persistence}. Callers go
+ * through {@link UserRepository}, which hashes passwords before they get here.
+ */
+public interface UserStore {
+
+  /**
+   * Insert a user
+   *
+   * @return false if the username is taken or the write failed
+   */
+  boolean register(User user, String passwordHash);
+
+  /**
+   * Get the stored password hash, or null if the user does not exist
+   */
+  String getPasswordHash(String username);
+
+  /**
+   * Get a user without the password, or null if the user does not exist
+   */
+  User getUser(String username);
+
+  boolean userExists(String username);
+
+  boolean updateUser(String username, String email, String phone);
+
+  boolean updatePassword(String username, String passwordHash);
+
+  /**
+   * Delete a user together with their history
+   */
+  boolean deleteUser(String username);
+}
@@ -0,0 +1,34 @@
+package com.berrimi.translator.jakarta.hello;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class AcceptEncodingTest {
+
+  @Test
+  void acceptsListedAndWildcardEncodings() {
+    assertTrue(AcceptEncoding.accepts("gzip", "gzip"));
+    assertTrue(AcceptEncoding.accepts("deflate, GZIP;q=0.5", "gzip"));
+    assertTrue(AcceptEncoding.accepts("br;q=1, *;q=0.1", "gzip"));
+    assertFalse(AcceptEncoding.accepts("br", "gzip"));
+    assertFalse(AcceptEncoding.accepts(null, "gzip"));
+  }
+
+  @Test
+  void ownEntryOverridesTheWildcard() {
+    assertFalse(AcceptEncoding.accepts("*;q=1, gzip;q=0", "gzip"));
+    assertFalse(AcceptEncoding.accepts("gzip;q=0, *", "gzip"));
+    assertTrue(AcceptEncoding.accepts("*;q=0, gzip", "gzip"));
+    assertFalse(AcceptEncoding.accepts("*;q=0", "gzip"));
+  }
+
+  @Test
+  void readsQValuesCaseInsensitively() {
+    assertFalse(AcceptEncoding.accepts("gzip;Q=0", "gzip"));
+    assertFalse(AcceptEncoding.accepts("gzip; q = 0", "gzip"));
+    assertFalse(AcceptEncoding.accepts("gzip;q=high", "gzip"));
+    assertTrue(AcceptEncoding.accepts("gzip;Q=0.001", "gzip"));
+  }
+}
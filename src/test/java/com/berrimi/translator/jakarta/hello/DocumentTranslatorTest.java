@@ -0,0 +1,204 @@
+package com.berrimi.translator.jakarta.hello;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs DocumentTranslator with a stub translator instead of the LLM.
+ */
+class DocumentTranslatorTest {
+
+  private static final long DOCUMENT_BYTES = 100L * 1024 * 1024;
+  // Far below the document, which takes twice its size in memory as chars
+  private static final long MAX_HEAP_GROWTH_BYTES = 32L * 1024 * 1024;
+  private static final int SEGMENTS_PER_HEAP_SAMPLE = 5000;
+
+  @Test
+  void copiesA100MegabyteDocumentThroughAnIdentityTranslator() throws Exception {
+    MessageDigest inputDigest = MessageDigest.getInstance("SHA-256");
+    MessageDigest outputDigest = MessageDigest.getInstance("SHA-256");
+    AtomicInteger badSegments = new AtomicInteger();
+    AtomicLong segments = new AtomicLong();
+    long baseline = usedHeapAfterGc();
+    AtomicLong peak = new AtomicLong(baseline);
+
+    try (InputStream input = new DigestInputStream(new GeneratedDocument(DOCUMENT_BYTES, 42), inputDigest);
+        OutputStream output = new DigestOutputStream(OutputStream.nullOutputStream(), outputDigest)) {
+      DocumentTranslator.translate(input, output, text -> {
+        if (segments.incrementAndGet() % SEGMENTS_PER_HEAP_SAMPLE == 0) {
+          peak.accumulateAndGet(usedHeapAfterGc(), Math::max);
+        }
+        boolean splitsPair = !text.isEmpty() && (Character.isLowSurrogate(text.charAt(0))
+            || Character.isHighSurrogate(text.charAt(text.length() - 1)));
+        if (text.length() > DocumentTranslator.MAX_SEGMENT_CHARS || splitsPair) {
+          badSegments.incrementAndGet();
+        }
+        return text;
+      });
+    }
+
+    assertTrue(segments.get() > DOCUMENT_BYTES / (2 * DocumentTranslator.MAX_SEGMENT_CHARS));
+    assertEquals(0, badSegments.get(), "segments over the size limit or splitting a surrogate pair");
+    assertArrayEquals(inputDigest.digest(), outputDigest.digest(), "output differs from input");
+    assertTrue(peak.get() - baseline < MAX_HEAP_GROWTH_BYTES,
+        "live heap grew by " + (peak.get() - baseline) / 1024 + " KB while translating");
+  }
+
+  @Test
+  void keepsFencesBlankLinesAndLineEnds() throws IOException {
+    String document = "# Title\r\nfirst line\nsecond line\n\n\n```java\nint x = 1;\n```\nlast line without end";
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    DocumentTranslator.translate(new ByteArrayInputStream(document.getBytes(StandardCharsets.UTF_8)), output,
+        text -> text.toUpperCase());
+
+    assertEquals("# TITLE\nFIRST LINE\nSECOND LINE\n\n\n```java\nint x = 1;\n```\nLAST LINE WITHOUT END\n",
+        output.toString(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void retriesFailedSegmentsAndMarksTheOnesThatStillFail() throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    AtomicInteger threeCalls = new AtomicInteger();
+    AtomicInteger twoCalls = new AtomicInteger();
+    long failed = Metrics.gauges().get("document.failedSegments").get().longValue();
+
+    DocumentTranslator.translate(
+        new ByteArrayInputStream("one\n\ntwo\n\nthree\n".getBytes(StandardCharsets.UTF_8)), output, text -> {
+          switch (text) {
+            case "two":
+              twoCalls.incrementAndGet();
+              return "Error: upstream";
+            case "three":
+              // Shed once, then translated
+              return threeCalls.incrementAndGet() == 1 ? "Overloaded: queue full" : "THREE";
+            default:
+              return "ONE";
+          }
+        });
+
+    assertEquals("ONE\n\n" + DocumentTranslator.FAILED_MARKER + "two\n\nTHREE\n",
+        output.toString(StandardCharsets.UTF_8));
+    assertEquals(3, twoCalls.get());
+    assertEquals(2, threeCalls.get());
+    assertEquals(failed + 1, Metrics.gauges().get("document.failedSegments").get().longValue());
+  }
+
+  @Test
+  void endsTheResponseWhenASegmentCannotBePaidFor() {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    assertThrows(IOException.class, () -> DocumentTranslator.translate(
+        new ByteArrayInputStream("one\n\ntwo\n".getBytes(StandardCharsets.UTF_8)), output,
+        text -> text.equals("two") ? null : "ONE"));
+
+    assertEquals("ONE\n\n", output.toString(StandardCharsets.UTF_8));
+  }
+
+  private static long usedHeapAfterGc() {
+    Runtime runtime = Runtime.getRuntime();
+    System.gc();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  /**
+   * Markdown-like UTF-8 text made up as it is read: paragraphs, blank lines,
+   * code fences and single lines of several hundred thousand characters, with
+   * Arabic and emoji so that pieces land next to surrogate pairs. Every line
+   * ends with \n, so a faithful copy is byte for byte identical.
+   */
+  private static final class GeneratedDocument extends InputStream {
+
+    private static final String[] WORDS = { "salam", "labas", "translate", "السلام",
+        "😀", "🇲🇦", "café", "3afak", "[link](x)", "`code`" };
+
+    private final long size;
+    private final Random random;
+    private long produced;
+    private byte[] block = new byte[0];
+    private int position;
+
+    GeneratedDocument(long size, long seed) {
+      this.size = size;
+      this.random = new Random(seed);
+    }
+
+    @Override
+    public int read() {
+      if (position == block.length && !nextBlock()) {
+        return -1;
+      }
+      return block[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (position == block.length && !nextBlock()) {
+        return -1;
+      }
+      int count = Math.min(len, block.length - position);
+      System.arraycopy(block, position, b, off, count);
+      position += count;
+      return count;
+    }
+
+    private boolean nextBlock() {
+      if (produced >= size) {
+        return false;
+      }
+      StringBuilder text = new StringBuilder();
+      int kind = random.nextInt(10);
+      if (kind == 0) {
+        text.append("```\n");
+        for (int i = random.nextInt(20); i >= 0; i--) {
+          words(text, 1 + random.nextInt(12));
+          text.append('\n');
+        }
+        text.append("```\n");
+      } else if (kind == 1) {
+        // Odd lengths put pieces at every offset, next to surrogate pairs too
+        words(text, 20_000 + random.nextInt(60_000));
+        text.append('\n');
+      } else {
+        for (int i = random.nextInt(30); i >= 0; i--) {
+          words(text, 1 + random.nextInt(25));
+          text.append('\n');
+        }
+        text.append("\n".repeat(1 + random.nextInt(3)));
+      }
+      block = text.toString().getBytes(StandardCharsets.UTF_8);
+      position = 0;
+      produced += block.length;
+      return true;
+    }
+
+    private void words(StringBuilder text, int count) {
+      for (int i = 0; i < count; i++) {
+        if (i > 0) {
+          text.append(' ');
+        }
+        text.append(WORDS[random.nextInt(WORDS.length)]);
+      }
+    }
+  }
+}
@@ -0,0 +1,269 @@
+package com.berrimi.translator.jakarta.hello;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs the jdbc persistence backend against an in-memory H2 database in
+ * PostgreSQL mode. Every test works on users of its own.
+ */
+class JdbcStoreTest {
+
+  private static final AtomicInteger USER_COUNTER = new AtomicInteger();
+
+  private static JdbcHistoryStore history;
+  private static JdbcUserStore users;
+
+  @BeforeAll
+  static void createStores() {
+    JdbcDataSource dataSource = new JdbcDataSource();
+    // Concurrent writers for one user queue on its row lock, so give them time
+    dataSource.setURL("jdbc:h2:mem:translator;MODE=PostgreSQL;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=30000");
+    JdbcDatabase.useDataSource(dataSource);
+    history = new JdbcHistoryStore();
+    users = new JdbcUserStore();
+  }
+
+  @Test
+  void registersAndUpdatesUsers() {
+    String username = newUser();
+
+    assertFalse(users.register(new User(username, null, "other@example.com", "0"), "other-hash"));
+    assertTrue(users.userExists(username));
+    assertEquals("hash", users.getPasswordHash(username));
+
+    assertTrue(users.updateUser(username, "new@example.com", "0600000000"));
+    assertTrue(users.updatePassword(username, "new-hash"));
+    User user = users.getUser(username);
+    assertEquals("new@example.com", user.getEmail());
+    assertEquals("0600000000", user.getPhone());
+    assertEquals("new-hash", users.getPasswordHash(username));
+
+    assertFalse(users.updateUser("nobody-" + username, "x", "y"));
+    assertNull(users.getUser("nobody-" + username));
+  }
+
+  @Test
+  void addsHistoryAndFindsItNewestFirst() {
+    String username = newUser();
+    List<TranslationHistory> added = entries(username, 3);
+
+    assertTrue(history.addTranslations(username, added));
+
+    List<TranslationHistory> found = history.getHistory(username);
+    assertEquals(3, found.size());
+    for (int i = 0; i < 3; i++) {
+      TranslationHistory expected = added.get(2 - i);
+      assertEquals(expected.getId(), found.get(i).getId());
+      assertEquals(expected.getOriginalText(), found.get(i).getOriginalText());
+      assertEquals(username, found.get(i).getUsername());
+    }
+
+    TranslationHistory byId = history.getTranslationById(added.get(1).getId());
+    assertNotNull(byId);
+    assertEquals(added.get(1).getTranslatedText(), byId.getTranslatedText());
+    assertEquals(added.get(1).getTimestamp().getTime(), byId.getTimestamp().getTime());
+    assertEquals(3, history.getHistoryCount(username));
+  }
+
+  @Test
+  void refusesHistoryOfUnknownUsers() {
+    List<TranslationHistory> entries = entries("nobody", 1);
+
+    assertFalse(history.addTranslations("nobody-" + USER_COUNTER.incrementAndGet(), entries));
+    assertEquals(0, history.getHistoryCount("nobody"));
+  }
+
+  @Test
+  void retriesWhenAnotherNodeTookTheId() throws Exception {
+    String username = newUser();
+    List<TranslationHistory> first = entries(username, 1);
+    assertTrue(history.addTranslations(username, first));
+
+    // Store the id this node issues next, as another node would in the same millisecond
+    long taken = HistoryIds.lowerBound(System.currentTimeMillis() + 60_000);
+    HistoryIds.advancePast(taken - 1);
+    try (Connection conn = JdbcDatabase.getConnection();
+        PreparedStatement pstmt = conn.prepareStatement("""
+            INSERT INTO translation_history (id, user_id, original_text, translated_text, target_lang, created_at)
+            SELECT ?, user_id, 'other node', 'other node', 'fr', 0 FROM translation_history WHERE id = ?
+            """)) {
+      pstmt.setLong(1, taken);
+      pstmt.setLong(2, HistoryIds.fromExternal(first.get(0).getId()));
+      assertEquals(1, pstmt.executeUpdate());
+    }
+
+    List<TranslationHistory> entries = entries(username, 1);
+    assertTrue(history.addTranslations(username, entries));
+    assertTrue(HistoryIds.fromExternal(entries.get(0).getId()) > taken);
+    assertEquals(entries.get(0).getOriginalText(),
+        history.getTranslationById(entries.get(0).getId()).getOriginalText());
+    assertEquals(3, history.getHistoryCount(username));
+  }
+
+  @Test
+  void keepsTheNewestRowsUpToTheCap() {
+    String username = newUser();
+    List<TranslationHistory> all = new ArrayList<>();
+    for (int batch = 0; batch < 4; batch++) {
+      List<TranslationHistory> entries = entries(username, 20);
+      assertTrue(history.addTranslations(username, entries));
+      all.addAll(entries);
+    }
+
+    List<TranslationHistory> found = history.getHistory(username);
+    assertEquals(HistoryStore.MAX_HISTORY_PER_USER, history.getHistoryCount(username));
+    assertEquals(HistoryStore.MAX_HISTORY_PER_USER, found.size());
+    assertEquals(all.get(all.size() - 1).getId(), found.get(0).getId());
+    assertEquals(all.get(all.size() - HistoryStore.MAX_HISTORY_PER_USER).getId(),
+        found.get(found.size() - 1).getId());
+    assertNull(history.getTranslationById(all.get(0).getId()));
+  }
+
+  @Test
+  void exportsWithinTimeBoundsOldestFirst() throws Exception {
+    String username = newUser();
+    List<TranslationHistory> entries = entries(username, 5);
+    assertTrue(history.addTranslations(username, entries));
+    assertTrue(history.addTranslations(newUser(), entries(username, 2)));
+
+    List<String> exported = new ArrayList<>();
+    history.exportHistory(username, null, null, row -> exported.add(row.getId()));
+    assertEquals(entries.stream().map(TranslationHistory::getId).toList(), exported);
+
+    exported.clear();
+    Instant future = Instant.now().plusSeconds(3600);
+    history.exportHistory(username, future, null, row -> exported.add(row.getId()));
+    assertTrue(exported.isEmpty());
+  }
+
+  @Test
+  void deletesOnlyTheOwnersTranslation() {
+    String owner = newUser();
+    String other = newUser();
+    List<TranslationHistory> entries = entries(owner, 2);
+    assertTrue(history.addTranslations(owner, entries));
+    String id = entries.get(0).getId();
+
+    assertFalse(history.deleteTranslation(id, other));
+    assertFalse(history.deleteTranslation("not-an-id", owner));
+    assertTrue(history.deleteTranslation(id, owner));
+    assertFalse(history.deleteTranslation(id, owner));
+    assertNull(history.getTranslationById(id));
+    assertEquals(1, history.getHistoryCount(owner));
+  }
+
+  @Test
+  void clearsOneUsersHistory() {
+    String username = newUser();
+    String other = newUser();
+    assertTrue(history.addTranslations(username, entries(username, 4)));
+    assertTrue(history.addTranslations(other, entries(other, 2)));
+
+    assertTrue(history.clearHistory(username));
+
+    assertEquals(0, history.getHistoryCount(username));
+    assertTrue(history.getHistory(username).isEmpty());
+    assertEquals(2, history.getHistoryCount(other));
+  }
+
+  @Test
+  void deletesHistoryWithTheUser() {
+    String username = newUser();
+    List<TranslationHistory> entries = entries(username, 3);
+    assertTrue(history.addTranslations(username, entries));
+
+    assertTrue(users.deleteUser(username));
+
+    assertFalse(users.userExists(username));
+    assertEquals(0, history.getHistoryCount(username));
+    assertNull(history.getTranslationById(entries.get(0).getId()));
+    assertFalse(users.deleteUser(username));
+    assertFalse(history.addTranslations(username, entries(username, 1)));
+  }
+
+  @Test
+  void keepsTheCapUnderConcurrentAddsForOneUser() throws Exception {
+    String username = newUser();
+    int threads = 8;
+    int addsPerThread = 25;
+    AtomicInteger overCap = new AtomicInteger();
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    List<Future<List<String>>> results = new ArrayList<>();
+    try {
+      for (int t = 0; t < threads; t++) {
+        results.add(pool.submit((Callable<List<String>>) () -> {
+          List<String> ids = new ArrayList<>();
+          for (int i = 0; i < addsPerThread; i++) {
+            TranslationHistory entry = entries(username, 1).get(0);
+            if (history.addTranslations(username, List.of(entry))) {
+              ids.add(entry.getId());
+            }
+            // Committed state, so never over the cap if writers are serialized
+            if (history.getHistoryCount(username) > HistoryStore.MAX_HISTORY_PER_USER) {
+              overCap.incrementAndGet();
+            }
+          }
+          return ids;
+        }));
+      }
+
+      Set<String> saved = new HashSet<>();
+      for (Future<List<String>> result : results) {
+        saved.addAll(result.get());
+      }
+      assertEquals(threads * addsPerThread, saved.size(), "every add saved under an id of its own");
+      assertEquals(0, overCap.get(), "times the history was seen over the cap");
+    } finally {
+      pool.shutdown();
+    }
+
+    List<TranslationHistory> found = history.getHistory(username);
+    assertEquals(HistoryStore.MAX_HISTORY_PER_USER, history.getHistoryCount(username));
+    assertEquals(HistoryStore.MAX_HISTORY_PER_USER, found.size());
+    for (TranslationHistory entry : found) {
+      assertNotNull(history.getTranslationById(entry.getId()));
+    }
+  }
+
+  private static String newUser() {
+    String username = "user" + USER_COUNTER.incrementAndGet();
+    assertTrue(users.register(new User(username, null, username + "@example.com", "0612345678"), "hash"));
+    return username;
+  }
+
+  private static List<TranslationHistory> entries(String username, int count) {
+    List<TranslationHistory> entries = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      TranslationHistory entry = new TranslationHistory();
+      entry.setUsername(username);
+      entry.setOriginalText("text " + i + " of " + username);
+      entry.setTranslatedText("ترجمة " + i);
+      entry.setTargetLang("darija");
+      entry.setTimestamp(new Timestamp(System.currentTimeMillis()));
+      entries.add(entry);
+    }
+    return entries;
+  }
+}
@@ -0,0 +1,133 @@
+package com.berrimi.translator.jakarta.hello;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.CacheMode;
+import org.infinispan.configuration.cache.Configuration;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.configuration.global.GlobalConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs TranslationCache on a two-node embedded Infinispan cluster configured
+ * like translation-cache.cli: writes go through one node and reads through
+ * the other.
+ */
+class TranslationCacheTest {
+
+  private static final long VISIBLE_WITHIN_MILLIS = 10_000;
+
+  private static DefaultCacheManager firstNode;
+  private static DefaultCacheManager secondNode;
+  private static Cache<String, String> first;
+  private static Cache<String, String> second;
+
+  @BeforeAll
+  static void startCluster() {
+    firstNode = startNode("first");
+    secondNode = startNode("second");
+    first = firstNode.getCache("translations");
+    second = secondNode.getCache("translations");
+    assertEquals(2, firstNode.getMembers().size());
+  }
+
+  @AfterAll
+  static void stopCluster() {
+    TranslationCache.useCache(null);
+    secondNode.stop();
+    firstNode.stop();
+  }
+
+  @Test
+  void translationStoredOnOneNodeIsServedByTheOther() throws InterruptedException {
+    TranslationCache.useCache(first);
+    TranslationCache.putAsync("salam", "fr", "bonjour");
+
+    String key = TranslationCache.key("salam", "fr");
+    assertEquals("bonjour", awaitEntry(second, key));
+
+    TranslationCache.useCache(second);
+    long hits = gauge("translationCache.hits");
+    assertEquals("bonjour", TranslationCache.get("salam", "fr"));
+    assertEquals(hits + 1, gauge("translationCache.hits"));
+    assertNull(TranslationCache.get("salam", "en"));
+  }
+
+  @Test
+  void failedTranslationsAreNotStored() throws InterruptedException {
+    TranslationCache.useCache(first);
+    TranslationCache.putAsync("labas", "fr", "Error: upstream unavailable");
+    // One writer thread, so once this entry shows the one before was handled
+    TranslationCache.putAsync("labas", "en", "fine");
+
+    assertEquals("fine", awaitEntry(second, TranslationCache.key("labas", "en")));
+    assertNull(second.get(TranslationCache.key("labas", "fr")));
+  }
+
+  @Test
+  void servesEveryStoredTranslationFromTheOtherNode() throws InterruptedException {
+    int entries = 500;
+    TranslationCache.useCache(first);
+    for (int i = 0; i < entries; i++) {
+      TranslationCache.putAsync("text " + i, "darija", "translation " + i);
+    }
+    awaitEntry(second, TranslationCache.key("text " + (entries - 1), "darija"));
+
+    TranslationCache.useCache(second);
+    long hits = gauge("translationCache.hits");
+    long misses = gauge("translationCache.misses");
+    long started = System.nanoTime();
+    for (int i = 0; i < entries; i++) {
+      assertEquals("translation " + i, TranslationCache.get("text " + i, "darija"));
+    }
+    long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started) / entries;
+
+    assertEquals(hits + entries, gauge("translationCache.hits"));
+    assertEquals(misses, gauge("translationCache.misses"));
+    System.out.println("Translation cache: " + entries + " hits on the other node, " + micros + " us per read");
+  }
+
+  private static DefaultCacheManager startNode(String name) {
+    GlobalConfigurationBuilder global = GlobalConfigurationBuilder.defaultClusteredBuilder();
+    global.transport()
+        .clusterName("translation-cache-test")
+        .nodeName(name)
+        .addProperty("configurationFile", "translation-cache-jgroups.xml");
+    global.jmx().disable();
+
+    // As translation-cache.cli sets up the "translations" cache on the server
+    Configuration translations = new ConfigurationBuilder()
+        .clustering().cacheMode(CacheMode.DIST_SYNC)
+        .hash().numOwners(2)
+        .l1().enable().lifespan(60_000)
+        .expiration().lifespan(604_800_000)
+        .memory().maxCount(100_000)
+        .build();
+
+    DefaultCacheManager manager = new DefaultCacheManager(global.build());
+    manager.defineConfiguration("translations", translations);
+    return manager;
+  }
+
+  private static String awaitEntry(Cache<String, String> cache, String key) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + VISIBLE_WITHIN_MILLIS;
+    String value;
+    while ((value = cache.get(key)) == null && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertTrue(value != null, "entry not visible on the other node within " + VISIBLE_WITHIN_MILLIS + " ms");
+    return value;
+  }
+
+  private static long gauge(String name) {
+    return Metrics.gauges().get(name).get().longValue();
+  }
+}